@@ -360,15 +360,22 @@ public final class ATAPReplanning implements PlansReplanning, ReplanningListener
 		}
 
 		final EmulationEngine replanningEngine = this.emulationEngineProvider.get();
-		replanningEngine.replan(event.getIteration(), listOfMode2travelTimes4emulation, true);
-		final PlansContainer newPlans = new PlansContainer(event.getServices().getScenario().getPopulation());
+		// Plans whose times are overwritten during replanning are copied into the old snapshot first.
+		replanningEngine.setPlanTimesOverwriteListener(oldPlans::beforeModification);
+		try {
+			replanningEngine.replan(event.getIteration(), listOfMode2travelTimes4emulation, true);
+		} finally {
+			replanningEngine.setPlanTimesOverwriteListener(null);
+		}
+		final PlansContainer newPlans = new PlansContainer(event.getServices().getScenario().getPopulation(),
+				oldPlans);
 
 		/*
 		 * (2) Compute intermediate statistics.
 		 */
 
 		final Map<Id<Person>, Double> personId2FilteredGap = this.personIds.stream().collect(Collectors.toMap(id -> id,
-				id -> (newPlans.getSelectedPlan(id).getScore() - oldPlans.getSelectedPlan(id).getScore())));
+				id -> (newPlans.getSelectedPlanScore(id) - oldPlans.getSelectedPlanScore(id))));
 
 		{
 			// TODO Only for testing
@@ -379,7 +386,10 @@ public final class ATAPReplanning implements PlansReplanning, ReplanningListener
 					Collections.singletonList(this.listOfMode2travelTimes.getFirst()), false);
 			this.gap = (-1.0) * this.services.getScenario().getPopulation().getPersons().values().stream()
 					.mapToDouble(p -> p.getSelectedPlan().getScore()).average().getAsDouble();
-			this.gapAnalyzer.registerPlansBeforeReplanning(this.services.getScenario().getPopulation());
+			final boolean writeScatterplot = (this.replanIteration % 100 == 0
+					|| this.replanIteration == this.services.getConfig().controller().getLastIteration() - 1);
+			this.gapAnalyzer.registerPlansBeforeReplanning(this.services.getScenario().getPopulation(),
+					writeScatterplot);
 
 			emulationEngine = this.emulationEngineProvider.get();
 			newPlans.set(this.services.getScenario().getPopulation());
@@ -389,8 +399,7 @@ public final class ATAPReplanning implements PlansReplanning, ReplanningListener
 					.mapToDouble(p -> p.getSelectedPlan().getScore()).average().getAsDouble();
 			this.gapAnalyzer.registerPlansAfterReplanning(this.services.getScenario().getPopulation());
 
-			if (this.gapAnalyzer.linkCntAndAbsoluteGap != null && (this.replanIteration % 100 == 0
-					|| this.replanIteration == this.services.getConfig().controller().getLastIteration() - 1)) {
+			if (writeScatterplot && this.gapAnalyzer.hasLinkCntAndAbsoluteGap()) {
 				this.gapAnalyzer.writeLinkCntAndAbsoluteGapScatterplot(
 						new File(services.getConfig().controller().getOutputDirectory(),
 								"linkCnt_vs_absGap." + this.replanIteration + ".txt").toString());
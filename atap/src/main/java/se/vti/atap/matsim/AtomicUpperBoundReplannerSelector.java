@@ -19,14 +19,14 @@
  */
 package se.vti.atap.matsim;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
@@ -34,6 +34,13 @@ import org.matsim.api.core.v01.population.Person;
 import se.vti.utils.misc.fileio.Hacks;
 
 /**
+ * The objective terms are maintained incrementally over dense person indices.
+ * With D2 the squared distance of the replanner set and e(p) = a(p,p) - b(p),
+ * the distance of a non-replanner is D2 and that of a replanner is D2 + e(p).
+ * Switching a candidate shifts all of these by the same amount, except for the
+ * candidate's sparse neighbours among the replanners. Evaluating a candidate
+ * hence costs one pass over the replanners, and accepting a switch only
+ * touches the candidate's neighbours.
  *
  * @author Gunnar Flötteröd
  *
@@ -54,6 +61,28 @@ class AtomicUpperBoundReplannerSelector extends AbstractReplannerSelector {
 
 	private PopulationDistance populationDistance = null;
 
+	// Per selection, indexed as the keys of personId2gap.
+
+	private int[] person2distanceIndex;
+
+	private double[] aSelf;
+
+	private double[] bParam;
+
+	private boolean[] isReplanner;
+
+	// Replanners in arbitrary order, with the position of each replanner.
+	private int[] replanners;
+
+	private int[] person2replannerPosition;
+
+	private int replannerCnt;
+
+	// Distance index -> person index; -1 if not among the persons to select from.
+	private int[] distanceIndex2person;
+
+	private double _D2;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	AtomicUpperBoundReplannerSelector(final Function<Integer, Double> iterationToEta,
@@ -69,63 +98,100 @@ class AtomicUpperBoundReplannerSelector extends AbstractReplannerSelector {
 		return (_G - gamma) / Math.max(this.eps, transformedD);
 	}
 
-	private Map<Id<Person>, Double> createdPersonId2D2WithoutSelf(Map<Id<Person>, Double> personId2bParam,
-			Set<Id<Person>> replannerIds) {
-		double _D2 = 0.5 * replannerIds.stream().mapToDouble(r -> personId2bParam.get(r)).sum();
-		Map<Id<Person>, Double> personId2D2withoutSelf = new LinkedHashMap<>(personId2bParam.size());
-		for (Map.Entry<Id<Person>, Double> p2bEntry : personId2bParam.entrySet()) {
-			Id<Person> personId = p2bEntry.getKey();
-			if (replannerIds.contains(personId)) {
-				personId2D2withoutSelf.put(personId,
-						_D2 + this.populationDistance.getACoefficient(personId, personId) - p2bEntry.getValue());
-			} else {
-				personId2D2withoutSelf.put(personId, _D2);
-			}
-		}
-		return personId2D2withoutSelf;
+	private double root(final double d2) {
+		return Math.sqrt(Math.max(this.eps, d2));
 	}
 
-	private double _Dsum(Map<Id<Person>, Double> personId2D2withoutSelf) {
-		return personId2D2withoutSelf.values().stream().mapToDouble(d2 -> Math.sqrt(Math.max(this.eps, d2))).sum();
+	private double e(final int person) {
+		return this.aSelf[person] - this.bParam[person];
 	}
 
-	private double computeDSumChangeWhenAddingToReplanners(Id<Person> switcherId,
-			Map<Id<Person>, Double> personId2D2withoutSelf, Map<Id<Person>, Double> personId2bCoeff,
-			Set<Id<Person>> replannerIds) {
-		assert (!replannerIds.contains(switcherId));
-		double result = 0.0;
-		for (Id<Person> personId : personId2D2withoutSelf.keySet()) {
-			if (!personId.equals(switcherId)) {
-				final double d2WithoutSelf = personId2D2withoutSelf.get(personId);
-				result += Math.sqrt(Math.max(this.eps,
-						d2WithoutSelf + personId2bCoeff.get(switcherId)
-								+ this.populationDistance.getACoefficient(switcherId, switcherId)
-								- (replannerIds.contains(personId)
-										? this.populationDistance.getACoefficient(switcherId, personId)
-												+ this.populationDistance.getACoefficient(personId, switcherId)
-										: 0.0)));
-				result -= Math.sqrt(Math.max(this.eps, d2WithoutSelf));
+	private void addReplanner(final int person) {
+		this.isReplanner[person] = true;
+		this.replanners[this.replannerCnt] = person;
+		this.person2replannerPosition[person] = this.replannerCnt++;
+	}
+
+	private void removeReplanner(final int person) {
+		this.isReplanner[person] = false;
+		final int position = this.person2replannerPosition[person];
+		final int last = this.replanners[--this.replannerCnt];
+		this.replanners[position] = last;
+		this.person2replannerPosition[last] = position;
+	}
+
+	/**
+	 * Adds sign * (a(person, p) + a(p, person)) to the b-parameter of every p.
+	 */
+	private void updateBParams(final int person, final double sign) {
+		this.bParam[person] += sign * 2.0 * this.aSelf[person];
+		final int distanceIndex = this.person2distanceIndex[person];
+		if (distanceIndex >= 0) {
+			for (int pos = this.populationDistance.getFirstNeighbourPosition(
+					distanceIndex); pos < this.populationDistance.getEndNeighbourPosition(distanceIndex); pos++) {
+				final int neighbour = this.distanceIndex2person[this.populationDistance.getNeighbour(pos)];
+				if (neighbour >= 0) {
+					this.bParam[neighbour] += sign * this.populationDistance.getSymmetricCoefficient(pos);
+				}
 			}
 		}
+	}
+
+	private double _Dsum(final double _D2) {
+		double result = 0.0;
+		for (int person = 0; person < this.isReplanner.length; person++) {
+			result += this.root(this.isReplanner[person] ? _D2 + this.e(person) : _D2);
+		}
 		return result;
 	}
 
-	private double computeDSumChangeWhenRemovingFromReplanners(Id<Person> switcherId,
-			Map<Id<Person>, Double> personId2D2withoutSelf, Map<Id<Person>, Double> personId2bCoeff,
-			Set<Id<Person>> replannerIds) {
-		assert (replannerIds.contains(switcherId));
+	private double _Dsum() {
+		return this._Dsum(this._D2);
+	}
+
+	/**
+	 * Half the sum of the b-parameters of all replanners, from scratch.
+	 */
+	private double computeD2() {
 		double result = 0.0;
-		for (Id<Person> personId : personId2D2withoutSelf.keySet()) {
-			if (!personId.equals(switcherId)) {
-				final double d2WithoutSelf = personId2D2withoutSelf.get(personId);
-				result += Math.sqrt(Math.max(this.eps,
-						d2WithoutSelf - personId2bCoeff.get(switcherId)
-								+ this.populationDistance.getACoefficient(switcherId, switcherId)
-								+ (replannerIds.contains(personId)
-										? this.populationDistance.getACoefficient(switcherId, personId)
-												+ this.populationDistance.getACoefficient(personId, switcherId)
-										: 0.0)));
-				result -= Math.sqrt(Math.max(this.eps, d2WithoutSelf));
+		for (int i = 0; i < this.replannerCnt; i++) {
+			result += this.bParam[this.replanners[i]];
+		}
+		return 0.5 * result;
+	}
+
+	/**
+	 * Adding the switcher shifts all distances by b(s) + a(s,s), removing it by
+	 * a(s,s) - b(s). Replanning neighbours are additionally shifted by -/+ (a(s,p)
+	 * + a(p,s)).
+	 */
+	private double computeDSumChange(final int switcher) {
+		final boolean adding = !this.isReplanner[switcher];
+		final double shift = (adding ? this.bParam[switcher] : -this.bParam[switcher]) + this.aSelf[switcher];
+		final double neighbourSign = (adding ? -1.0 : +1.0);
+
+		final int otherNonReplannerCnt = (this.isReplanner.length - this.replannerCnt) - (adding ? 1 : 0);
+		double result = otherNonReplannerCnt * (this.root(this._D2 + shift) - this.root(this._D2));
+
+		for (int i = 0; i < this.replannerCnt; i++) {
+			final int person = this.replanners[i];
+			if (person != switcher) {
+				final double d2WithoutSelf = this._D2 + this.e(person);
+				result += this.root(d2WithoutSelf + shift) - this.root(d2WithoutSelf);
+			}
+		}
+
+		final int distanceIndex = this.person2distanceIndex[switcher];
+		if (distanceIndex >= 0) {
+			for (int pos = this.populationDistance.getFirstNeighbourPosition(
+					distanceIndex); pos < this.populationDistance.getEndNeighbourPosition(distanceIndex); pos++) {
+				final int neighbour = this.distanceIndex2person[this.populationDistance.getNeighbour(pos)];
+				if ((neighbour >= 0) && this.isReplanner[neighbour]) {
+					final double d2WithoutSelf = this._D2 + this.e(neighbour) + shift;
+					result += this.root(
+							d2WithoutSelf + neighbourSign * this.populationDistance.getSymmetricCoefficient(pos))
+							- this.root(d2WithoutSelf);
+				}
 			}
 		}
 		return result;
@@ -145,25 +211,45 @@ class AtomicUpperBoundReplannerSelector extends AbstractReplannerSelector {
 		 * (1) Initialize.
 		 */
 
-		// Start with a maximum amount of replanning gap.
-		final Set<Id<Person>> replannerIds = personId2gap.entrySet().stream().filter(e -> e.getValue() > 0.0)
-				.map(e -> e.getKey()).collect(Collectors.toSet());
-		if (replannerIds.size() == 0) {
-			return Collections.emptySet();
+		final List<Id<Person>> personIds = new ArrayList<>(personId2gap.keySet());
+		final int personCnt = personIds.size();
+		final double[] gaps = new double[personCnt];
+
+		this.person2distanceIndex = new int[personCnt];
+		this.aSelf = new double[personCnt];
+		this.bParam = new double[personCnt];
+		this.isReplanner = new boolean[personCnt];
+		this.replanners = new int[personCnt];
+		this.person2replannerPosition = new int[personCnt];
+		this.replannerCnt = 0;
+		this.distanceIndex2person = new int[this.populationDistance.getPersonCnt()];
+		Arrays.fill(this.distanceIndex2person, -1);
+
+		for (int person = 0; person < personCnt; person++) {
+			final Id<Person> personId = personIds.get(person);
+			gaps[person] = personId2gap.get(personId);
+			final int distanceIndex = this.populationDistance.getPersonIndex(personId);
+			this.person2distanceIndex[person] = distanceIndex;
+			if (distanceIndex >= 0) {
+				this.distanceIndex2person[distanceIndex] = person;
+			}
+			this.aSelf[person] = this.populationDistance.getACoefficient(personId, personId);
 		}
 
-		final Map<Id<Person>, Double> personId2bParam = new LinkedHashMap<>(personId2gap.size());
-		for (Id<Person> personId : personId2gap.keySet()) {
-			double b = 0.0;
-			for (Id<Person> replannerId : replannerIds) {
-				b += this.populationDistance.getACoefficient(replannerId, personId)
-						+ this.populationDistance.getACoefficient(personId, replannerId);
+		// Start with a maximum amount of replanning gap.
+		for (int person = 0; person < personCnt; person++) {
+			if (gaps[person] > 0.0) {
+				this.addReplanner(person);
 			}
-			personId2bParam.put(personId, b);
+		}
+		if (this.replannerCnt == 0) {
+			return Collections.emptySet();
 		}
 
-		Map<Id<Person>, Double> personId2D2withoutSelf = this.createdPersonId2D2WithoutSelf(personId2bParam,
-				replannerIds);
+		for (int i = 0; i < this.replannerCnt; i++) {
+			this.updateBParams(this.replanners[i], +1.0);
+		}
+		this._D2 = this.computeD2();
 
 		final String logFile = "exact-replanning.log";
 		if (this.logReplanningProcess) {
@@ -174,16 +260,21 @@ class AtomicUpperBoundReplannerSelector extends AbstractReplannerSelector {
 
 		final double _Gall = personId2gap.entrySet().stream().mapToDouble(e -> e.getValue()).sum();
 
-		double _G = replannerIds.stream().mapToDouble(r -> personId2gap.get(r)).sum();
-		double _Dsum = personId2D2withoutSelf.values().stream().mapToDouble(d2 -> Math.sqrt(Math.max(this.eps, d2)))
-				.sum();
+		double _G = 0.0;
+		for (int i = 0; i < this.replannerCnt; i++) {
+			_G += gaps[this.replanners[i]];
+		}
+		double _Dsum = this._Dsum();
 		final double _DsumMax = Math.max(0.0, _Dsum);
 
 		/*
 		 * (2) Repeatedly switch (non)replanners.
 		 */
 
-		final List<Id<Person>> allPersonIds = new LinkedList<>(personId2gap.keySet());
+		final List<Integer> allPersons = new ArrayList<>(personCnt);
+		for (int person = 0; person < personCnt; person++) {
+			allPersons.add(person);
+		}
 		boolean switched = true;
 
 		while (switched) {
@@ -194,23 +285,14 @@ class AtomicUpperBoundReplannerSelector extends AbstractReplannerSelector {
 			}
 
 			switched = false;
-			Collections.shuffle(allPersonIds);
-
-			for (Id<Person> candidateId : allPersonIds) {
-
-				final double candidateGap = personId2gap.get(candidateId);
-
-				final double deltaG;
-				final double deltaDsum;
-				if (replannerIds.contains(candidateId)) {
-					deltaG = -candidateGap;
-					deltaDsum = this.computeDSumChangeWhenRemovingFromReplanners(candidateId, personId2D2withoutSelf,
-							personId2bParam, replannerIds);
-				} else /* candidate is NOT a replanner */ {
-					deltaG = +candidateGap;
-					deltaDsum = this.computeDSumChangeWhenAddingToReplanners(candidateId, personId2D2withoutSelf,
-							personId2bParam, replannerIds);
-				}
+			Collections.shuffle(allPersons);
+
+			for (int candidate : allPersons) {
+
+				final double candidateGap = gaps[candidate];
+
+				final double deltaG = (this.isReplanner[candidate] ? -candidateGap : +candidateGap);
+				final double deltaDsum = this.computeDSumChange(candidate);
 
 				// attention, now we maximize
 
@@ -221,36 +303,37 @@ class AtomicUpperBoundReplannerSelector extends AbstractReplannerSelector {
 					_G = Math.max(0.0, _G + deltaG);
 					_Dsum = Math.max(0.0, _Dsum + deltaDsum);
 
-					final double deltaSign;
-					if (replannerIds.contains(candidateId)) {
-						replannerIds.remove(candidateId);
-						deltaSign = -1.0;
+					if (this.isReplanner[candidate]) {
+						this._D2 += this.aSelf[candidate] - this.bParam[candidate];
+						this.removeReplanner(candidate);
+						this.updateBParams(candidate, -1.0);
 					} else /* candidate is NOT a replanner */ {
-						replannerIds.add(candidateId);
-						deltaSign = +1.0;
-					}
-					for (Id<Person> personId : personId2gap.keySet()) {
-						final double deltaB = deltaSign
-								* (this.populationDistance.getACoefficient(candidateId, personId)
-										+ this.populationDistance.getACoefficient(personId, candidateId));
-						personId2bParam.compute(personId, (id, b2) -> b2 + deltaB);
+						this._D2 += this.aSelf[candidate] + this.bParam[candidate];
+						this.addReplanner(candidate);
+						this.updateBParams(candidate, +1.0);
 					}
-					personId2D2withoutSelf = this.createdPersonId2D2WithoutSelf(personId2bParam, replannerIds);
 					switched = true;
 
 					if (this.checkDistance) {
-						final double _Gchecked = personId2gap.entrySet().stream()
-								.filter(e -> replannerIds.contains(e.getKey())).mapToDouble(e -> e.getValue()).sum();
-						final double _DsumChecked = this._Dsum(personId2D2withoutSelf);
+						double _Gchecked = 0.0;
+						for (int i = 0; i < this.replannerCnt; i++) {
+							_Gchecked += gaps[this.replanners[i]];
+						}
+						final double _D2checked = this.computeD2();
+						final double _DsumChecked = this._Dsum(_D2checked);
 						final boolean gErr = Math.abs(_Gchecked - _G) > 1e-4;
-						final boolean d2Err = Math.abs(_DsumChecked - _Dsum) > 1e-4;
-						if (gErr || d2Err) {
+						final boolean d2Err = Math.abs(_D2checked - this._D2) > 1e-4;
+						final boolean dSumErr = Math.abs(_DsumChecked - _Dsum) > 1e-4;
+						if (gErr || d2Err || dSumErr) {
 							String msg = "";
 							if (gErr) {
 								msg += "\nrecursive _G = " + _G + ", but checked _G = " + _Gchecked;
 							}
 							if (d2Err) {
-								msg += "\nrecursive _Daum = " + _Dsum + ", but checked _Dsum = " + _DsumChecked;
+								msg += "\nrecursive _D2 = " + this._D2 + ", but checked _D2 = " + _D2checked;
+							}
+							if (dSumErr) {
+								msg += "\nrecursive _Dsum = " + _Dsum + ", but checked _Dsum = " + _DsumChecked;
 							}
 							throw new RuntimeException(msg);
 						}
@@ -259,6 +342,12 @@ class AtomicUpperBoundReplannerSelector extends AbstractReplannerSelector {
 			}
 		}
 
+		final Set<Id<Person>> replannerIds = new LinkedHashSet<>(this.replannerCnt);
+		for (int person = 0; person < personCnt; person++) {
+			if (this.isReplanner[person]) {
+				replannerIds.add(personIds.get(person));
+			}
+		}
 		return replannerIds;
 	}
 }
@@ -22,14 +22,13 @@ package se.vti.atap.matsim;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
@@ -37,9 +36,10 @@ import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.core.population.routes.NetworkRoute;
 
-import se.vti.utils.misc.Tuple;
-
 /**
+ * Keeps the per-person values of an iteration in primitive arrays indexed by
+ * person Id index. Statistics are computed in single parallel passes, and
+ * percentiles by selection instead of sorting.
  * 
  * @author GunnarF
  *
@@ -52,7 +52,12 @@ class GapAnalyzer {
 
 	// -------------------- MEMBERS --------------------
 
-	private Map<Id<Person>, Plan> person2plan = null;
+	// Person Id index -> selected plan score before replanning; NaN if unknown.
+	private double[] idIndex2scoreBefore = null;
+
+	// Person Id index -> network route link count before replanning; only if
+	// requested.
+	private int[] idIndex2linkCnt = null;
 
 	private Double minScore = null;
 	private Double meanScore = null;
@@ -61,7 +66,9 @@ class GapAnalyzer {
 	private Double meanAbsoluteGap = null;
 	private List<Double> absoluteGapPercentiles = null;
 
-	List<Tuple<Integer, Double>> linkCntAndAbsoluteGap = null;
+	// Sorted by link count.
+	private int[] linkCnts = null;
+	private double[] absoluteGaps = null;
 
 	// -------------------- CONSTRUCTION --------------------
 
@@ -74,22 +81,85 @@ class GapAnalyzer {
 
 	// -------------------- INTERNALS --------------------
 
-	private List<Double> generatePercentiles(List<Id<Person>> sortedPersonIds, Map<Id<Person>, Double> person2value) {
+	private static void swap(double[] values, int i, int j) {
+		final double tmp = values[i];
+		values[i] = values[j];
+		values[j] = tmp;
+	}
+
+	/**
+	 * Partially reorders values[from, to) such that values[k] holds what would be
+	 * there after sorting, with no larger values before and no smaller values
+	 * after it.
+	 */
+	private static double select(double[] values, int from, int to, int k) {
+		int low = from;
+		int high = to - 1;
+		while (low < high) {
+			final double pivot = values[(low + high) >>> 1];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (values[i] < pivot) {
+					i++;
+				}
+				while (values[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(values, i++, j--);
+				}
+			}
+			if (k <= j) {
+				high = j;
+			} else if (k >= i) {
+				low = i;
+			} else {
+				break;
+			}
+		}
+		return values[k];
+	}
+
+	private List<Double> generatePercentiles(double[] values) {
 		final List<Double> result = new ArrayList<>(100 / this.percentileStep + 1);
+		// Percentiles are visited in increasing order, so each selection only needs to
+		// consider the values at or above the previously selected index.
+		int from = 0;
 		for (int percentile = 0; percentile <= 100; percentile += this.percentileStep) {
-			final double fractionalIndex = (percentile / 100.0) * (sortedPersonIds.size() - 1.0);
+			final double fractionalIndex = (percentile / 100.0) * (values.length - 1.0);
 			final int lowerIndex = (int) fractionalIndex;
-			if ((lowerIndex < sortedPersonIds.size() - 1) && (fractionalIndex - lowerIndex >= 1e-8)) {
+			final double lowerValue = select(values, from, values.length, lowerIndex);
+			from = lowerIndex;
+			if ((lowerIndex < values.length - 1) && (fractionalIndex - lowerIndex >= 1e-8)) {
 				final double higherWeight = fractionalIndex - lowerIndex;
-				result.add((1.0 - higherWeight) * person2value.get(sortedPersonIds.get(lowerIndex))
-						+ higherWeight * person2value.get(sortedPersonIds.get(lowerIndex + 1)));
+				final double higherValue = select(values, lowerIndex + 1, values.length, lowerIndex + 1);
+				result.add((1.0 - higherWeight) * lowerValue + higherWeight * higherValue);
 			} else {
-				result.add(person2value.get(sortedPersonIds.get(lowerIndex)));
+				result.add(lowerValue);
 			}
 		}
 		return result;
 	}
 
+	private static int countNetworkRouteLinks(final Plan plan) {
+		int linkCnt = 0;
+		for (PlanElement pE : plan.getPlanElements()) {
+			if (pE instanceof Leg) {
+				final Leg leg = (Leg) pE;
+				if (leg.getRoute() instanceof NetworkRoute) {
+					// TODO hedge against null?
+					linkCnt += ((NetworkRoute) leg.getRoute()).getLinkIds().size();
+				}
+			}
+		}
+		return linkCnt;
+	}
+
+	private static int maxIdIndex(final Person[] persons) {
+		return Arrays.stream(persons).parallel().mapToInt(p -> p.getId().index()).max().orElse(-1);
+	}
+
 	// -------------------- IMPLEMENTATION --------------------
 
 	static String createPercentileHeader(int percentileStep, Function<Integer, String> percentileToColumnHeader) {
@@ -103,57 +173,88 @@ class GapAnalyzer {
 		return result.toString();
 	}
 
-	void registerPlansBeforeReplanning(final Population population) {
-		this.person2plan = population.getPersons().values().stream()
-				.collect(Collectors.toMap(p -> p.getId(), p -> p.getSelectedPlan()));
-		this.minScore = this.person2plan.values().stream().mapToDouble(p -> p.getScore()).min().getAsDouble();
-		this.meanScore = this.person2plan.values().stream().mapToDouble(p -> p.getScore()).average().getAsDouble();
-		this.maxScore = this.person2plan.values().stream().mapToDouble(p -> p.getScore()).max().getAsDouble();
+	/**
+	 * Route link counts (for the link count vs. gap scatterplot) are only
+	 * collected if collectLinkCnts is true.
+	 */
+	void registerPlansBeforeReplanning(final Population population, final boolean collectLinkCnts) {
+		final Person[] persons = population.getPersons().values().toArray(new Person[0]);
+
+		this.idIndex2scoreBefore = new double[maxIdIndex(persons) + 1];
+		Arrays.fill(this.idIndex2scoreBefore, Double.NaN);
+		this.idIndex2linkCnt = (collectLinkCnts ? new int[this.idIndex2scoreBefore.length] : null);
+
+		final DoubleSummaryStatistics scoreStats = IntStream.range(0, persons.length).parallel().mapToDouble(i -> {
+			final Plan plan = persons[i].getSelectedPlan();
+			final int idIndex = persons[i].getId().index();
+			this.idIndex2scoreBefore[idIndex] = plan.getScore();
+			if (this.idIndex2linkCnt != null) {
+				this.idIndex2linkCnt[idIndex] = countNetworkRouteLinks(plan);
+			}
+			return plan.getScore();
+		}).summaryStatistics();
+		this.minScore = scoreStats.getMin();
+		this.meanScore = scoreStats.getAverage();
+		this.maxScore = scoreStats.getMax();
 	}
 
 	void registerPlansAfterReplanning(final Population population) {
+		final Person[] persons = population.getPersons().values().toArray(new Person[0]);
+
+		final double[] gaps = new double[persons.length];
+		final DoubleSummaryStatistics gapStats = IntStream.range(0, persons.length).parallel().mapToDouble(i -> {
+			gaps[i] = persons[i].getSelectedPlan().getScore()
+					- this.idIndex2scoreBefore[persons[i].getId().index()];
+			return gaps[i];
+		}).summaryStatistics();
+		this.meanAbsoluteGap = gapStats.getAverage();
 
-		final Map<Id<Person>, Double> personId2absoluteGap = population.getPersons().values().stream()
-				.collect(Collectors.toMap(p -> p.getId(),
-						p -> p.getSelectedPlan().getScore() - this.person2plan.get(p.getId()).getScore()));
-		this.meanAbsoluteGap = personId2absoluteGap.values().stream().mapToDouble(ag -> ag).average().getAsDouble();
-		final List<Id<Person>> sortedPersonIds = new ArrayList<>(personId2absoluteGap.keySet().stream().toList());
-		Collections.sort(sortedPersonIds, new Comparator<>() {
-			@Override
-			public int compare(Id<Person> personId1, Id<Person> personId2) {
-				return Double.compare(personId2absoluteGap.get(personId1), personId2absoluteGap.get(personId2));
+		if (this.idIndex2linkCnt != null) {
+			// Counting sort by link count; stable with respect to the population order.
+			final int[] personLinkCnts = new int[persons.length];
+			int maxLinkCnt = 0;
+			for (int i = 0; i < persons.length; i++) {
+				personLinkCnts[i] = this.idIndex2linkCnt[persons[i].getId().index()];
+				maxLinkCnt = Math.max(maxLinkCnt, personLinkCnts[i]);
 			}
-		});
-		this.absoluteGapPercentiles = this.generatePercentiles(sortedPersonIds, personId2absoluteGap);
-
-		this.linkCntAndAbsoluteGap = new ArrayList<>(population.getPersons().size());
-		for (Map.Entry<Id<Person>, Plan> personIdAndPlan : this.person2plan.entrySet()) {
-			int linkCnt = 0;
-			for (PlanElement pE : personIdAndPlan.getValue().getPlanElements()) {
-				if (pE instanceof Leg) {
-					final Leg leg = (Leg) pE;
-					if (leg.getRoute() instanceof NetworkRoute) {
-						// TODO hedge against null?
-						linkCnt += ((NetworkRoute) leg.getRoute()).getLinkIds().size();
-					}
-				}
+			final int[] starts = new int[maxLinkCnt + 2];
+			for (int linkCnt : personLinkCnts) {
+				starts[linkCnt + 1]++;
+			}
+			for (int linkCnt = 0; linkCnt <= maxLinkCnt; linkCnt++) {
+				starts[linkCnt + 1] += starts[linkCnt];
 			}
-			this.linkCntAndAbsoluteGap.add(new Tuple<>(linkCnt, personId2absoluteGap.get(personIdAndPlan.getKey())));
+			this.linkCnts = new int[persons.length];
+			this.absoluteGaps = new double[persons.length];
+			for (int i = 0; i < persons.length; i++) {
+				final int position = starts[personLinkCnts[i]]++;
+				this.linkCnts[position] = personLinkCnts[i];
+				this.absoluteGaps[position] = gaps[i];
+			}
+		} else {
+			this.linkCnts = null;
+			this.absoluteGaps = null;
 		}
-		Collections.sort(this.linkCntAndAbsoluteGap, (t1, t2) -> Integer.compare(t1.getA(), t2.getA()));
+
+		// Reorders gaps, hence last.
+		this.absoluteGapPercentiles = this.generatePercentiles(gaps);
+	}
+
+	boolean hasLinkCntAndAbsoluteGap() {
+		return (this.linkCnts != null);
 	}
 
 	void writeLinkCntAndAbsoluteGapScatterplot(String fileName) {
-		if (this.linkCntAndAbsoluteGap == null) {
+		if (this.linkCnts == null) {
 			return;
 		}
 		try {
 			PrintWriter writer = new PrintWriter(fileName);
 			writer.println("linkCnt\tabsGap");
-			for (Tuple<Integer, Double> linkCntAndGap : this.linkCntAndAbsoluteGap) {
-				writer.print(linkCntAndGap.getA());
+			for (int i = 0; i < this.linkCnts.length; i++) {
+				writer.print(this.linkCnts[i]);
 				writer.print("\t");
-				writer.println(linkCntAndGap.getB());
+				writer.println(this.absoluteGaps[i]);
 			}
 			writer.flush();
 			writer.close();
@@ -20,8 +20,10 @@
 package se.vti.atap.matsim;
 
 import static java.lang.Math.ceil;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.matsim.api.core.v01.Id;
@@ -32,53 +34,105 @@ import org.matsim.core.config.Config;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.vehicles.Vehicle;
 
-import se.vti.utils.misc.dynamicdata.UpdatedDynamicData;
-
 /**
+ * Snapshot of link travel times. All values are held in a single primitive
+ * array of dimension (link index) x (time bin), where the link index is the
+ * MATSim-internal Id index. Instances are immutable once constructed: the
+ * only mutators (multiply/add) are private and applied to the fresh result of
+ * newWeightedSum before it is returned. Reading is therefore lock-free and may
+ * happen concurrently from any number of threads.
  *
  * @author Gunnar Flötteröd
  *
  */
 public class LinkTravelTimeCopy implements TravelTime {
 
-	private final UpdatedDynamicData<Id<Link>> data_s;
+	// -------------------- CONSTANTS --------------------
+
+	private final int binSize_s;
+
+	private final int binCnt;
+
+	// Id index -> row in data_s; -1 if the link is not covered. Shared by copies.
+	private final int[] idIndex2row;
+
+	private final double[] data_s;
+
+	// -------------------- CONSTRUCTION --------------------
 
 	public LinkTravelTimeCopy(final TravelTime travelTimes, final Config config, final Network network) {
 
-		final int binSize_s = (int) Math.round(config.travelTimeCalculator().getTraveltimeBinSize());
-		final int binCnt = (int) ceil(((double) config.travelTimeCalculator().getMaxTime()) / binSize_s);
+		this.binSize_s = (int) Math.round(config.travelTimeCalculator().getTraveltimeBinSize());
+		this.binCnt = (int) ceil(((double) config.travelTimeCalculator().getMaxTime()) / this.binSize_s);
 
-		this.data_s = new UpdatedDynamicData<Id<Link>>(0, binSize_s, binCnt);
+		int maxIdIndex = -1;
+		for (Id<Link> linkId : network.getLinks().keySet()) {
+			maxIdIndex = Math.max(maxIdIndex, linkId.index());
+		}
+		this.idIndex2row = new int[maxIdIndex + 1];
+		Arrays.fill(this.idIndex2row, -1);
+		this.data_s = new double[network.getLinks().size() * this.binCnt];
 
+		int row = 0;
 		for (Link link : network.getLinks().values()) {
-			for (int bin = 0; bin < binCnt; bin++) {
-				this.data_s.put(link.getId(), bin,
-						travelTimes.getLinkTravelTime(link, (bin + 0.5) * binSize_s, null, null));
+			this.idIndex2row[link.getId().index()] = row;
+			final int offset = row * this.binCnt;
+			for (int bin = 0; bin < this.binCnt; bin++) {
+				this.data_s[offset + bin] = travelTimes.getLinkTravelTime(link, (bin + 0.5) * this.binSize_s, null,
+						null);
 			}
+			row++;
 		}
 	}
 
 	public LinkTravelTimeCopy(final LinkTravelTimeCopy parent) {
-		this.data_s = new UpdatedDynamicData<>(parent.data_s);
+		this.binSize_s = parent.binSize_s;
+		this.binCnt = parent.binCnt;
+		this.idIndex2row = parent.idIndex2row;
+		this.data_s = Arrays.copyOf(parent.data_s, parent.data_s.length);
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private void checkCompatibility(final LinkTravelTimeCopy other) {
+		if ((this.binSize_s != other.binSize_s) || (this.binCnt != other.binCnt)
+				|| ((this.idIndex2row != other.idIndex2row) && !Arrays.equals(this.idIndex2row, other.idIndex2row))) {
+			throw new RuntimeException("incompatible travel time snapshots");
+		}
 	}
 
+	// -------------------- IMPLEMENTATION --------------------
+
 	@Override
-	public synchronized double getLinkTravelTime(Link link, double time_s, Person person, Vehicle vehicle) {
-		final int bin = min(this.data_s.getBinCnt() - 1, (int) (time_s / this.data_s.getBinSize_s()));
-		return this.data_s.getBinValue(link.getId(), bin);
+	public double getLinkTravelTime(Link link, double time_s, Person person, Vehicle vehicle) {
+		final int idIndex = link.getId().index();
+		final int row = (idIndex < this.idIndex2row.length ? this.idIndex2row[idIndex] : -1);
+		if (row < 0) {
+			return 0.0;
+		}
+		final int bin = max(0, min(this.binCnt - 1, (int) (time_s / this.binSize_s)));
+		return this.data_s[row * this.binCnt + bin];
 	}
 
-	public void multiply(final double factor) {
-		this.data_s.multiply(factor);
+	private void multiply(final double factor) {
+		final double[] data = this.data_s;
+		for (int i = 0; i < data.length; i++) {
+			data[i] *= factor;
+		}
 	}
 
-	public void add(final LinkTravelTimeCopy other, final double otherFactor) {
-		this.data_s.add(other.data_s, otherFactor);
+	private void add(final LinkTravelTimeCopy other, final double otherFactor) {
+		this.checkCompatibility(other);
+		final double[] data = this.data_s;
+		final double[] otherData = other.data_s;
+		for (int i = 0; i < data.length; i++) {
+			data[i] += otherFactor * otherData[i];
+		}
 	}
 
 	public static LinkTravelTimeCopy newWeightedSum(final List<LinkTravelTimeCopy> addends,
 			final List<Double> weights) {
-		assert(addends.size() == weights.size());
+		assert (addends.size() == weights.size());
 		final LinkTravelTimeCopy result = new LinkTravelTimeCopy(addends.get(0));
 		result.multiply(weights.get(0));
 		for (int i = 1; i < addends.size(); i++) {
@@ -90,10 +144,8 @@ public class LinkTravelTimeCopy implements TravelTime {
 	// for testing
 	public double sum() {
 		double result = 0.0;
-		for (Id<Link> link : this.data_s.keySet()) {
-			for (int bin = 0; bin < this.data_s.getBinCnt(); bin++) {
-				result += this.data_s.getBinValue(link, bin);
-			}
+		for (double value : this.data_s) {
+			result += value;
 		}
 		return result;
 	}
@@ -19,8 +19,8 @@
  */
 package se.vti.atap.matsim;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,114 +34,253 @@ import org.matsim.api.core.v01.population.Population;
 import org.matsim.core.population.PopulationUtils;
 
 /**
+ * Copy-on-write snapshot of all plans of a population.
+ * 
+ * A snapshot does not copy plans. It refers to plan versions, which initially
+ * are the plans of the population themselves. A plan is copied only when it is
+ * about to be modified in place, which the writer announces by calling
+ * beforeModification(..). The version then keeps the copy, and the population
+ * plan is free to change. Restoring a snapshot puts the versions' plans back
+ * into the population, again without copying, and only touches the plan lists
+ * of persons whose plans differ from the snapshot. Scores are held separately
+ * per snapshot, so score changes do not need to be announced.
+ * 
+ * Plans that are replaced rather than modified in place, as MATSim's plan
+ * strategies do, need no announcement either. The versions are shared with
+ * containers that are created with this one as predecessor. A snapshot is only
+ * valid as long as all in-place modifications of the population's plans are
+ * announced, so it should not be kept beyond the replanning step in which it is
+ * taken. Not thread-safe, except for beforeModification(..).
  * 
  * @author Gunnar Flötteröd
  * 
  */
 public class PlansContainer {
 
+	// -------------------- INNER CLASS --------------------
+
+	private static class PlanVersion {
+
+		// A plan of the population as long as that is not modified, otherwise a
+		// private copy of the plan's state at the time of the snapshot.
+		private Plan plan;
+
+		private PlanVersion(Plan plan) {
+			this.plan = plan;
+		}
+	}
+
+	// -------------------- CONSTANTS --------------------
+
+	/**
+	 * Stands for a null score in the score arrays. A NaN with a payload that
+	 * arithmetic does not produce, such that NaN scores are kept as well.
+	 */
+	private static final long NULL_SCORE_BITS = 0x7ff80000000dead0L;
+
+	/**
+	 * Plans that the population may modify and that are versions of this or a
+	 * related container. Identity-based. Shared with successors.
+	 */
+	private final Map<Plan, PlanVersion> modifiablePlan2version;
+
 	// -------------------- MEMBERS --------------------
 
 	/**
-	 * A map of persons on lists of (deep copies of) all plans of the respective
-	 * person. The plan order in the lists matters. Contains an empty but non-null
-	 * list for every person that does not have any plans.
+	 * Maps every person onto its row in the arrays below.
 	 */
-	private final Map<Id<Person>, List<? extends Plan>> personId2planList = new LinkedHashMap<>();
+	private final Map<Id<Person>, Integer> personId2row = new LinkedHashMap<>();
 
 	/**
-	 * A map of indices pointing to the currently selected plan of every person.
-	 * Contains a null value for every person that does not have a selected plan.
-	 * Uses an index instead of a reference because references do not survive deep
-	 * copies.
+	 * Per row, the versions of all plans of the respective person. The plan order
+	 * matters. Contains an empty but non-null array for every person that does not
+	 * have any plans.
 	 */
-	private final Map<Id<Person>, Integer> person2selectedPlanIndex = new LinkedHashMap<>();
+	private final PlanVersion[][] planVersions;
+
+	/**
+	 * Per row, the scores of all plans of the respective person at the time of
+	 * this snapshot, in plan order.
+	 */
+	private final double[][] scores;
+
+	/**
+	 * Per row, the index of the selected plan, or -1 if there is none. Uses an
+	 * index instead of a reference because plan lists are replaced on restore.
+	 */
+	private final int[] selectedPlanIndices;
 
 	// -------------------- CONSTRUCTION --------------------
 
 	public PlansContainer(final Population population) {
+		this(population, null);
+	}
+
+	/**
+	 * Plans that are still versions of the predecessor share these versions.
+	 */
+	public PlansContainer(final Population population, final PlansContainer predecessor) {
+		this.modifiablePlan2version = (predecessor != null ? predecessor.modifiablePlan2version
+				: new IdentityHashMap<>());
+
+		final int personCnt = population.getPersons().size();
+		this.planVersions = new PlanVersion[personCnt][];
+		this.scores = new double[personCnt][];
+		this.selectedPlanIndices = new int[personCnt];
+
+		int row = 0;
 		for (Person person : population.getPersons().values()) {
 			if (person.getSelectedPlan() == null) {
-				this.person2selectedPlanIndex.put(person.getId(), null);
+				this.selectedPlanIndices[row] = -1;
 			} else {
 				final int selectedPlanIndex = person.getPlans().indexOf(person.getSelectedPlan());
 				if (selectedPlanIndex < 0) {
 					throw new RuntimeException(
 							"The selected plan of person " + person.getId() + " cannot be found in its plan list.");
 				}
-				this.person2selectedPlanIndex.put(person.getId(), selectedPlanIndex);
+				this.selectedPlanIndices[row] = selectedPlanIndex;
+			}
+			final List<? extends Plan> plans = person.getPlans();
+			final PlanVersion[] versions = new PlanVersion[plans.size()];
+			final double[] planScores = new double[plans.size()];
+			synchronized (this.modifiablePlan2version) {
+				for (int i = 0; i < versions.length; i++) {
+					versions[i] = this.modifiablePlan2version.computeIfAbsent(plans.get(i), p -> new PlanVersion(p));
+				}
 			}
-			this.personId2planList.put(person.getId(), newDeepCopy(person.getPlans()));
+			for (int i = 0; i < versions.length; i++) {
+				planScores[i] = encode(plans.get(i).getScore());
+			}
+			this.planVersions[row] = versions;
+			this.scores[row] = planScores;
+			this.personId2row.put(person.getId(), row++);
 		}
 	}
 
 	// -------------------- IMPLEMENTATION --------------------
 
 	public Set<Id<Person>> getPersonIdView() {
-		return Collections.unmodifiableSet(this.personId2planList.keySet());
+		return Collections.unmodifiableSet(this.personId2row.keySet());
+	}
+
+	/**
+	 * To be called before a plan of the population is modified in place. If the
+	 * plan is a version of this or a related container, that version keeps a copy
+	 * of the plan's current state. May be called concurrently for different plans.
+	 */
+	public void beforeModification(final Plan plan) {
+		final PlanVersion version;
+		synchronized (this.modifiablePlan2version) {
+			version = this.modifiablePlan2version.remove(plan);
+		}
+		if (version != null) {
+			final Plan copy = PopulationUtils.createPlan(plan.getPerson());
+			PopulationUtils.copyFromTo(plan, copy);
+			version.plan = copy;
+		}
 	}
-	
+
 	public void set(final Population population) {
-		for (Id<Person> personId : this.personId2planList.keySet()) {
+		for (Id<Person> personId : this.personId2row.keySet()) {
 			final Person person = population.getPersons().get(personId);
 			this.set(person);
 		}
 	}
 
 	public void set(final HasPlansAndId<Plan, Person> person) {
-		person.getPlans().clear();
-		final List<? extends Plan> copiedPlans = newDeepCopy(this.personId2planList.get(person.getId()));
-		for (Plan plan : copiedPlans) {
-			person.addPlan(plan);
+		final int row = this.personId2row.get(person.getId());
+		final PlanVersion[] versions = this.planVersions[row];
+		if (!isRepresentedBy(person.getPlans(), versions)) {
+			person.getPlans().clear();
+			for (PlanVersion version : versions) {
+				// The plan may be modified again once it is in the population.
+				synchronized (this.modifiablePlan2version) {
+					this.modifiablePlan2version.putIfAbsent(version.plan, version);
+				}
+				person.addPlan(version.plan);
+			}
 		}
-		person.setSelectedPlan(getSelectedPlan(copiedPlans, this.person2selectedPlanIndex.get(person.getId())));
+		for (int i = 0; i < versions.length; i++) {
+			person.getPlans().get(i).setScore(decode(this.scores[row][i]));
+		}
+		final int selectedPlanIndex = this.selectedPlanIndices[row];
+		person.setSelectedPlan(selectedPlanIndex < 0 ? null : person.getPlans().get(selectedPlanIndex));
 	}
 
 	void add(final HasPlansAndId<Plan, Person> person) {
-		final List<? extends Plan> copiedPlans = newDeepCopy(this.personId2planList.get(person.getId()));
-		for (Plan plan : copiedPlans) {
+		final int row = this.personId2row.get(person.getId());
+		final PlanVersion[] versions = this.planVersions[row];
+		for (int i = 0; i < versions.length; i++) {
+			final Plan plan = PopulationUtils.createPlan(versions[i].plan.getPerson());
+			PopulationUtils.copyFromTo(versions[i].plan, plan);
+			plan.setScore(decode(this.scores[row][i]));
 			person.addPlan(plan);
 		}
 	}
 
+	/**
+	 * The returned plan may belong to the population and must not be modified.
+	 * Its score is not maintained, use getSelectedPlanScore(..) instead.
+	 */
 	public Plan getSelectedPlan(Id<Person> personId) {
-		return getSelectedPlan(this.personId2planList.get(personId), this.person2selectedPlanIndex.get(personId));
+		final int row = this.personId2row.get(personId);
+		final int selectedPlanIndex = this.selectedPlanIndices[row];
+		return (selectedPlanIndex < 0 ? null : this.planVersions[row][selectedPlanIndex].plan);
+	}
+
+	/**
+	 * @return the score of the selected plan at the time of this snapshot, null if
+	 *         there is no selected plan or if it has no score
+	 */
+	public Double getSelectedPlanScore(Id<Person> personId) {
+		return this.getSelectedPlanScore(this.personId2row.get(personId));
 	}
 
 	Double getSumOfSelectedPlanScores() {
 		double sum = 0.0;
-		for (Map.Entry<Id<Person>, Integer> entry : this.person2selectedPlanIndex.entrySet()) {
-			final Plan plan = getSelectedPlan(this.personId2planList.get(entry.getKey()), entry.getValue());
-			if (plan == null) {
+		for (int row = 0; row < this.planVersions.length; row++) {
+			final Double score = this.getSelectedPlanScore(row);
+			if (score == null) {
 				return null;
 			} else {
-				sum += plan.getScore();
+				sum += score;
 			}
 		}
 		return sum;
 	}
-	
+
 	public int getPersonCnt() {
-		return this.personId2planList.size();
+		return this.personId2row.size();
 	}
 
 	// -------------------- HELPERS AND INTERNALS --------------------
 
-	private static List<? extends Plan> newDeepCopy(final List<? extends Plan> fromPlanList) {
-		final List<Plan> toPlanList = new ArrayList<>(fromPlanList.size());
-		for (Plan fromPlan : fromPlanList) {
-			final Plan toPlan = PopulationUtils.createPlan(fromPlan.getPerson());
-			PopulationUtils.copyFromTo(fromPlan, toPlan);
-			toPlanList.add(toPlan);
-		}
-		return toPlanList;
+	private static double encode(final Double score) {
+		return (score == null ? Double.longBitsToDouble(NULL_SCORE_BITS) : score);
+	}
+
+	private static Double decode(final double score) {
+		return (Double.doubleToRawLongBits(score) == NULL_SCORE_BITS ? null : score);
 	}
 
-	private static Plan getSelectedPlan(final List<? extends Plan> plans, final Integer index) {
-		if (index == null) {
-			return null;
-		} else {
-			return plans.get(index);
+	/**
+	 * A modified population plan has been replaced by a copy in its version, so
+	 * identity implies an unmodified plan.
+	 */
+	private static boolean isRepresentedBy(final List<? extends Plan> plans, final PlanVersion[] versions) {
+		if (plans.size() != versions.length) {
+			return false;
 		}
+		for (int i = 0; i < versions.length; i++) {
+			if (plans.get(i) != versions[i].plan) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Double getSelectedPlanScore(final int row) {
+		final int selectedPlanIndex = this.selectedPlanIndices[row];
+		return (selectedPlanIndex < 0 ? null : decode(this.scores[row][selectedPlanIndex]));
 	}
 }
@@ -20,16 +20,14 @@
 package se.vti.atap.matsim;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.IntStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.matsim.api.core.v01.Id;
@@ -45,6 +43,12 @@ import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.router.util.TravelTime;
 
 /**
+ * Per link, the traversal times of both populations are sorted, and a sweep
+ * only pairs traversals that are close enough in time for the kernel to reach
+ * the threshold. The pairs are accumulated in parallel, with one partition of
+ * first persons per processor, so that no pair is held more than once. The
+ * resulting coefficients are stored as a sparse matrix over dense person
+ * indices.
  *
  * @author Gunnar Flötteröd
  *
@@ -56,13 +60,30 @@ class PopulationDistance {
 	private final double flowCapacityFactor;
 	private final double kernelHalfTime_s;
 	private final double kernelThreshold;
+	private final double kernelMu_1_s;
 
-	// -------------------- MEMBERS --------------------
+	// Kernel values below the threshold only occur beyond this time difference.
+	private final double kernelHorizon_s;
 
-	private final ConcurrentHashMap<Id<Person>, ConcurrentHashMap<Id<Person>, Double>> personId2personId2aCoeff = new ConcurrentHashMap<>();
+	// -------------------- MEMBERS --------------------
 
 	private final Set<Id<Link>> consideredLinkIds;
 
+	// Person Id index -> dense person index; -1 if not contained.
+	private int[] idIndex2person = new int[0];
+
+	private final List<Id<Person>> personIds = new ArrayList<>();
+
+	// Sparse a-coefficients in compressed row format, columns sorted per row.
+	private int[] rowStarts;
+	private int[] columns;
+	private double[] values;
+
+	// Symmetric a(i,j) + a(j,i) per person i, without i itself, columns sorted.
+	private int[] neighbourStarts;
+	private int[] neighbours;
+	private double[] symmetricValues;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	PopulationDistance(final PlansContainer pop1, final PlansContainer pop2, final Scenario scenario,
@@ -72,6 +93,8 @@ class PopulationDistance {
 				ATAPConfigGroup.class);
 		this.kernelHalfTime_s = greedoConfig.getKernelHalftime_s();
 		this.kernelThreshold = greedoConfig.getKernelThreshold();
+		this.kernelMu_1_s = Math.log(2.0) / this.kernelHalfTime_s;
+		this.kernelHorizon_s = this.computeKernelHorizon_s();
 
 		this.consideredLinkIds = new LinkedHashSet<>(
 				1 + (int) (greedoConfig.getLinkShareInDistance() * scenario.getNetwork().getLinks().size()));
@@ -81,32 +104,216 @@ class PopulationDistance {
 			this.consideredLinkIds.add(allLinkIds.get(i));
 		}
 
-		final ConcurrentHashMap<Link, CopyOnWriteArrayList<LinkEntry>> link2entries1 = this.plans2linkEntries(pop1,
-				scenario, mode2travelTime);
-		final ConcurrentHashMap<Link, CopyOnWriteArrayList<LinkEntry>> link2entries2 = this.plans2linkEntries(pop2,
-				scenario, mode2travelTime);
+		for (Id<Person> personId : pop1.getPersonIdView()) {
+			this.addPerson(personId);
+		}
+		for (Id<Person> personId : pop2.getPersonIdView()) {
+			this.addPerson(personId);
+		}
 
-		this.updateCoeffsParallel(link2entries1, link2entries1, 1.0); // K(x,x) terms
-		this.updateCoeffsParallel(link2entries1, link2entries2, -2.0); // K(x,y) terms
-		this.updateCoeffsParallel(link2entries2, link2entries2, 1.0); // K(y,y) terms
+		final Map<Link, LinkEntries> link2entries1 = this.plans2linkEntries(pop1, scenario, mode2travelTime);
+		final Map<Link, LinkEntries> link2entries2 = this.plans2linkEntries(pop2, scenario, mode2travelTime);
 
-		System.gc(); // link2entries no longer needed
+		final PairAccumulator[] coeffs = new PairAccumulator[Runtime.getRuntime().availableProcessors()];
+		for (int partition = 0; partition < coeffs.length; partition++) {
+			coeffs[partition] = new PairAccumulator();
+		}
+		this.updateCoeffsParallel(link2entries1, link2entries1, 1.0, coeffs); // K(x,x) terms
+		this.updateCoeffsParallel(link2entries1, link2entries2, -2.0, coeffs); // K(x,y) terms
+		this.updateCoeffsParallel(link2entries2, link2entries2, 1.0, coeffs); // K(y,y) terms
+		this.compress(coeffs);
+		this.symmetrize();
 	}
 
 	// -------------------- INTERNALS --------------------
 
-	private class LinkEntry {
+	private double kernel(final double absDelta_s) {
+		final double muTimesDelta = this.kernelMu_1_s * absDelta_s;
+		return Math.exp(-muTimesDelta) * (1.0 + muTimesDelta);
+	}
+
+	private double computeKernelHorizon_s() {
+		if (this.kernelThreshold <= 0.0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		// The kernel decreases monotonically in the time difference.
+		double upper_s = this.kernelHalfTime_s;
+		while (this.kernel(upper_s) >= this.kernelThreshold) {
+			upper_s *= 2.0;
+		}
+		double lower_s = 0.0;
+		for (int i = 0; i < 100; i++) {
+			final double middle_s = 0.5 * (lower_s + upper_s);
+			if (this.kernel(middle_s) >= this.kernelThreshold) {
+				lower_s = middle_s;
+			} else {
+				upper_s = middle_s;
+			}
+		}
+		// Conservative; the exact threshold test is still applied to every pair.
+		return upper_s * (1.0 + 1e-9) + 1e-9;
+	}
+
+	private void addPerson(final Id<Person> personId) {
+		final int idIndex = personId.index();
+		if (idIndex >= this.idIndex2person.length) {
+			final int oldLength = this.idIndex2person.length;
+			this.idIndex2person = Arrays.copyOf(this.idIndex2person, Math.max(idIndex + 1, 2 * oldLength));
+			Arrays.fill(this.idIndex2person, oldLength, this.idIndex2person.length, -1);
+		}
+		if (this.idIndex2person[idIndex] < 0) {
+			this.idIndex2person[idIndex] = this.personIds.size();
+			this.personIds.add(personId);
+		}
+	}
+
+	int getPersonIndex(final Id<Person> personId) {
+		final int idIndex = personId.index();
+		return (idIndex < this.idIndex2person.length ? this.idIndex2person[idIndex] : -1);
+	}
+
+	/**
+	 * Link traversals as parallel primitive arrays, sorted by time once complete.
+	 */
+	private static class LinkEntries {
+
+		private int[] persons = new int[4];
+		private double[] times_s = new double[4];
+		private int size = 0;
+
+		void add(final int person, final double time_s) {
+			if (this.size == this.persons.length) {
+				this.persons = Arrays.copyOf(this.persons, 2 * this.size);
+				this.times_s = Arrays.copyOf(this.times_s, 2 * this.size);
+			}
+			this.persons[this.size] = person;
+			this.times_s[this.size] = time_s;
+			this.size++;
+		}
+
+		/**
+		 * In-place quicksort of both arrays by (time, person).
+		 */
+		void sortByTime() {
+			this.sort(0, this.size - 1);
+		}
+
+		private int compare(final int i, final int j) {
+			final int result = Double.compare(this.times_s[i], this.times_s[j]);
+			return (result != 0 ? result : Integer.compare(this.persons[i], this.persons[j]));
+		}
+
+		private void swap(final int i, final int j) {
+			final int person = this.persons[i];
+			this.persons[i] = this.persons[j];
+			this.persons[j] = person;
+			final double time_s = this.times_s[i];
+			this.times_s[i] = this.times_s[j];
+			this.times_s[j] = time_s;
+		}
+
+		private void sort(int low, int high) {
+			while (high - low >= 16) {
+				// Median of three, moved to high - 1 as the pivot.
+				final int middle = (low + high) >>> 1;
+				if (this.compare(middle, low) < 0) {
+					this.swap(middle, low);
+				}
+				if (this.compare(high, low) < 0) {
+					this.swap(high, low);
+				}
+				if (this.compare(high, middle) < 0) {
+					this.swap(high, middle);
+				}
+				this.swap(middle, high - 1);
+				final int pivot = high - 1;
+				int i = low;
+				int j = high - 1;
+				while (true) {
+					while (this.compare(++i, pivot) < 0) {
+					}
+					while (this.compare(--j, pivot) > 0) {
+					}
+					if (i >= j) {
+						break;
+					}
+					this.swap(i, j);
+				}
+				this.swap(i, high - 1);
+				// Recursion into the smaller part bounds the stack depth.
+				if (i - low < high - i) {
+					this.sort(low, i - 1);
+					low = i + 1;
+				} else {
+					this.sort(i + 1, high);
+					high = i - 1;
+				}
+			}
+			for (int i = low + 1; i <= high; i++) {
+				for (int j = i; (j > low) && (this.compare(j - 1, j) > 0); j--) {
+					this.swap(j - 1, j);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Open-addressing map from a (person, person) pair onto a summed coefficient.
+	 */
+	private static class PairAccumulator {
+
+		private long[] keys = new long[1024];
+		private double[] values = new double[1024];
+		private int size = 0;
+
+		PairAccumulator() {
+			Arrays.fill(this.keys, -1L);
+		}
+
+		private static long key(final int person1, final int person2) {
+			return (((long) person1) << 32) | (person2 & 0xFFFFFFFFL);
+		}
+
+		private static int slot(final long key, final int mask) {
+			long hash = key * 0x9E3779B97F4A7C15L;
+			return (int) (hash ^ (hash >>> 32)) & mask;
+		}
 
-		final Id<Person> personId;
+		void add(final long key, final double addend) {
+			if (2 * (this.size + 1) > this.keys.length) {
+				this.grow();
+			}
+			final int mask = this.keys.length - 1;
+			int slot = slot(key, mask);
+			while ((this.keys[slot] != -1L) && (this.keys[slot] != key)) {
+				slot = (slot + 1) & mask;
+			}
+			if (this.keys[slot] == -1L) {
+				this.keys[slot] = key;
+				this.size++;
+			}
+			this.values[slot] += addend;
+		}
 
-		final double time_s;
+		void add(final int person1, final int person2, final double addend) {
+			this.add(key(person1, person2), addend);
+		}
 
-		LinkEntry(final Id<Person> personId, final double time_s) {
-			this.personId = personId;
-			this.time_s = time_s;
+		private void grow() {
+			final long[] oldKeys = this.keys;
+			final double[] oldValues = this.values;
+			this.keys = new long[2 * oldKeys.length];
+			this.values = new double[2 * oldKeys.length];
+			Arrays.fill(this.keys, -1L);
+			this.size = 0;
+			for (int slot = 0; slot < oldKeys.length; slot++) {
+				if (oldKeys[slot] != -1L) {
+					this.add(oldKeys[slot], oldValues[slot]);
+				}
+			}
 		}
 	}
-	
+
 	private int noNetworkRouteWarningCnt = 0;
 
 	private List<Leg> extractNetworkLegs(final Plan plan) {
@@ -146,132 +353,211 @@ class PopulationDistance {
 		return result;
 	}
 
-	private ConcurrentHashMap<Link, CopyOnWriteArrayList<LinkEntry>> plans2linkEntries(final PlansContainer plans,
-			final Scenario scenario, Map<String, ? extends TravelTime> mode2travelTime) {
+	private Map<Link, LinkEntries> plans2linkEntries(final PlansContainer plans, final Scenario scenario,
+			Map<String, ? extends TravelTime> mode2travelTime) {
 		this.noNetworkRouteWarningCnt = 0;
-		final Map<Link, List<LinkEntry>> tmpResult = new LinkedHashMap<>();
+		final Map<Link, LinkEntries> result = new LinkedHashMap<>();
 		for (Id<Person> personId : plans.getPersonIdView()) {
+			final int person = this.getPersonIndex(personId);
 			for (Leg leg : this.extractNetworkLegs(plans.getSelectedPlan(personId))) {
 				final TravelTime travelTime = mode2travelTime.get(leg.getMode());
 				double time_s = leg.getDepartureTime().seconds();
 				for (Link link : this.allRelevantLinksAsList((NetworkRoute) leg.getRoute(), scenario.getNetwork())) {
-					tmpResult.computeIfAbsent(link, l -> new ArrayList<>()).add(new LinkEntry(personId, time_s));
+					result.computeIfAbsent(link, l -> new LinkEntries()).add(person, time_s);
 					time_s += travelTime.getLinkTravelTime(link, time_s, null, null);
 				}
 			}
 		}
-
-		final ConcurrentHashMap<Link, CopyOnWriteArrayList<LinkEntry>> result = new ConcurrentHashMap<>();
-		for (Map.Entry<Link, List<LinkEntry>> e : tmpResult.entrySet()) {
-			result.put(e.getKey(), new CopyOnWriteArrayList<>(e.getValue()));
-		}
+		result.values().parallelStream().forEach(entries -> entries.sortByTime());
 		return result;
 	}
 
-	private class JobProcessor implements Runnable {
-
-		private final BlockingQueue<Job> allJobs;
-		private final double fact;
-		private final ConcurrentHashMap<Link, CopyOnWriteArrayList<LinkEntry>> link2entries2;
-
-		JobProcessor(BlockingQueue<Job> allJobs, double fact,
-				ConcurrentHashMap<Link, CopyOnWriteArrayList<LinkEntry>> link2entries2) {
-			this.allJobs = allJobs;
-			this.fact = fact;
-			this.link2entries2 = link2entries2;
-		}
-
-		@Override
-		public void run() {
-			try {
-				while (true) {
-					Job job = this.allJobs.take();
-					if (job == Job.TERMINATE) {
-						break;
-					}
-					this.process(job);
+	/**
+	 * Only accumulates the pairs whose first person falls into the given
+	 * partition.
+	 */
+	private void updateCoeffs(final Link link, final LinkEntries entries1, final LinkEntries entries2,
+			final double fact, final int partition, final PairAccumulator[] coeffs) {
+
+		final double flowCap_veh_s = this.flowCapacityFactor * link.getCapacity() / link.getCapacityPeriod();
+		final double linkFact = fact * this.kernelMu_1_s / flowCap_veh_s;
+
+		int windowStart = 0;
+		for (int i = 0; i < entries1.size; i++) {
+			final double time1_s = entries1.times_s[i];
+			while ((windowStart < entries2.size) && (entries2.times_s[windowStart] < time1_s - this.kernelHorizon_s)) {
+				windowStart++;
+			}
+			if (entries1.persons[i] % coeffs.length != partition) {
+				continue;
+			}
+			for (int j = windowStart; (j < entries2.size)
+					&& (entries2.times_s[j] <= time1_s + this.kernelHorizon_s); j++) {
+				final double kernel = this.kernel(Math.abs(time1_s - entries2.times_s[j]));
+				if (kernel >= this.kernelThreshold) {
+					coeffs[partition].add(entries1.persons[i], entries2.persons[j], linkFact * kernel);
 				}
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
 			}
 		}
+	}
 
-		void process(Job job) {
-			final Link link = job.entry.getKey();
+	private void updateCoeffsParallel(final Map<Link, LinkEntries> link2entries1,
+			final Map<Link, LinkEntries> link2entries2, final double fact, final PairAccumulator[] coeffs) {
 
-			final double flowCap_veh_s = flowCapacityFactor * link.getCapacity() / link.getCapacityPeriod();
-			final double kernelMu_1_s = Math.log(2.0) / kernelHalfTime_s;
-			final double linkFact = this.fact * kernelMu_1_s / flowCap_veh_s;
+		final List<Link> links = new ArrayList<>(link2entries1.size());
+		for (Link link : link2entries1.keySet()) {
+			if (link2entries2.containsKey(link)) {
+				links.add(link);
+			}
+		}
 
-			final CopyOnWriteArrayList<LinkEntry> entries1 = job.entry.getValue();
-			final List<LinkEntry> entries2 = this.link2entries2.get(link);
-			if (entries1.size() > 0 && entries2 != null && entries2.size() > 0) {
-				for (LinkEntry entry1 : entries1) {
-					for (LinkEntry entry2 : entries2) {
-						final double muTimesDelta = kernelMu_1_s * Math.abs(entry1.time_s - entry2.time_s);
-						final double kernel = Math.exp(-muTimesDelta) * (1.0 + muTimesDelta);
-						if (kernel >= kernelThreshold) {
-							final double addend = linkFact * kernel;
-							personId2personId2aCoeff.computeIfAbsent(entry1.personId, id -> new ConcurrentHashMap<>())
-									.compute(entry2.personId, (id, coeff) -> coeff == null ? addend : coeff + addend);
+		IntStream.range(0, coeffs.length).parallel().forEach(partition -> {
+			for (Link link : links) {
+				this.updateCoeffs(link, link2entries1.get(link), link2entries2.get(link), fact, partition, coeffs);
+			}
+		});
+	}
 
-						}
-					}
+	private void compress(final PairAccumulator[] coeffs) {
+		final int personCnt = this.personIds.size();
+		this.rowStarts = new int[personCnt + 1];
+		int size = 0;
+		for (PairAccumulator partitionCoeffs : coeffs) {
+			for (int slot = 0; slot < partitionCoeffs.keys.length; slot++) {
+				if (partitionCoeffs.keys[slot] != -1L) {
+					this.rowStarts[(int) (partitionCoeffs.keys[slot] >>> 32) + 1]++;
 				}
 			}
+			size += partitionCoeffs.size;
+		}
+		for (int row = 0; row < personCnt; row++) {
+			this.rowStarts[row + 1] += this.rowStarts[row];
+		}
+		this.columns = new int[size];
+		this.values = new double[size];
+		final int[] nextPositions = Arrays.copyOf(this.rowStarts, personCnt);
+		for (int partition = 0; partition < coeffs.length; partition++) {
+			final PairAccumulator partitionCoeffs = coeffs[partition];
+			for (int slot = 0; slot < partitionCoeffs.keys.length; slot++) {
+				if (partitionCoeffs.keys[slot] != -1L) {
+					final int position = nextPositions[(int) (partitionCoeffs.keys[slot] >>> 32)]++;
+					this.columns[position] = (int) partitionCoeffs.keys[slot];
+					this.values[position] = partitionCoeffs.values[slot];
+				}
+			}
+			// The rows of this partition are complete, release its table.
+			coeffs[partition] = null;
+		}
+		// Sort each row by column (insertion sort; rows are short).
+		for (int row = 0; row < personCnt; row++) {
+			for (int i = this.rowStarts[row] + 1; i < this.rowStarts[row + 1]; i++) {
+				final int column = this.columns[i];
+				final double value = this.values[i];
+				int j = i - 1;
+				while ((j >= this.rowStarts[row]) && (this.columns[j] > column)) {
+					this.columns[j + 1] = this.columns[j];
+					this.values[j + 1] = this.values[j];
+					j--;
+				}
+				this.columns[j + 1] = column;
+				this.values[j + 1] = value;
+			}
 		}
-
 	}
 
-	private static class Job {
+	private void symmetrize() {
+		final int personCnt = this.personIds.size();
 
-		static Job TERMINATE = new Job(null);
-
-		private final Map.Entry<Link, CopyOnWriteArrayList<LinkEntry>> entry;
+		// Transposition by counting sort keeps the columns of each row sorted.
+		final int[] transposedStarts = new int[personCnt + 1];
+		for (int position = 0; position < this.columns.length; position++) {
+			transposedStarts[this.columns[position] + 1]++;
+		}
+		for (int row = 0; row < personCnt; row++) {
+			transposedStarts[row + 1] += transposedStarts[row];
+		}
+		final int[] transposedColumns = new int[this.columns.length];
+		final double[] transposedValues = new double[this.columns.length];
+		final int[] nextPositions = Arrays.copyOf(transposedStarts, personCnt);
+		for (int row = 0; row < personCnt; row++) {
+			for (int position = this.rowStarts[row]; position < this.rowStarts[row + 1]; position++) {
+				final int transposedPosition = nextPositions[this.columns[position]]++;
+				transposedColumns[transposedPosition] = row;
+				transposedValues[transposedPosition] = this.values[position];
+			}
+		}
 
-		Job(Map.Entry<Link, CopyOnWriteArrayList<LinkEntry>> entry) {
-			this.entry = entry;
+		// Merge each row with its transposed row, dropping the diagonal.
+		this.neighbourStarts = new int[personCnt + 1];
+		int[] mergedColumns = new int[2 * this.columns.length];
+		double[] mergedValues = new double[2 * this.columns.length];
+		int size = 0;
+		for (int row = 0; row < personCnt; row++) {
+			int position = this.rowStarts[row];
+			int transposedPosition = transposedStarts[row];
+			while ((position < this.rowStarts[row + 1]) || (transposedPosition < transposedStarts[row + 1])) {
+				final int column = (position < this.rowStarts[row + 1] ? this.columns[position] : Integer.MAX_VALUE);
+				final int transposedColumn = (transposedPosition < transposedStarts[row + 1]
+						? transposedColumns[transposedPosition]
+						: Integer.MAX_VALUE);
+				final int mergedColumn = Math.min(column, transposedColumn);
+				double mergedValue = 0.0;
+				if (column == mergedColumn) {
+					mergedValue += this.values[position++];
+				}
+				if (transposedColumn == mergedColumn) {
+					mergedValue += transposedValues[transposedPosition++];
+				}
+				if (mergedColumn != row) {
+					mergedColumns[size] = mergedColumn;
+					mergedValues[size] = mergedValue;
+					size++;
+				}
+			}
+			this.neighbourStarts[row + 1] = size;
 		}
+		this.neighbours = Arrays.copyOf(mergedColumns, size);
+		this.symmetricValues = Arrays.copyOf(mergedValues, size);
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
 
+	int getPersonCnt() {
+		return this.personIds.size();
 	}
 
-	private void updateCoeffsParallel(final ConcurrentHashMap<Link, CopyOnWriteArrayList<LinkEntry>> link2entries1,
-			final ConcurrentHashMap<Link, CopyOnWriteArrayList<LinkEntry>> link2entries2, final double fact) {
+	/**
+	 * Positions of the persons j != person with a nonzero a(person, j) or
+	 * a(j, person) are [getFirstNeighbourPosition(person),
+	 * getEndNeighbourPosition(person)).
+	 */
+	int getFirstNeighbourPosition(final int person) {
+		return this.neighbourStarts[person];
+	}
 
-		final int threadCnt = Runtime.getRuntime().availableProcessors();
-		final BlockingQueue<Job> jobQueue = new LinkedBlockingQueue<>(100 * threadCnt);
-		final List<Thread> threads = new ArrayList<>();
+	int getEndNeighbourPosition(final int person) {
+		return this.neighbourStarts[person + 1];
+	}
 
-		try {
-			for (int i = 0; i < threadCnt; i++) {
-				final JobProcessor jobProcessor = new JobProcessor(jobQueue, fact, link2entries2);
-				final Thread thread = new Thread(jobProcessor);
-				threads.add(thread);
-				thread.start();
-			}
-			for (Map.Entry<Link, CopyOnWriteArrayList<LinkEntry>> e : link2entries1.entrySet()) {
-				jobQueue.put(new Job(e));
-			}
-			for (int i = 0; i < threads.size(); i++) {
-				jobQueue.put(Job.TERMINATE);
-			}
-			for (Thread thread : threads) {
-				thread.join();
-			}
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
-		}
+	int getNeighbour(final int position) {
+		return this.neighbours[position];
 	}
 
-	ConcurrentHashMap<Id<Person>, ConcurrentHashMap<Id<Person>, Double>> getPersonId2personId2aCoeff() {
-		return this.personId2personId2aCoeff;
+	/**
+	 * Returns a(person, neighbour) + a(neighbour, person).
+	 */
+	double getSymmetricCoefficient(final int position) {
+		return this.symmetricValues[position];
 	}
 
 	double getACoefficient(final Id<Person> personId1, final Id<Person> personId2) {
-		if (this.personId2personId2aCoeff.containsKey(personId1)) {
-			return this.personId2personId2aCoeff.get(personId1).getOrDefault(personId2, 0.0);
-		} else {
+		final int person1 = this.getPersonIndex(personId1);
+		final int person2 = this.getPersonIndex(personId2);
+		if ((person1 < 0) || (person2 < 0)) {
 			return 0.0;
 		}
+		final int position = Arrays.binarySearch(this.columns, this.rowStarts[person1],
+				this.rowStarts[person1 + 1], person2);
+		return (position >= 0 ? this.values[position] : 0.0);
 	}
 }
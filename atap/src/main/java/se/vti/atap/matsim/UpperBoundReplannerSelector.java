@@ -41,15 +41,15 @@ class UpperBoundReplannerSelector extends AbstractReplannerSelector {
 
 	private class JobProcessor implements Runnable {
 
-		private final ConcurrentHashMap<Id<Person>, ConcurrentHashMap<Id<Person>, Double>> personId2personId2aCoeff;
+		private final PopulationDistance populationDistance;
 
 		private final List<Id<Person>> myPersonIds = new ArrayList<>();
 		private final ConcurrentHashMap<Id<Person>, Double> personId2bParam;
 
 		JobProcessor(ConcurrentHashMap<Id<Person>, Double> personId2bParam,
-				ConcurrentHashMap<Id<Person>, ConcurrentHashMap<Id<Person>, Double>> personId2personId2aCoeff) {
+				PopulationDistance populationDistance) {
 			this.personId2bParam = personId2bParam;
-			this.personId2personId2aCoeff = personId2personId2aCoeff;
+			this.populationDistance = populationDistance;
 		}
 
 		void addPersonId(Id<Person> personId) {
@@ -57,14 +57,8 @@ class UpperBoundReplannerSelector extends AbstractReplannerSelector {
 		}
 
 		private double computeASum(Id<Person> personId1, Id<Person> personId2) {
-			double aSum = 0.0;
-			if (this.personId2personId2aCoeff.containsKey(personId1)) {
-				aSum += this.personId2personId2aCoeff.get(personId1).getOrDefault(personId2, 0.0);
-			}
-			if (this.personId2personId2aCoeff.containsKey(personId2)) {
-				aSum += this.personId2personId2aCoeff.get(personId2).getOrDefault(personId1, 0.0);
-			}
-			return aSum;
+			return this.populationDistance.getACoefficient(personId1, personId2)
+					+ this.populationDistance.getACoefficient(personId2, personId1);
 		}
 
 		private List<Id<Person>> replannerIds = null;
@@ -174,7 +168,7 @@ class UpperBoundReplannerSelector extends AbstractReplannerSelector {
 		final int threadCnt = Runtime.getRuntime().availableProcessors();
 		final List<JobProcessor> jobProcessors = new ArrayList<>(threadCnt);
 		for (int i = 0; i < threadCnt; i++) {
-			jobProcessors.add(new JobProcessor(personId2bParam, this.populationDistance.getPersonId2personId2aCoeff()));
+			jobProcessors.add(new JobProcessor(personId2bParam, this.populationDistance));
 		}
 
 		int processorIndex = 0;
@@ -22,6 +22,11 @@ package se.vti.atap.minimalframework;
 import java.util.Set;
 
 /**
+ * In parallel mode, the utilities and candidate plans of the agents are
+ * computed concurrently. This requires the PlanInnovation and the
+ * UtilityFunction to be safe for concurrent calls on different agents. Agents
+ * are processed independently, so a parallel run reproduces the sequential run
+ * if the PlanInnovation draws its random numbers per agent.
  * 
  * @author GunnarF
  *
@@ -43,6 +48,8 @@ public class Runner<P extends Plan, A extends Agent<P>, T extends NetworkConditi
 	private Logger<A, T> logger = null;
 
 	private boolean verbose = true;
+
+	private boolean parallel = false;
 	
 	public Runner() {
 	}
@@ -87,6 +94,27 @@ public class Runner<P extends Plan, A extends Agent<P>, T extends NetworkConditi
 		return this;
 	}
 
+	public Runner<P, A, T> setParallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
+	private void updateCandidatePlan(A agent, T networkConditions) {
+
+		P currentPlan = agent.getCurrentPlan();
+		currentPlan.setUtility(this.utilityFunction.compute(currentPlan, agent, networkConditions));
+
+		this.planInnovation.assignCandidatePlan(agent, networkConditions);
+		P candidatePlan = agent.getCandidatePlan();
+		if (candidatePlan.getUtility() == null) {
+			candidatePlan.setUtility(this.utilityFunction.compute(candidatePlan, agent, networkConditions));
+		}
+
+		if (candidatePlan.getUtility() < currentPlan.getUtility()) {
+			agent.setCandidatePlan(currentPlan);
+		}
+	}
+
 	public void run() {
 
 		this.agents.stream().forEach(a -> this.planInnovation.assignInitialPlan(a));
@@ -96,21 +124,13 @@ public class Runner<P extends Plan, A extends Agent<P>, T extends NetworkConditi
 				System.out.println("Iteration " + iteration + " of " + this.maxIterations);
 			}
 
-			T networkConditions = this.networkLoading.compute(this.agents);
-
-			for (A agent : this.agents) {
-
-				P currentPlan = agent.getCurrentPlan();
-				currentPlan.setUtility(this.utilityFunction.compute(currentPlan, agent, networkConditions));
-
-				this.planInnovation.assignCandidatePlan(agent, networkConditions);
-				P candidatePlan = agent.getCandidatePlan();
-				if (candidatePlan.getUtility() == null) {
-					candidatePlan.setUtility(this.utilityFunction.compute(candidatePlan, agent, networkConditions));
-				}
+			final T networkConditions = this.networkLoading.compute(this.agents);
 
-				if (candidatePlan.getUtility() < currentPlan.getUtility()) {
-					agent.setCandidatePlan(currentPlan);
+			if (this.parallel) {
+				this.agents.parallelStream().forEach(a -> this.updateCandidatePlan(a, networkConditions));
+			} else {
+				for (A agent : this.agents) {
+					this.updateCandidatePlan(agent, networkConditions);
 				}
 			}
 
@@ -19,37 +19,81 @@
  */
 package se.vti.atap.minimalframework.examples.parallel_links;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 import se.vti.atap.minimalframework.NetworkLoading;
 
 /**
+ * Link flows are summed in fixed chunks of agents, each into its own partial
+ * array, and the partial arrays are then added up in chunk order. The chunking
+ * does not depend on the number of threads, so parallel and sequential loading
+ * produce identical link flows.
  * 
  * @author GunnarF
  *
  */
 public class NetworkLoadingImpl implements NetworkLoading<AgentImpl, NetworkConditionsImpl> {
 
+	private static final int AGENTS_PER_CHUNK = 4096;
+
 	protected Network network;
 
+	private boolean parallel = false;
+
 	public NetworkLoadingImpl(Network network) {
 		this.network = network;
 	}
 
-	public double[] computeLinkFlows_veh(Set<AgentImpl> agentsUsingCurrentPlan,
-			Set<AgentImpl> agentsUsingCandidatePlan) {
+	public NetworkLoadingImpl setParallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
+	private double[] computePartialLinkFlows_veh(List<AgentImpl> agents, boolean[] usingCandidatePlan, int from,
+			int to) {
 		double[] linkFlows_veh = new double[this.network.getNumberOfLinks()];
-		for (AgentImpl odPair : agentsUsingCurrentPlan) {
-			double[] pathFlows_veh = odPair.getCurrentPlan().computePathFlows_veh();
+		for (int i = from; i < to; i++) {
+			AgentImpl odPair = agents.get(i);
+			double[] pathFlows_veh = (usingCandidatePlan[i] ? odPair.getCandidatePlan()
+					: odPair.getCurrentPlan()).computePathFlows_veh();
 			for (int path = 0; path < odPair.getNumberOfPaths(); path++) {
 				linkFlows_veh[odPair.availableLinks[path]] += pathFlows_veh[path];
 			}
 		}
+		return linkFlows_veh;
+	}
+
+	public double[] computeLinkFlows_veh(Set<AgentImpl> agentsUsingCurrentPlan,
+			Set<AgentImpl> agentsUsingCandidatePlan) {
+		List<AgentImpl> agents = new ArrayList<>(agentsUsingCurrentPlan.size() + agentsUsingCandidatePlan.size());
+		boolean[] usingCandidatePlan = new boolean[agentsUsingCurrentPlan.size() + agentsUsingCandidatePlan.size()];
+		for (AgentImpl odPair : agentsUsingCurrentPlan) {
+			agents.add(odPair);
+		}
 		for (AgentImpl odPair : agentsUsingCandidatePlan) {
-			double[] pathFlows_veh = odPair.getCandidatePlan().computePathFlows_veh();
-			for (int path = 0; path < odPair.getNumberOfPaths(); path++) {
-				linkFlows_veh[odPair.availableLinks[path]] += pathFlows_veh[path];
+			usingCandidatePlan[agents.size()] = true;
+			agents.add(odPair);
+		}
+
+		int chunkCnt = Math.max(1, (agents.size() + AGENTS_PER_CHUNK - 1) / AGENTS_PER_CHUNK);
+		IntStream chunks = IntStream.range(0, chunkCnt);
+		if (this.parallel) {
+			chunks = chunks.parallel();
+		}
+		List<double[]> partialLinkFlows_veh = chunks
+				.mapToObj(chunk -> this.computePartialLinkFlows_veh(agents, usingCandidatePlan,
+						chunk * AGENTS_PER_CHUNK, Math.min(agents.size(), (chunk + 1) * AGENTS_PER_CHUNK)))
+				.toList();
+
+		double[] linkFlows_veh = partialLinkFlows_veh.get(0);
+		for (int chunk = 1; chunk < chunkCnt; chunk++) {
+			double[] partial = partialLinkFlows_veh.get(chunk);
+			for (int link = 0; link < linkFlows_veh.length; link++) {
+				linkFlows_veh[link] += partial[link];
 			}
 		}
 		return linkFlows_veh;
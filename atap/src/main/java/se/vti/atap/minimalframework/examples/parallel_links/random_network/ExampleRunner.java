@@ -59,6 +59,7 @@ public class ExampleRunner {
 	private Integer iterations = null;
 	private Integer replications = null;
 	private String fileName = null;
+	private boolean parallel = false;
 
 	private Double minT0_s = null;
 	private Double maxT0_s = null;
@@ -129,6 +130,11 @@ public class ExampleRunner {
 		return this;
 	}
 
+	ExampleRunner setParallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
 	//
 
 	Network createRandomNetwork() {
@@ -167,8 +173,9 @@ public class ExampleRunner {
 	Runner<PathFlows, AgentImpl, NetworkConditionsImpl> createRunner(Network network, Set<AgentImpl> agents,
 			Random rnd) {
 		var runner = new Runner<PathFlows, AgentImpl, NetworkConditionsImpl>().setAgents(agents)
-				.setNetworkLoading(new NetworkLoadingImpl(network)).setUtilityFunction(new UtilityFunctionImpl())
-				.setVerbose(false).setIterations(this.iterations);
+				.setNetworkLoading(new NetworkLoadingImpl(network).setParallel(this.parallel))
+				.setUtilityFunction(new UtilityFunctionImpl()).setVerbose(false).setIterations(this.iterations)
+				.setParallel(this.parallel);
 		if (Mode.TRIPMAKERS.equals(this.mode)) {
 			runner.setPlanInnovation(new ShortestPathsForTripmakers(network).setRandomizing(rnd));
 		} else if (Mode.ODPAIRS.equals(this.mode)) {
@@ -28,6 +28,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import se.vti.atap.minimalframework.PlanInnovation;
 import se.vti.atap.minimalframework.examples.parallel_links.AgentImpl;
@@ -36,6 +37,9 @@ import se.vti.atap.minimalframework.examples.parallel_links.NetworkConditionsImp
 import se.vti.atap.minimalframework.examples.parallel_links.PathFlows;
 
 /**
+ * All state is kept per OD pair, including, when randomizing, a random stream
+ * seeded from the given Random when the initial plan is assigned. Candidate
+ * plans can then be assigned concurrently and reproducibly.
  * 
  * @author GunnarF
  * 
@@ -133,6 +137,8 @@ public class GreedyPathAssignmentForODFlows implements PlanInnovation<AgentImpl,
 
 	private final Map<AgentImpl, SingleODBeckmanApproximation> od2beckman = new LinkedHashMap<>();
 
+	private final Map<AgentImpl, Random> od2rnd = new ConcurrentHashMap<>();
+
 	public GreedyPathAssignmentForODFlows(Network network) {
 		this.initialNetworkConditions = NetworkConditionsImpl.createEmptyNetworkConditions(network);
 	}
@@ -143,11 +149,12 @@ public class GreedyPathAssignmentForODFlows implements PlanInnovation<AgentImpl,
 	}
 
 	private double[] computeRandomPathFlows_veh(AgentImpl odPair) {
+		Random odRnd = this.od2rnd.get(odPair);
 		double[] pathFlows_veh = new double[odPair.getNumberOfPaths()];
 		
 		do {
 			for (int path = 0; path < odPair.getNumberOfPaths(); path++) {
-				pathFlows_veh[path] = this.rnd.nextDouble();
+				pathFlows_veh[path] = odRnd.nextDouble();
 			}
 		} while (Arrays.stream(pathFlows_veh).sum() < 1e-8);
 		
@@ -161,6 +168,7 @@ public class GreedyPathAssignmentForODFlows implements PlanInnovation<AgentImpl,
 	@Override
 	public void assignInitialPlan(AgentImpl odPair) {
 		if (this.rnd != null) {
+			this.od2rnd.put(odPair, new Random(this.rnd.nextLong()));
 			double[] pathFlows_veh = this.computeRandomPathFlows_veh(odPair);
 			odPair.setCurrentPlan(new PathFlows(pathFlows_veh));
 		} else {
@@ -19,7 +19,9 @@
  */
 package se.vti.atap.minimalframework.examples.parallel_links.random_network;
 
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import se.vti.atap.minimalframework.PlanInnovation;
 import se.vti.atap.minimalframework.examples.parallel_links.AgentImpl;
@@ -28,6 +30,9 @@ import se.vti.atap.minimalframework.examples.parallel_links.NetworkConditionsImp
 import se.vti.atap.minimalframework.examples.parallel_links.PathFlows;
 
 /**
+ * When randomizing, each trip maker draws from its own random stream, seeded
+ * from the given Random when its initial plan is assigned. Candidate plans can
+ * then be assigned concurrently and reproducibly.
  * 
  * @author GunnarF
  *
@@ -38,6 +43,8 @@ public class ShortestPathsForTripmakers implements PlanInnovation<AgentImpl, Net
 
 	private Random rnd = null;
 
+	private final Map<AgentImpl, Random> tripMaker2rnd = new ConcurrentHashMap<>();
+
 	public ShortestPathsForTripmakers(Network network) {
 		this.initialNetworkConditions = NetworkConditionsImpl.createEmptyNetworkConditions(network);
 	}
@@ -50,8 +57,10 @@ public class ShortestPathsForTripmakers implements PlanInnovation<AgentImpl, Net
 	@Override
 	public void assignInitialPlan(AgentImpl tripMaker) {
 		if (this.rnd != null) {
-			tripMaker
-					.setCurrentPlan(new PathFlows(tripMaker.computeRandomPath(this.rnd), tripMaker.getNumberOfPaths()));
+			Random tripMakerRnd = new Random(this.rnd.nextLong());
+			this.tripMaker2rnd.put(tripMaker, tripMakerRnd);
+			tripMaker.setCurrentPlan(
+					new PathFlows(tripMaker.computeRandomPath(tripMakerRnd), tripMaker.getNumberOfPaths()));
 		} else {
 			tripMaker.setCurrentPlan(new PathFlows(tripMaker.computeBestPath(this.initialNetworkConditions),
 					tripMaker.getNumberOfPaths()));
@@ -62,8 +71,8 @@ public class ShortestPathsForTripmakers implements PlanInnovation<AgentImpl, Net
 	public void assignCandidatePlan(AgentImpl tripMaker, NetworkConditionsImpl networkConditions) {
 		if (this.rnd != null) {
 			// attention, may be worse than the current plan
-			tripMaker
-					.setCandidatePlan(new PathFlows(tripMaker.computeRandomPath(this.rnd), tripMaker.getNumberOfPaths()));
+			tripMaker.setCandidatePlan(new PathFlows(tripMaker.computeRandomPath(this.tripMaker2rnd.get(tripMaker)),
+					tripMaker.getNumberOfPaths()));
 		} else {
 			tripMaker.setCandidatePlan(
 					new PathFlows(tripMaker.computeBestPath(networkConditions), tripMaker.getNumberOfPaths()));
@@ -64,4 +64,42 @@ public class EmulationConfigGroup extends ReflectiveConfigGroup {
 		this.batchSize = batchSize;
 	}
 
+	// -------------------- directScoring --------------------
+
+	/*
+	 * If true, plans are scored without creating events whenever no
+	 * EmulationHandlers are registered and all plan element emulators are of the
+	 * default types. Otherwise, event-based emulation is used.
+	 */
+	private boolean directScoring = false;
+
+	@StringGetter("directScoring")
+	public boolean getDirectScoring() {
+		return this.directScoring;
+	}
+
+	@StringSetter("directScoring")
+	public void setDirectScoring(boolean directScoring) {
+		this.directScoring = directScoring;
+	}
+
+	// -------------------- scoreCaching --------------------
+
+	/*
+	 * If true, a person whose selected plan and travel times are unchanged since
+	 * a recent emulation is not emulated again but receives the previous score.
+	 * Only used if no EmulationHandlers are registered.
+	 */
+	private boolean scoreCaching = false;
+
+	@StringGetter("scoreCaching")
+	public boolean getScoreCaching() {
+		return this.scoreCaching;
+	}
+
+	@StringSetter("scoreCaching")
+	public void setScoreCaching(boolean scoreCaching) {
+		this.scoreCaching = scoreCaching;
+	}
+
 }
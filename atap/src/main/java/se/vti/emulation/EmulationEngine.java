@@ -20,22 +20,20 @@
  */
 package se.vti.emulation;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
@@ -43,6 +41,8 @@ import org.matsim.api.core.v01.population.Population;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.ShutdownListener;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.handler.EventHandler;
 import org.matsim.core.population.PersonUtils;
@@ -51,6 +51,7 @@ import org.matsim.core.replanning.StrategyManager;
 import org.matsim.core.replanning.selectors.BestPlanSelector;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.scoring.EventsToScore;
+import org.matsim.core.scoring.ScoringFunction;
 import org.matsim.core.scoring.ScoringFunctionFactory;
 
 import com.google.inject.Inject;
@@ -66,7 +67,7 @@ import se.vti.emulation.handlers.EmulationHandler;
  * @author Gunnar Flötteröd
  * 
  */
-public class EmulationEngine {
+public class EmulationEngine implements ShutdownListener {
 
 	// -------------------- CONSTANTS --------------------
 
@@ -80,6 +81,11 @@ public class EmulationEngine {
 	private final Provider<Set<EmulationHandler>> emulationHandlerProvider;
 	private final Provider<ScoringFunctionFactory> scoringFunctionFactoryProvider;
 
+	// One entry per plan and travel time snapshot, hence room for several of each.
+	private final EmulationScoreCache scoreCache = new EmulationScoreCache(16);
+
+	private volatile Consumer<Plan> planTimesOverwriteListener = null;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	@Inject
@@ -153,122 +159,220 @@ public class EmulationEngine {
 				overrideTravelTimesFromFirstListEntry);
 	}
 
-	public void emulate(Collection<? extends Person> persons, int iteration,
-			final List<Map<String, ? extends TravelTime>> listOfMode2travelTime, final EventHandler eventsHandler,
-			final boolean overrideTravelTimesFromFirstListEntry) {
+	/**
+	 * The listener is called before the emulation overwrites the times of a
+	 * plan, e.g. to keep a copy of the plan's previous state. It is called from
+	 * the worker threads, concurrently for different persons. Null removes the
+	 * listener.
+	 */
+	public void setPlanTimesOverwriteListener(final Consumer<Plan> planTimesOverwriteListener) {
+		this.planTimesOverwriteListener = planTimesOverwriteListener;
+	}
 
-		Iterator<? extends Person> personIterator = persons.iterator();
-		List<Thread> threads = new LinkedList<>();
+	// -------------------- WORKER POOL --------------------
 
-		long totalNumberOfPersons = persons.size();
-		AtomicLong processedNumberOfPersons = new AtomicLong(0);
-		AtomicBoolean finished = new AtomicBoolean(false);
+	private ForkJoinPool pool = null;
 
-		logger.info("[[Suppressing logging while emulating.]]");
-		final Level originalLogLevel = LogManager.getRootLogger().getLevel();
-		Configurator.setRootLevel(Level.ERROR);
+	private final ThreadLocal<PlanEmulator> workerPlanEmulator = ThreadLocal.withInitial(() -> {
+		synchronized (this.planEmulatorProvider) {
+			return this.planEmulatorProvider.get();
+		}
+	});
+
+	private synchronized ForkJoinPool getOrCreatePool() {
+		final int threadCnt = Math.max(1, this.scenario.getConfig().global().getNumberOfThreads());
+		if ((this.pool == null) || this.pool.isShutdown() || (this.pool.getParallelism() != threadCnt)) {
+			this.shutdown();
+			this.pool = new ForkJoinPool(threadCnt);
+		}
+		return this.pool;
+	}
+
+	/**
+	 * Stops the worker threads. A later emulate(..) call starts a new pool.
+	 */
+	public synchronized void shutdown() {
+		if (this.pool != null) {
+			this.pool.shutdown();
+			this.pool = null;
+		}
+	}
 
-		for (int i = 0; i < this.scenario.getConfig().global().getNumberOfThreads(); i++) {
-			Thread thread = new Thread(() -> {
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		this.shutdown();
+	}
 
-				final PlanEmulator planEmulator;
-				synchronized (this.planEmulatorProvider) {
-					planEmulator = this.planEmulatorProvider.get();
+	private void emulateBatch(List<? extends Person> batch, int iteration,
+			final List<Map<String, ? extends TravelTime>> listOfMode2travelTime, final EventHandler eventsHandler,
+			final boolean overrideTravelTimesFromFirstListEntry, final boolean directScoringAllowed,
+			final long[] travelTimesIds) {
+
+		// Per person and travel time snapshot, at index person * travelTimesCnt + snapshot.
+		final int travelTimesCnt = listOfMode2travelTime.size();
+		final double[] scores = new double[batch.size() * travelTimesCnt];
+		final boolean[] toEmulate = new boolean[batch.size() * travelTimesCnt];
+
+		final Consumer<Plan> planTimesOverwriteListener = this.planTimesOverwriteListener;
+		for (int i = 0; i < batch.size(); i++) {
+			final Person person = batch.get(i);
+			final Plan plan = person.getSelectedPlan();
+			for (int travelTimeIndex = 0; travelTimeIndex < travelTimesCnt; travelTimeIndex++) {
+				final boolean planTimesToBeWritten = overrideTravelTimesFromFirstListEntry && (travelTimeIndex == 0);
+				final Double score = (travelTimesIds == null ? null
+						: this.scoreCache.getScore(person.getId(), plan, travelTimesIds[travelTimeIndex],
+								planTimesToBeWritten));
+				if (score != null) {
+					scores[i * travelTimesCnt + travelTimeIndex] = score;
+				} else if (planTimesToBeWritten) {
+					// Overwriting the plan times invalidates all scores of the plan.
+					Arrays.fill(toEmulate, i * travelTimesCnt, (i + 1) * travelTimesCnt, true);
+					if (travelTimesIds != null) {
+						this.scoreCache.removeScores(person.getId(), plan);
+					}
+					if (planTimesOverwriteListener != null) {
+						planTimesOverwriteListener.accept(plan);
+					}
+					break;
+				} else {
+					toEmulate[i * travelTimesCnt + travelTimeIndex] = true;
 				}
+			}
+		}
 
-				final Set<Person> personsToScore = new LinkedHashSet<>();
-				Map<Id<Person>, Person> batch = new LinkedHashMap<>();
+		final PlanEmulator planEmulator = this.workerPlanEmulator.get();
+		final boolean directScoring = directScoringAllowed && planEmulator.supportsDirectScoring();
 
-				do {
-					batch.clear();
+		for (int travelTimeIndex = 0; travelTimeIndex < travelTimesCnt; travelTimeIndex++) {
+			Map<String, ? extends TravelTime> mode2travelTime = listOfMode2travelTime.get(travelTimeIndex);
 
-					synchronized (personIterator) {
-						while (personIterator.hasNext() && batch.size() < this.ierConfig.getBatchSize()) {
-							final Person person = personIterator.next();
-							batch.put(person.getId(), person);
-							personsToScore.add(person);
-						}
-					}
+			final List<Integer> indices = new ArrayList<>(batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				if (toEmulate[i * travelTimesCnt + travelTimeIndex]) {
+					indices.add(i);
+				}
+			}
+			if (indices.isEmpty()) {
+				continue;
+			}
 
-					Map<Person, Double> person2scoreSum = new LinkedHashMap<>(personsToScore.size());
-
-					for (int travelTimeIndex = 0; travelTimeIndex < listOfMode2travelTime.size(); travelTimeIndex++) {
-						Map<String, ? extends TravelTime> mode2travelTime = listOfMode2travelTime.get(travelTimeIndex);
-
-						final EventsManager eventsManager = EventsUtils.createEventsManager();
-						if (eventsHandler != null) {
-							eventsManager.addHandler(eventsHandler);
-						}
-						eventsManager.initProcessing();
-
-						final EventsToScore events2score;
-						synchronized (this.scoringFunctionFactoryProvider) {
-							events2score = EventsToScore.createWithoutScoreUpdating(this.scenario,
-									this.scoringFunctionFactoryProvider.get(), eventsManager);
-						}
-						events2score.beginIteration(iteration,
-								this.scenario.getConfig().controller().getLastIteration() == iteration);
-
-						for (Person person : batch.values()) {
-							planEmulator.emulate(person, person.getSelectedPlan(), // eventsManager,
-									mode2travelTime, eventsHandler, this.emulationHandlerProvider, iteration,
-									eventsManager, events2score,
-									overrideTravelTimesFromFirstListEntry && (travelTimeIndex == 0));
-						}
-
-						events2score.finish();
-						for (Person person : batch.values()) {
-							final double newScore = events2score.getAgentScore(person.getId());
-							person2scoreSum.compute(person, (p, s) -> s == null ? newScore : s + newScore);
-						}
+			if (directScoring) {
+				final ScoringFunction[] scoringFunctions = new ScoringFunction[indices.size()];
+				synchronized (this.scoringFunctionFactoryProvider) {
+					final ScoringFunctionFactory scoringFunctionFactory = this.scoringFunctionFactoryProvider.get();
+					for (int j = 0; j < indices.size(); j++) {
+						scoringFunctions[j] = scoringFunctionFactory
+								.createNewScoringFunction(batch.get(indices.get(j)));
 					}
+				}
+				for (int j = 0; j < indices.size(); j++) {
+					final Person person = batch.get(indices.get(j));
+					planEmulator.emulateAndScore(person, person.getSelectedPlan(), mode2travelTime,
+							scoringFunctions[j], overrideTravelTimesFromFirstListEntry && (travelTimeIndex == 0));
+					scoringFunctions[j].finish();
+					scores[indices.get(j) * travelTimesCnt + travelTimeIndex] = scoringFunctions[j].getScore();
+				}
+				continue;
+			}
 
-					for (Person person : batch.values()) {
-						person.getSelectedPlan().setScore(person2scoreSum.get(person) / listOfMode2travelTime.size());
-					}
+			final EventsManager eventsManager = EventsUtils.createEventsManager();
+			if (eventsHandler != null) {
+				eventsManager.addHandler(eventsHandler);
+			}
+			eventsManager.initProcessing();
 
-					processedNumberOfPersons.addAndGet(batch.size());
-				} while (batch.size() > 0);
-			});
+			final EventsToScore events2score;
+			synchronized (this.scoringFunctionFactoryProvider) {
+				events2score = EventsToScore.createWithoutScoreUpdating(this.scenario,
+						this.scoringFunctionFactoryProvider.get(), eventsManager);
+			}
+			events2score.beginIteration(iteration, this.scenario.getConfig().controller().getLastIteration() == iteration);
 
-			threads.add(thread);
-			thread.start();
+			for (int i : indices) {
+				final Person person = batch.get(i);
+				planEmulator.emulate(person, person.getSelectedPlan(), // eventsManager,
+						mode2travelTime, eventsHandler, this.emulationHandlerProvider, iteration, eventsManager,
+						events2score, overrideTravelTimesFromFirstListEntry && (travelTimeIndex == 0));
+			}
+
+			events2score.finish();
+			for (int i : indices) {
+				scores[i * travelTimesCnt + travelTimeIndex] = events2score.getAgentScore(batch.get(i).getId());
+			}
 		}
 
-		Thread progressThread = new Thread(() -> {
-			long currentProcessedNumberOfPersons = 0;
-			long lastProcessedNumberOfPersons = -1;
-
-			while (!finished.get()) {
-				try {
-					currentProcessedNumberOfPersons = processedNumberOfPersons.get();
-					// not useful with logger turned off
-					if (currentProcessedNumberOfPersons > lastProcessedNumberOfPersons) {
-						logger.info(String.format("Emulating... %d / %d (%.2f%%)", currentProcessedNumberOfPersons,
-								totalNumberOfPersons, 100.0 * currentProcessedNumberOfPersons / totalNumberOfPersons));
-					}
-					lastProcessedNumberOfPersons = currentProcessedNumberOfPersons;
-					Thread.sleep(10);
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
+		for (int i = 0; i < batch.size(); i++) {
+			final Person person = batch.get(i);
+			final Plan plan = person.getSelectedPlan();
+			double scoreSum = 0.0;
+			for (int travelTimeIndex = 0; travelTimeIndex < travelTimesCnt; travelTimeIndex++) {
+				final double score = scores[i * travelTimesCnt + travelTimeIndex];
+				scoreSum += score;
+				if ((travelTimesIds != null) && toEmulate[i * travelTimesCnt + travelTimeIndex]) {
+					this.scoreCache.putScore(person.getId(), plan, travelTimesIds[travelTimeIndex],
+							overrideTravelTimesFromFirstListEntry && (travelTimeIndex == 0), score);
 				}
 			}
-		});
-		progressThread.start();
+			plan.setScore(scoreSum / travelTimesCnt);
+		}
+	}
 
-		try {
-			for (Thread thread : threads) {
-				thread.join();
+	public void emulate(Collection<? extends Person> persons, int iteration,
+			final List<Map<String, ? extends TravelTime>> listOfMode2travelTime, final EventHandler eventsHandler,
+			final boolean overrideTravelTimesFromFirstListEntry) {
+
+		final List<? extends Person> personList = (persons instanceof List<?> ? (List<? extends Person>) persons
+				: new ArrayList<>(persons));
+		final int totalNumberOfPersons = personList.size();
+		final int batchSize = Math.max(1, this.ierConfig.getBatchSize());
+
+		final boolean directScoringAllowed;
+		if (this.ierConfig.getDirectScoring() && (eventsHandler == null)) {
+			synchronized (this.emulationHandlerProvider) {
+				directScoringAllowed = this.emulationHandlerProvider.get().isEmpty();
 			}
-			finished.set(true);
-			progressThread.join();
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
+		} else {
+			directScoringAllowed = false;
 		}
 
-		Configurator.setRootLevel(originalLogLevel);
+		// Cached scores would hide events from handlers that expect to see them.
+		final long[] travelTimesIds;
+		if (this.ierConfig.getScoreCaching() && (eventsHandler == null)) {
+			final boolean noHandlers;
+			synchronized (this.emulationHandlerProvider) {
+				noHandlers = this.emulationHandlerProvider.get().isEmpty();
+			}
+			travelTimesIds = (noHandlers ? this.scoreCache.createTravelTimesIds(listOfMode2travelTime) : null);
+		} else {
+			travelTimesIds = null;
+		}
+		this.scoreCache.resetCounts();
+
+		logger.info("[[Suppressing logging while emulating.]]");
+		final Level originalLogLevel = LogManager.getRootLogger().getLevel();
+		Configurator.setRootLevel(Level.ERROR);
 
-		logger.info("Emulation finished.");
+		try {
+			final ForkJoinPool pool = this.getOrCreatePool();
+			final List<ForkJoinTask<?>> tasks = new ArrayList<>(totalNumberOfPersons / batchSize + 1);
+			for (int start = 0; start < totalNumberOfPersons; start += batchSize) {
+				final List<? extends Person> batch = personList.subList(start,
+						Math.min(start + batchSize, totalNumberOfPersons));
+				tasks.add(pool.submit(() -> this.emulateBatch(batch, iteration, listOfMode2travelTime, eventsHandler,
+						overrideTravelTimesFromFirstListEntry, directScoringAllowed, travelTimesIds)));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		} finally {
+			Configurator.setRootLevel(originalLogLevel);
+		}
 
+		if (travelTimesIds != null) {
+			logger.info("Emulation finished. Score cache hits: " + this.scoreCache.getHitCnt() + ", misses: "
+					+ this.scoreCache.getMissCnt() + ".");
+		} else {
+			logger.info("Emulation finished.");
+		}
 	}
 }
@@ -24,6 +24,7 @@ import java.util.Map;
 
 import org.matsim.core.controler.AbstractModule;
 
+import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
@@ -49,7 +50,10 @@ public class EmulationModule extends AbstractModule {
 	@Override
 	public void install() {
 
-		bind(EmulationEngine.class);
+		// One engine instance, such that its worker pool is reused across calls. The
+		// pool is shut down at the end of the run.
+		bind(EmulationEngine.class).in(Singleton.class);
+		addControlerListenerBinding().to(EmulationEngine.class);
 		bind(PlanEmulator.class);
 
 		{
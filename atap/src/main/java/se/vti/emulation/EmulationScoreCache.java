@@ -0,0 +1,178 @@
+/**
+ * se.vti.emulation
+ *
+ * Copyright (C) 2025 by Gunnar Flötteröd (VTI, LiU).
+ *
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.emulation;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.router.util.TravelTime;
+
+/**
+ * Remembers, per person, the emulated scores of recently emulated plans, one
+ * score per plan and travel time snapshot. The score of an emulation against a
+ * list of snapshots is the average of these, so an emulation against only the
+ * newest snapshot can reuse the scores of an emulation against all of them.
+ * Snapshots are assumed not to change once handed to the EmulationEngine.
+ *
+ * Plans are identified by identity, without looking at their content. This
+ * requires that a plan is modified in place only by the emulation itself, which
+ * removes the scores of a plan before it overwrites the plan's times. MATSim's
+ * plan strategies satisfy this because they modify copies of plans. Scores that
+ * were obtained while overwriting the plan times are marked as such. Emulating
+ * such a plan again against the same travel times reproduces the same times and
+ * score, so a cache hit is equivalent to re-emulation also when plan times are
+ * to be overwritten.
+ *
+ * Thread-safe as long as each person is processed by one thread at a time.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+public class EmulationScoreCache {
+
+	// -------------------- INNER CLASS --------------------
+
+	private static class Entry {
+
+		// Weak, such that plans that are dropped from the population can be collected.
+		private final WeakReference<Plan> plan;
+		private final long travelTimesId;
+		private final boolean planTimesWritten;
+		private final double score;
+
+		private Entry(Plan plan, long travelTimesId, boolean planTimesWritten, double score) {
+			this.plan = new WeakReference<>(plan);
+			this.travelTimesId = travelTimesId;
+			this.planTimesWritten = planTimesWritten;
+			this.score = score;
+		}
+	}
+
+	// -------------------- CONSTANTS --------------------
+
+	private final int entriesPerPerson;
+
+	private final ConcurrentMap<Id<Person>, Entry[]> personId2entries = new ConcurrentHashMap<>();
+
+	// Weak keys: snapshots that are no longer used elsewhere can be collected.
+	private final Map<Map<String, ? extends TravelTime>, Long> travelTimes2id = new WeakHashMap<>();
+
+	// -------------------- MEMBERS --------------------
+
+	private long nextTravelTimesId = 0;
+
+	private final AtomicLong hitCnt = new AtomicLong(0);
+
+	private final AtomicLong missCnt = new AtomicLong(0);
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public EmulationScoreCache(int entriesPerPerson) {
+		this.entriesPerPerson = entriesPerPerson;
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * To be called once per emulation call, not per person.
+	 */
+	public synchronized long[] createTravelTimesIds(
+			final List<Map<String, ? extends TravelTime>> listOfMode2travelTime) {
+		final long[] result = new long[listOfMode2travelTime.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = this.travelTimes2id.computeIfAbsent(listOfMode2travelTime.get(i),
+					t -> this.nextTravelTimesId++);
+		}
+		return result;
+	}
+
+	public Double getScore(final Id<Person> personId, final Plan plan, final long travelTimesId,
+			final boolean planTimesToBeWritten) {
+		final Entry[] entries = this.personId2entries.get(personId);
+		if (entries != null) {
+			for (Entry entry : entries) {
+				if ((entry != null) && (entry.plan.get() == plan) && (entry.travelTimesId == travelTimesId)
+						&& (entry.planTimesWritten || !planTimesToBeWritten)) {
+					this.hitCnt.incrementAndGet();
+					return entry.score;
+				}
+			}
+		}
+		this.missCnt.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Uses a free slot or one of a collected plan if available, otherwise
+	 * replaces the oldest entry of this person.
+	 */
+	public void putScore(final Id<Person> personId, final Plan plan, final long travelTimesId,
+			final boolean planTimesWritten, final double score) {
+		final Entry[] entries = this.personId2entries.computeIfAbsent(personId,
+				id -> new Entry[this.entriesPerPerson]);
+		int slot = 0;
+		while ((slot < entries.length - 1) && (entries[slot] != null) && (entries[slot].plan.get() != null)) {
+			slot++;
+		}
+		System.arraycopy(entries, 0, entries, 1, slot);
+		entries[0] = new Entry(plan, travelTimesId, planTimesWritten, score);
+	}
+
+	/**
+	 * To be called before the plan is modified.
+	 */
+	public void removeScores(final Id<Person> personId, final Plan plan) {
+		final Entry[] entries = this.personId2entries.get(personId);
+		if (entries != null) {
+			for (int i = 0; i < entries.length; i++) {
+				if ((entries[i] != null) && (entries[i].plan.get() == plan)) {
+					entries[i] = null;
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		this.personId2entries.clear();
+	}
+
+	// -------------------- STATISTICS --------------------
+
+	public long getHitCnt() {
+		return this.hitCnt.get();
+	}
+
+	public long getMissCnt() {
+		return this.missCnt.get();
+	}
+
+	public void resetCounts() {
+		this.hitCnt.set(0);
+		this.missCnt.set(0);
+	}
+}
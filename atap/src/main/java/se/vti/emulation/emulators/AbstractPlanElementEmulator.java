@@ -52,4 +52,12 @@ public class AbstractPlanElementEmulator {
 		this.overwritePlanTimes = overwritePlanTimes;
 	}
 
+	/**
+	 * A null EventsManager means that only times are computed, without creating
+	 * any events. See PlanEmulator.emulateAndScore(..).
+	 */
+	protected boolean isEmittingEvents() {
+		return (this.eventsManager != null);
+	}
+
 }
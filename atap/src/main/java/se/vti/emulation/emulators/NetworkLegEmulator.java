@@ -67,8 +67,11 @@ public class NetworkLegEmulator extends OnlyDepartureArrivalLegEmulator {
 		final NetworkRoute networkRoute = (NetworkRoute) leg.getRoute();
 		if (!networkRoute.getStartLinkId().equals(networkRoute.getEndLinkId())) {
 
-			final Id<Vehicle> vehicleId = Id.createVehicleId(person.getId());
-			this.eventsManager.processEvent(new PersonEntersVehicleEvent(time_s, person.getId(), vehicleId));
+			final boolean emitEvents = this.isEmittingEvents();
+			final Id<Vehicle> vehicleId = (emitEvents ? Id.createVehicleId(person.getId()) : null);
+			if (emitEvents) {
+				this.eventsManager.processEvent(new PersonEntersVehicleEvent(time_s, person.getId(), vehicleId));
+			}
 
 			// First link of a network route. Vehicle enters downstream (i.e. does not need
 			// to traverse) and joints the queue.
@@ -77,27 +80,38 @@ public class NetworkLegEmulator extends OnlyDepartureArrivalLegEmulator {
 			final double delay_s = Math.max(0.0, this.travelTime.getLinkTravelTime(link, time_s, person, null)
 					- link.getLength() / link.getFreespeed(time_s));
 			time_s += 0.5 * delay_s;
-			this.eventsManager.processEvent(
-					new VehicleEntersTrafficEvent(time_s, person.getId(), link.getId(), vehicleId, leg.getMode(), 1.0));
+			if (emitEvents) {
+				this.eventsManager.processEvent(new VehicleEntersTrafficEvent(time_s, person.getId(), link.getId(),
+						vehicleId, leg.getMode(), 1.0));
+			}
 			time_s += 0.5 * delay_s;
-			this.eventsManager.processEvent(new LinkLeaveEvent(time_s, vehicleId, link.getId()));
-			
+			if (emitEvents) {
+				this.eventsManager.processEvent(new LinkLeaveEvent(time_s, vehicleId, link.getId()));
+			}
+
 			// Intermediate links of a network route.
 			for (Id<Link> linkId : networkRoute.getLinkIds()) {
 				link = this.scenario.getNetwork().getLinks().get(linkId);
-				this.eventsManager.processEvent(new LinkEnterEvent(time_s, vehicleId, link.getId()));
+				if (emitEvents) {
+					this.eventsManager.processEvent(new LinkEnterEvent(time_s, vehicleId, link.getId()));
+				}
 				final double travelTime_s = this.travelTime.getLinkTravelTime(link, time_s, person, null);
 				time_s += travelTime_s;
-				this.eventsManager.processEvent(new LinkLeaveEvent(time_s, vehicleId, link.getId()));
+				if (emitEvents) {
+					this.eventsManager.processEvent(new LinkLeaveEvent(time_s, vehicleId, link.getId()));
+				}
 			}
 
 			// Last link of a network route. Vehicle departs downstream (i.e. does need to traverse) but does not join the queue.
-			this.eventsManager.processEvent(new LinkEnterEvent(time_s, vehicleId, networkRoute.getEndLinkId()));
+			if (emitEvents) {
+				this.eventsManager.processEvent(new LinkEnterEvent(time_s, vehicleId, networkRoute.getEndLinkId()));
+			}
 			time_s += link.getLength() / link.getFreespeed(time_s);
-			this.eventsManager.processEvent(new VehicleLeavesTrafficEvent(time_s, person.getId(),
-					networkRoute.getEndLinkId(), vehicleId, leg.getMode(), 1.0));
-
-			this.eventsManager.processEvent(new PersonLeavesVehicleEvent(time_s, person.getId(), vehicleId));
+			if (emitEvents) {
+				this.eventsManager.processEvent(new VehicleLeavesTrafficEvent(time_s, person.getId(),
+						networkRoute.getEndLinkId(), vehicleId, leg.getMode(), 1.0));
+				this.eventsManager.processEvent(new PersonLeavesVehicleEvent(time_s, person.getId(), vehicleId));
+			}
 		}
 
 		return time_s;
@@ -77,9 +77,11 @@ public class OnlyDepartureArrivalLegEmulator extends AbstractPlanElementEmulator
 		// Every leg starts with a departure.
 		if (time_s <= this.maxEndTime_s) {
 
-			this.eventsManager.processEvent(new PersonDepartureEvent(time_s, person.getId(),
-					PopulationUtils.decideOnLinkIdForActivity(previousActivity, this.scenario), leg.getMode(),
-					TripStructureUtils.getRoutingMode(leg)));
+			if (this.isEmittingEvents()) {
+				this.eventsManager.processEvent(new PersonDepartureEvent(time_s, person.getId(),
+						PopulationUtils.decideOnLinkIdForActivity(previousActivity, this.scenario), leg.getMode(),
+						TripStructureUtils.getRoutingMode(leg)));
+			}
 			if (this.overwritePlanTimes) {
 				leg.setDepartureTime(time_s);
 			}
@@ -87,7 +89,7 @@ public class OnlyDepartureArrivalLegEmulator extends AbstractPlanElementEmulator
 			time_s = this.emulateBetweenDepartureAndArrivalAndReturnEndTime_s(leg, person, time_s);
 
 			// Every leg ends with an arrival.
-			if (time_s <= this.maxEndTime_s) {
+			if ((time_s <= this.maxEndTime_s) && this.isEmittingEvents()) {
 				this.eventsManager.processEvent(new PersonArrivalEvent(time_s, person.getId(),
 						PopulationUtils.decideOnLinkIdForActivity(nextActivity, this.scenario), leg.getMode()));
 			}
@@ -105,8 +107,10 @@ public class OnlyDepartureArrivalLegEmulator extends AbstractPlanElementEmulator
 	public double emulateBetweenDepartureAndArrivalAndReturnEndTime_s(final Leg leg, final Person person,
 			double time_s) {
 		time_s += this.timeInterpretation.decideOnLegTravelTime(leg).seconds();
-		this.eventsManager.processEvent(
-				new TeleportationArrivalEvent(time_s, person.getId(), leg.getRoute().getDistance(), leg.getMode()));
+		if (this.isEmittingEvents()) {
+			this.eventsManager.processEvent(
+					new TeleportationArrivalEvent(time_s, person.getId(), leg.getRoute().getDistance(), leg.getMode()));
+		}
 		return time_s;
 	}
 }
@@ -50,8 +50,10 @@ public class OnlyStartEndActivityEmulator extends AbstractPlanElementEmulator im
 	public Double emulateActivityAndReturnEndTime_s(final Activity activity, final Person person, double time_s,
 			final boolean isFirstElement, final boolean isLastElement) {
 		if (!isFirstElement) {
-			this.eventsManager.processEvent(new ActivityStartEvent(time_s, person.getId(), activity.getLinkId(),
-					activity.getFacilityId(), activity.getType(), activity.getCoord()));
+			if (this.isEmittingEvents()) {
+				this.eventsManager.processEvent(new ActivityStartEvent(time_s, person.getId(), activity.getLinkId(),
+						activity.getFacilityId(), activity.getType(), activity.getCoord()));
+			}
 			if (this.overwritePlanTimes) {
 				// 2025-05-22 Added try/catch to deal with removed setter in InteractionActivity. Gunnar
 				try {
@@ -63,8 +65,10 @@ public class OnlyStartEndActivityEmulator extends AbstractPlanElementEmulator im
 		}
 		if (!isLastElement) {
 			time_s = Math.max(time_s, this.timeInterpretation.decideOnActivityEndTime(activity, time_s).seconds());
-			this.eventsManager.processEvent(new ActivityEndEvent(time_s, person.getId(), activity.getLinkId(),
-					activity.getFacilityId(), activity.getType(), activity.getCoord()));
+			if (this.isEmittingEvents()) {
+				this.eventsManager.processEvent(new ActivityEndEvent(time_s, person.getId(), activity.getLinkId(),
+						activity.getFacilityId(), activity.getType(), activity.getCoord()));
+			}
 			if (this.overwritePlanTimes) {
 				// 2025-05-22 Added try/catch to deal with removed setter in InteractionActivity. Gunnar
 				try {
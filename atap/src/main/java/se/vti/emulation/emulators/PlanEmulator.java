@@ -20,22 +20,31 @@
  */
 package se.vti.emulation.emulators;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.PersonStuckEvent;
 import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Route;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.controler.MatsimServices;
 import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.StageActivityTypeIdentifier;
+import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.scoring.EventsToScore;
+import org.matsim.core.scoring.ScoringFunction;
 import org.matsim.pt.config.TransitConfigGroup;
 
 import com.google.inject.Inject;
@@ -163,4 +172,162 @@ public class PlanEmulator {
 			}
 		}
 	}
+
+	// -------------------- DIRECT SCORING WITHOUT EVENTS --------------------
+
+	/**
+	 * Direct scoring relies on the plan element emulators computing nothing but
+	 * times, which holds for the default emulators only.
+	 */
+	public boolean supportsDirectScoring() {
+		for (ActivityEmulator activityEmulator : this.actType2emulator.values()) {
+			if (!OnlyStartEndActivityEmulator.class.equals(activityEmulator.getClass())) {
+				return false;
+			}
+		}
+		for (LegEmulator legEmulator : this.mode2emulator.values()) {
+			if (!OnlyDepartureArrivalLegEmulator.class.equals(legEmulator.getClass())
+					&& !NetworkLegEmulator.class.equals(legEmulator.getClass())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Activity newExperiencedActivity(final Activity activity) {
+		final Activity result = PopulationUtils.createActivityFromLinkId(activity.getType(), activity.getLinkId());
+		result.setFacilityId(activity.getFacilityId());
+		result.setCoord(activity.getCoord());
+		return result;
+	}
+
+	private Leg newExperiencedLeg(final Leg leg, final LegEmulator legEmulator, final Person person,
+			final Activity previousActivity, final Activity nextActivity, final double departureTime_s,
+			final double arrivalTime_s) {
+		final Leg result = PopulationUtils.createLeg(leg.getMode());
+		TripStructureUtils.setRoutingMode(result, TripStructureUtils.getRoutingMode(leg));
+		result.setDepartureTime(departureTime_s);
+		result.setTravelTime(arrivalTime_s - departureTime_s);
+
+		final Route route;
+		if ((legEmulator instanceof NetworkLegEmulator)
+				&& !leg.getRoute().getStartLinkId().equals(leg.getRoute().getEndLinkId())) {
+			final NetworkRoute networkRoute = ((NetworkRoute) leg.getRoute()).clone();
+			networkRoute.setVehicleId(Id.createVehicleId(person.getId()));
+			networkRoute.setDistance(
+					RouteUtils.calcDistance(networkRoute, 1.0, 1.0, this.services.getScenario().getNetwork()));
+			route = networkRoute;
+		} else {
+			route = RouteUtils.createGenericRouteImpl(
+					PopulationUtils.decideOnLinkIdForActivity(previousActivity, this.services.getScenario()),
+					PopulationUtils.decideOnLinkIdForActivity(nextActivity, this.services.getScenario()));
+			route.setDistance(legEmulator instanceof NetworkLegEmulator ? 0.0 : leg.getRoute().getDistance());
+		}
+		route.setTravelTime(arrivalTime_s - departureTime_s);
+		result.setRoute(route);
+		return result;
+	}
+
+	private void handleExperiencedActivity(final Activity activity, final List<PlanElement> partialTrip,
+			final ScoringFunction scoringFunction) {
+		scoringFunction.handleActivity(activity);
+		partialTrip.add(activity);
+		if (!StageActivityTypeIdentifier.isStageActivity(activity.getType())) {
+			if (partialTrip.size() > 2) {
+				scoringFunction.handleTrip(TripStructureUtils.getTrips(new ArrayList<>(partialTrip)).get(0));
+			}
+			partialTrip.clear();
+			partialTrip.add(activity);
+		}
+	}
+
+	/**
+	 * Emulates the plan in the same way as
+	 * {@link #emulate(Person, Plan, Map, EventHandler, Provider, int, EventsManager, EventsToScore, boolean)}
+	 * but without creating any events. Experienced activities, legs and trips are
+	 * passed straight to the scoring function, in the order in which EventsToScore
+	 * would pass them. The scoring function is not finished here.
+	 * 
+	 * Requires {@link #supportsDirectScoring()}. Scoring function components that
+	 * process other events (e.g. money events) are not served by this path.
+	 */
+	public void emulateAndScore(final Person person, final Plan plan,
+			final Map<String, ? extends TravelTime> mode2travelTime, final ScoringFunction scoringFunction,
+			final boolean overwritePlanTimes) {
+
+		final double maxEndTime_s = (this.services.getConfig().qsim().getEndTime().isDefined()
+				? this.services.getConfig().qsim().getEndTime().seconds()
+				: Double.POSITIVE_INFINITY);
+
+		double time_s = 0.0;
+		boolean stuck = false;
+		Activity startedActivity = null;
+		final List<PlanElement> partialTrip = new ArrayList<>();
+
+		final List<PlanElement> planElements = plan.getPlanElements();
+		for (int planElementIndex = 0; (planElementIndex < planElements.size()) && !stuck; planElementIndex++) {
+			final PlanElement element = planElements.get(planElementIndex);
+
+			final boolean isFirstElement = (planElementIndex == 0);
+			final boolean isLastElement = (planElementIndex == (planElements.size() - 1));
+
+			if (element instanceof Activity) {
+
+				final Activity activity = (Activity) element;
+
+				final ActivityEmulator activityEmulator = this.actType2emulator.getOrDefault(activity.getType(),
+						this.actType2emulator.get(EmulationParameters.DEFAULT));
+				activityEmulator.configure(null, maxEndTime_s, overwritePlanTimes);
+
+				final double activityStartTime_s = time_s;
+				final Double activityEndTime_s = activityEmulator.emulateActivityAndReturnEndTime_s(activity, person,
+						time_s, isFirstElement, isLastElement);
+				if (!isFirstElement) {
+					startedActivity = this.newExperiencedActivity(activity);
+					startedActivity.setStartTime(activityStartTime_s);
+				}
+				if (!isLastElement) {
+					time_s = activityEndTime_s;
+					if (startedActivity == null) {
+						startedActivity = this.newExperiencedActivity(activity);
+					}
+					startedActivity.setEndTime(time_s);
+					this.handleExperiencedActivity(startedActivity, partialTrip, scoringFunction);
+					startedActivity = null;
+				}
+
+			} else if (element instanceof Leg) {
+
+				final Leg leg = (Leg) element;
+
+				final LegEmulator legEmulator = this.mode2emulator.getOrDefault(leg.getMode(),
+						this.mode2emulator.get(EmulationParameters.DEFAULT));
+				legEmulator.configure(null, mode2travelTime.get(leg.getMode()), maxEndTime_s, overwritePlanTimes);
+
+				final double departureTime_s = time_s;
+				time_s = legEmulator.emulateLegAndReturnEndTime_s(planElementIndex, planElements, person, time_s);
+				if ((departureTime_s <= maxEndTime_s) && (time_s <= maxEndTime_s)) {
+					final Leg experiencedLeg = this.newExperiencedLeg(leg, legEmulator, person,
+							(Activity) planElements.get(planElementIndex - 1),
+							(Activity) planElements.get(planElementIndex + 1), departureTime_s, time_s);
+					scoringFunction.handleLeg(experiencedLeg);
+					partialTrip.add(experiencedLeg);
+				}
+			} else {
+				throw new RuntimeException("Unknown instance of " + PlanElement.class.getSimpleName() + ": "
+						+ element.getClass().getSimpleName());
+			}
+
+			if (time_s > maxEndTime_s) {
+				stuck = true; // Exits the loop, i.e. terminates the emulation of this person.
+				scoringFunction.agentStuck(time_s);
+			}
+		}
+
+		// An activity that has started but not ended is passed on at the end, as in
+		// EventsToActivities.
+		if (startedActivity != null) {
+			this.handleExperiencedActivity(startedActivity, partialTrip, scoringFunction);
+		}
+	}
 }
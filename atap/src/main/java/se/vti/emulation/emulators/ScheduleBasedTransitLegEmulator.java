@@ -42,11 +42,20 @@ import com.google.inject.Inject;
  */
 public class ScheduleBasedTransitLegEmulator extends OnlyDepartureArrivalLegEmulator {
 
+	// -------------------- CONSTANTS --------------------
+
+	private final TransitDepartureIndex departureIndex;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	@Inject
-	public ScheduleBasedTransitLegEmulator(final Scenario scenario) {
+	ScheduleBasedTransitLegEmulator(final Scenario scenario, final TransitDepartureIndex departureIndex) {
 		super(scenario);
+		this.departureIndex = departureIndex;
+	}
+
+	public ScheduleBasedTransitLegEmulator(final Scenario scenario) {
+		this(scenario, new TransitDepartureIndex(scenario.getTransitSchedule()));
 	}
 
 	// -------------------- INTERNALS --------------------
@@ -73,48 +82,12 @@ public class ScheduleBasedTransitLegEmulator extends OnlyDepartureArrivalLegEmul
 		}
 	}
 
-	private boolean routeConnectsStops(final TransitRoute route, final TransitRouteStop fromStop,
-			final TransitRouteStop toStop) {
-
-		Integer earliestFromStopIndex = null;
-		for (int i = 0; (i < route.getStops().size()) && (earliestFromStopIndex == null); i++) {
-			if (route.getStops().get(i).getStopFacility().getId().equals(fromStop.getStopFacility().getId())) {
-				earliestFromStopIndex = i;
-			}
-		}
-		if (earliestFromStopIndex == null) {
-			return false;
-		}
-
-		Integer latestToStopIndex = null;
-		for (int j = route.getStops().size() - 1; (j >= 0) && (latestToStopIndex == null); j--) {
-			if (route.getStops().get(j).getStopFacility().getId().equals(toStop.getStopFacility().getId())) {
-				latestToStopIndex = j;
-			}
-		}
-		if (latestToStopIndex == null) {
-			return false;
-		}
-
-		return (earliestFromStopIndex <= latestToStopIndex);
-	}
-
 	private Departure getNextDeparture(final double time_s, final TransitLine line, final TransitRouteStop fromStop,
 			final TransitRouteStop toStop) {
 		final double earliestAllowedDepartureTime_s = time_s
 				- this.guessDepartureOffset_s(fromStop.getArrivalOffset(), fromStop.getDepartureOffset());
-		Departure result = null;
-		for (TransitRoute route : line.getRoutes().values()) {
-			if (this.routeConnectsStops(route, fromStop, toStop)) {
-				for (Departure candidate : route.getDepartures().values()) {
-					if ((earliestAllowedDepartureTime_s <= candidate.getDepartureTime())
-							&& ((result == null) || (candidate.getDepartureTime() < result.getDepartureTime()))) {
-						result = candidate;
-					}
-				}
-			}
-		}
-		return result;
+		return this.departureIndex.getNextDeparture(earliestAllowedDepartureTime_s, line.getId(),
+				fromStop.getStopFacility().getId(), toStop.getStopFacility().getId());
 	}
 
 	// -------------------- IMPLEMENTATION OF LegEmulator --------------------
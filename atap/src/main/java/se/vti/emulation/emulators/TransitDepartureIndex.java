@@ -0,0 +1,184 @@
+/**
+ * se.vti.emulation
+ * 
+ * Copyright (C) 2025 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.emulation.emulators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Per (line, from stop facility, to stop facility), the departures of all
+ * routes of the line that serve the from stop no later than the to stop,
+ * sorted by departure time. Entries are built on first request and then shared
+ * read-only by all emulation threads. Bound as a singleton, so all
+ * ScheduleBasedTransitLegEmulator instances share one index of the scenario's
+ * schedule, which is assumed not to change during emulation.
+ *
+ * @author Gunnar Flötteröd
+ *
+ */
+@Singleton
+class TransitDepartureIndex {
+
+	// -------------------- INNER CLASSES --------------------
+
+	private static class Key {
+
+		private final Id<TransitLine> lineId;
+		private final Id<TransitStopFacility> fromStopId;
+		private final Id<TransitStopFacility> toStopId;
+
+		private Key(Id<TransitLine> lineId, Id<TransitStopFacility> fromStopId, Id<TransitStopFacility> toStopId) {
+			this.lineId = lineId;
+			this.fromStopId = fromStopId;
+			this.toStopId = toStopId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			final Key otherKey = (Key) other;
+			return this.lineId.equals(otherKey.lineId) && this.fromStopId.equals(otherKey.fromStopId)
+					&& this.toStopId.equals(otherKey.toStopId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.lineId, this.fromStopId, this.toStopId);
+		}
+	}
+
+	private static class Departures {
+
+		private final double[] departureTimes_s;
+		private final Departure[] departures;
+
+		private Departures(List<Departure> departures) {
+			this.departures = departures.toArray(new Departure[departures.size()]);
+			this.departureTimes_s = new double[this.departures.length];
+			for (int i = 0; i < this.departures.length; i++) {
+				this.departureTimes_s[i] = this.departures[i].getDepartureTime();
+			}
+		}
+
+		private Departure getFirstDepartureNotBefore(double time_s) {
+			int low = 0;
+			int high = this.departureTimes_s.length;
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (this.departureTimes_s[middle] < time_s) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return (low < this.departures.length ? this.departures[low] : null);
+		}
+	}
+
+	// -------------------- CONSTANTS --------------------
+
+	private final TransitSchedule schedule;
+
+	private final ConcurrentMap<Key, Departures> key2departures = new ConcurrentHashMap<>();
+
+	// -------------------- CONSTRUCTION --------------------
+
+	TransitDepartureIndex(TransitSchedule schedule) {
+		this.schedule = schedule;
+	}
+
+	@Inject
+	TransitDepartureIndex(Scenario scenario) {
+		this(scenario.getTransitSchedule());
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static boolean routeConnectsStops(final TransitRoute route, final Id<TransitStopFacility> fromStopId,
+			final Id<TransitStopFacility> toStopId) {
+
+		Integer earliestFromStopIndex = null;
+		for (int i = 0; (i < route.getStops().size()) && (earliestFromStopIndex == null); i++) {
+			if (route.getStops().get(i).getStopFacility().getId().equals(fromStopId)) {
+				earliestFromStopIndex = i;
+			}
+		}
+		if (earliestFromStopIndex == null) {
+			return false;
+		}
+
+		Integer latestToStopIndex = null;
+		for (int j = route.getStops().size() - 1; (j >= 0) && (latestToStopIndex == null); j--) {
+			if (route.getStops().get(j).getStopFacility().getId().equals(toStopId)) {
+				latestToStopIndex = j;
+			}
+		}
+		if (latestToStopIndex == null) {
+			return false;
+		}
+
+		return (earliestFromStopIndex <= latestToStopIndex);
+	}
+
+	private Departures createDepartures(final Key key) {
+		final List<Departure> departures = new ArrayList<>();
+		final TransitLine line = this.schedule.getTransitLines().get(key.lineId);
+		if (line != null) {
+			for (TransitRoute route : line.getRoutes().values()) {
+				if (routeConnectsStops(route, key.fromStopId, key.toStopId)) {
+					departures.addAll(route.getDepartures().values());
+				}
+			}
+		}
+		// Stable sort: among equal departure times, the first one found wins.
+		Collections.sort(departures, (d1, d2) -> Double.compare(d1.getDepartureTime(), d2.getDepartureTime()));
+		return new Departures(departures);
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * Returns the earliest departure at or after the given time, or null if there
+	 * is none.
+	 */
+	Departure getNextDeparture(final double earliestDepartureTime_s, final Id<TransitLine> lineId,
+			final Id<TransitStopFacility> fromStopId, final Id<TransitStopFacility> toStopId) {
+		return this.key2departures
+				.computeIfAbsent(new Key(lineId, fromStopId, toStopId), k -> this.createDepartures(k))
+				.getFirstDepartureNotBefore(earliestDepartureTime_s);
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * se.vti.certain.analysis
+ * 
+ * Copyright (C) 2025 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.certain.analysis;
+
+/**
+ * Count, mean, variance (Welford), minimum and maximum of a stream of values,
+ * in constant memory. Two instances can be merged (Chan et al.). Variance and
+ * standard deviation are sample statistics, as in commons-math's
+ * DescriptiveStatistics.
+ * 
+ * @author GunnarF
+ */
+public class OnlineStatistics {
+
+	private long n = 0;
+	private double mean = 0.0;
+	private double sumOfSquaredDeviations = 0.0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	public OnlineStatistics() {
+	}
+
+	public void addValue(double value) {
+		this.n++;
+		double delta = value - this.mean;
+		this.mean += delta / this.n;
+		this.sumOfSquaredDeviations += delta * (value - this.mean);
+		if (this.n == 1) {
+			this.min = value;
+			this.max = value;
+		} else {
+			this.min = Math.min(this.min, value);
+			this.max = Math.max(this.max, value);
+		}
+	}
+
+	public void merge(OnlineStatistics other) {
+		if (other.n == 0) {
+			return;
+		}
+		if (this.n == 0) {
+			this.n = other.n;
+			this.mean = other.mean;
+			this.sumOfSquaredDeviations = other.sumOfSquaredDeviations;
+			this.min = other.min;
+			this.max = other.max;
+			return;
+		}
+		long mergedN = this.n + other.n;
+		double delta = other.mean - this.mean;
+		this.mean += delta * other.n / mergedN;
+		this.sumOfSquaredDeviations += other.sumOfSquaredDeviations
+				+ delta * delta * ((double) this.n) * other.n / mergedN;
+		this.n = mergedN;
+		this.min = Math.min(this.min, other.min);
+		this.max = Math.max(this.max, other.max);
+	}
+
+	public long getN() {
+		return this.n;
+	}
+
+	public double getMean() {
+		return (this.n == 0 ? Double.NaN : this.mean);
+	}
+
+	public double getVariance() {
+		if (this.n == 0) {
+			return Double.NaN;
+		} else if (this.n == 1) {
+			return 0.0;
+		} else {
+			return this.sumOfSquaredDeviations / (this.n - 1);
+		}
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(this.getVariance());
+	}
+
+	/**
+	 * Standard deviation of the mean, for confidence intervals.
+	 */
+	public double getStandardError() {
+		return this.getStandardDeviation() / Math.sqrt(this.n);
+	}
+
+	public double getMin() {
+		return this.min;
+	}
+
+	public double getMax() {
+		return this.max;
+	}
+}
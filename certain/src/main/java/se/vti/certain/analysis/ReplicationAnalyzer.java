@@ -27,20 +27,24 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.function.Function;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-
 import de.vandermeer.asciitable.AsciiTable;
 import de.vandermeer.asciitable.CWC_FixedWidth;
 import se.vti.certain.simulation.missionimplementation.SystemState;
 
 /**
+ * Folds observables of simulated system states into online statistics, so that
+ * the states themselves need not be retained. Evaluating a state (possibly
+ * concurrently) and adding the resulting values are separate steps; adding
+ * values in replication order makes the statistics independent of the order in
+ * which replications finish.
+ * 
  * @author GunnarF
  */
 public class ReplicationAnalyzer {
 
 	private List<Function<SystemState, Double>> observablesList = new ArrayList<>();
-	private List<DescriptiveStatistics> statisticsList = new ArrayList<>();
-	private Map<String, DescriptiveStatistics> name2Statistics = new LinkedHashMap<>();
+	private List<OnlineStatistics> statisticsList = new ArrayList<>();
+	private Map<String, OnlineStatistics> name2Statistics = new LinkedHashMap<>();
 
 	private boolean skipNaNsInAveraging = true;
 
@@ -49,24 +53,43 @@ public class ReplicationAnalyzer {
 
 	public ReplicationAnalyzer addObservable(String name, Function<SystemState, Double> observable) {
 		this.observablesList.add(observable);
-		var statistics = new DescriptiveStatistics();
+		var statistics = new OnlineStatistics();
 		this.statisticsList.add(statistics);
 		this.name2Statistics.put(name, statistics);
 		return this;
 	}
 
+	/**
+	 * Evaluates every observable once. Safe for concurrent calls as long as the
+	 * observables are.
+	 */
+	public double[] evaluate(SystemState systemState) {
+		double[] result = new double[this.observablesList.size()];
+		for (int i = 0; i < this.observablesList.size(); i++) {
+			result[i] = this.observablesList.get(i).apply(systemState);
+		}
+		return result;
+	}
+
+	public void add(double[] observations) {
+		for (int i = 0; i < this.statisticsList.size(); i++) {
+			if (!this.skipNaNsInAveraging || !Double.isNaN(observations[i])) {
+				this.statisticsList.get(i).addValue(observations[i]);
+			}
+		}
+	}
+
+	public void add(SystemState systemState) {
+		this.add(this.evaluate(systemState));
+	}
+
 	public void add(List<SystemState> systemStates) {
 		for (var systemState : systemStates) {
-			for (int i = 0; i < this.observablesList.size(); i++) {
-				double stat = this.observablesList.get(i).apply(systemState);
-				if (!this.skipNaNsInAveraging || !Double.isNaN(stat)) {
-					this.statisticsList.get(i).addValue(this.observablesList.get(i).apply(systemState));
-				}
-			}
+			this.add(systemState);
 		}
 	}
 
-	public Map<String, DescriptiveStatistics> getStatistics() {
+	public Map<String, OnlineStatistics> getStatistics() {
 		return this.name2Statistics;
 	}
 
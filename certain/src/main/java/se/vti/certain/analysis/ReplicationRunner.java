@@ -22,9 +22,17 @@ package se.vti.certain.analysis;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import se.vti.certain.analysis.observables.AverageMissingSOCWhenOutOfCharge;
 import se.vti.certain.analysis.observables.AverageTimeFromVehicleRequestToArrival;
@@ -42,6 +50,7 @@ import se.vti.certain.simulation.StartTimeSimulator;
 import se.vti.certain.simulation.TimingSimulator;
 import se.vti.certain.simulation.missionimplementation.MissionImplementationSimulator;
 import se.vti.certain.simulation.missionimplementation.SystemState;
+import se.vti.certain.simulation.missionimplementation.VehicleDispatchIndex;
 import se.vti.certain.spatial.DistanceType;
 import se.vti.certain.spatial.Distances;
 import se.vti.certain.spatial.Zone;
@@ -49,6 +58,14 @@ import se.vti.certain.temporal.Season;
 import se.vti.certain.temporal.TypeOfDay;
 
 /**
+ * Replications run concurrently on a bounded thread pool. Each replication
+ * draws from its own random stream, which is split off a master stream in
+ * replication order. Per-replication results therefore do not depend on the
+ * number of threads.
+ * 
+ * If an analyzer is set, each system state is evaluated as soon as its
+ * replication finishes, and then dropped unless system states are retained.
+ * 
  * @author GunnarF
  */
 public class ReplicationRunner {
@@ -56,6 +73,7 @@ public class ReplicationRunner {
 	private final Random rnd;
 	private boolean verbose = true;
 	private Integer numberOfReplications = null;
+	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
 
 	private SimulationTimeLine timeLine = null;
 	private Double minRelSOC = null;
@@ -67,6 +85,9 @@ public class ReplicationRunner {
 	private List<Mission> prototypeMissions = null;
 	private final List<Mission> specialMissions = new ArrayList<>();
 
+	private ReplicationAnalyzer analyzer = null;
+	private boolean retainSystemStates = true;
+
 	private List<SystemState> simulatedSystemStates = null;
 
 	public ReplicationRunner(Random rnd) {
@@ -88,6 +109,11 @@ public class ReplicationRunner {
 		return this;
 	}
 
+	public ReplicationRunner setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+		return this;
+	}
+
 	public ReplicationRunner setTimeLine(SimulationTimeLine timeLine) {
 		this.timeLine = timeLine;
 		return this;
@@ -123,40 +149,123 @@ public class ReplicationRunner {
 		return this;
 	}
 
+	public ReplicationRunner setAnalyzer(ReplicationAnalyzer analyzer) {
+		this.analyzer = analyzer;
+		return this;
+	}
+
+	public ReplicationRunner setRetainSystemStates(boolean retainSystemStates) {
+		this.retainSystemStates = retainSystemStates;
+		return this;
+	}
+
+	/**
+	 * Empty if system states are not retained.
+	 */
 	public List<SystemState> getSimulatedSystemStates() {
 		return this.simulatedSystemStates;
 	}
 
-	public void run() {
+	/**
+	 * Samples the missions of one replication; everything that is random in a
+	 * replication happens here. Also used by ScenarioSweepRunner, which replays
+	 * the result across variants.
+	 */
+	static List<Mission> simulateMissions(long seed, SimulationTimeLine timeLine,
+			IncidentSimulator.Intensities intensities, List<Mission> prototypeMissions,
+			List<Mission> specialMissions) {
 
-		for (int replication = 0; replication < this.numberOfReplications; replication++) {
+		var rnd = new Random(seed);
 
-			if (this.verbose) {
-				System.out.println((1 + replication) + " / " + this.numberOfReplications);
-			}
+		var incidentSimulator = new IncidentSimulator(timeLine, rnd.nextLong());
+		List<Mission> simulatedMissions = incidentSimulator.simulateMissions(intensities);
+
+		var timingSimulator = new TimingSimulator(timeLine, rnd);
+		timingSimulator.simulateTimings(simulatedMissions);
 
-			var incidentSimulator = new IncidentSimulator(this.timeLine, this.rnd.nextLong());
-			List<Mission> simulatedMissions = incidentSimulator.simulateMissions(this.id2Zone);
+		var startTimeSimulator = new StartTimeSimulator(timeLine, rnd);
+		startTimeSimulator.simulateStarTimes(simulatedMissions);
+		simulatedMissions = StartTimeSimulator.getStartTimeSortedMissions(simulatedMissions);
 
-			var timingSimulator = new TimingSimulator(this.timeLine, this.rnd);
-			timingSimulator.simulateTimings(simulatedMissions);
+		var missionFleetSimulator = new MissionVehicleDeploymentSimulator(prototypeMissions, rnd);
+		missionFleetSimulator.simulateFleets(simulatedMissions);
+		simulatedMissions = missionFleetSimulator.getMissionsWithDeployedVehicles(simulatedMissions);
 
-			var startTimeSimulator = new StartTimeSimulator(this.timeLine, this.rnd);
-			startTimeSimulator.simulateStarTimes(simulatedMissions);
-			simulatedMissions = StartTimeSimulator.getStartTimeSortedMissions(simulatedMissions);
+		return StartTimeSimulator.mergeStartTimeSortedMissions(simulatedMissions, specialMissions);
+	}
 
-			var missionFleetSimulator = new MissionVehicleDeploymentSimulator(this.prototypeMissions, this.rnd);
-			missionFleetSimulator.simulateFleets(simulatedMissions);
-			simulatedMissions = missionFleetSimulator.getMissionsWithDeployedVehicles(simulatedMissions);
+	/**
+	 * One seed per replication, split off a master stream in replication order.
+	 */
+	static long[] createReplicationSeeds(Random rnd, int numberOfReplications) {
+		var masterStream = new SplittableRandom(rnd.nextLong());
+		long[] seeds = new long[numberOfReplications];
+		for (int replication = 0; replication < numberOfReplications; replication++) {
+			seeds[replication] = masterStream.split().nextLong();
+		}
+		return seeds;
+	}
 
-			simulatedMissions.addAll(this.specialMissions);
-			simulatedMissions = StartTimeSimulator.getStartTimeSortedMissions(simulatedMissions);
+	private SystemState simulateReplication(long seed, IncidentSimulator.Intensities intensities,
+			VehicleDispatchIndex dispatchIndex) {
 
-			var missionImplementationSimulator = new MissionImplementationSimulator(id2Vehicle, distances)
-					.setVerbose(false).setRelSOCWhenAvailable(this.minRelSOC);
-			var systemState = missionImplementationSimulator.simulateMissionImplementation(simulatedMissions);
-			this.simulatedSystemStates.add(systemState);
+		List<Mission> simulatedMissions = simulateMissions(seed, this.timeLine, intensities, this.prototypeMissions,
+				this.specialMissions);
+
+		var missionImplementationSimulator = new MissionImplementationSimulator(id2Vehicle, distances)
+				.setVerbose(false).setRelSOCWhenAvailable(this.minRelSOC).setDispatchIndex(dispatchIndex);
+		return missionImplementationSimulator.simulateMissionImplementation(simulatedMissions);
+	}
 
+	public void run() {
+
+		long[] seeds = createReplicationSeeds(this.rnd, this.numberOfReplications);
+
+		// Shared by all replications, which only differ in their missions.
+		var intensities = new IncidentSimulator.Intensities(this.timeLine, this.id2Zone);
+		var dispatchIndex = new VehicleDispatchIndex(this.id2Vehicle, this.distances);
+
+		SystemState[] systemStates = new SystemState[this.numberOfReplications];
+		double[][] observations = new double[this.numberOfReplications][];
+		AtomicInteger finishedReplications = new AtomicInteger(0);
+		List<Callable<Void>> jobs = new ArrayList<>(this.numberOfReplications);
+		for (int replication = 0; replication < this.numberOfReplications; replication++) {
+			final int replicationIndex = replication;
+			jobs.add(() -> {
+				SystemState systemState = this.simulateReplication(seeds[replicationIndex], intensities,
+						dispatchIndex);
+				if (this.analyzer != null) {
+					observations[replicationIndex] = this.analyzer.evaluate(systemState);
+				}
+				if (this.retainSystemStates) {
+					systemStates[replicationIndex] = systemState;
+				}
+				if (this.verbose) {
+					System.out.println(finishedReplications.incrementAndGet() + " / " + this.numberOfReplications);
+				}
+				return null;
+			});
+		}
+
+		ExecutorService threadPool = Executors
+				.newFixedThreadPool(Math.max(1, Math.min(this.numberOfThreads, this.numberOfReplications)));
+		try {
+			for (Future<Void> future : threadPool.invokeAll(jobs)) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			threadPool.shutdown();
+		}
+
+		if (this.analyzer != null) {
+			for (double[] replicationObservations : observations) {
+				this.analyzer.add(replicationObservations);
+			}
+		}
+		if (this.retainSystemStates) {
+			this.simulatedSystemStates.addAll(Arrays.asList(systemStates));
 		}
 	}
 
@@ -213,11 +322,6 @@ public class ReplicationRunner {
 				.get(0);
 		eonMission.setStartTime_h(10 * 24.0); // TODO set real time
 
-		var replicationRunner = new ReplicationRunner(rnd).setNumberOfReplications(numberOfReplications)
-				.setTimeLine(timeLine).setMinRelSOC(0.8).setId2Zone(id2Zone).setDistances(distances)
-				.setId2Vehicle(id2Vehicle).setPrototypeMissions(prototypeMissions).addSpecialMission(eonMission);
-		replicationRunner.run();
-
 		var analyzer = new ReplicationAnalyzer();
 		analyzer.addObservable(NumberOfMissions.NAME, new NumberOfMissions());
 		analyzer.addObservable(AverageTimeFromVehicleRequestToArrival.NAME,
@@ -225,7 +329,12 @@ public class ReplicationRunner {
 		analyzer.addObservable(ShareOfVehiclesRunningOutOfCharge.NAME, new ShareOfVehiclesRunningOutOfCharge());
 		analyzer.addObservable(AverageMissingSOCWhenOutOfCharge.NAME, new AverageMissingSOCWhenOutOfCharge());
 
-		analyzer.add(replicationRunner.getSimulatedSystemStates());
+		var replicationRunner = new ReplicationRunner(rnd).setNumberOfReplications(numberOfReplications)
+				.setTimeLine(timeLine).setMinRelSOC(0.8).setId2Zone(id2Zone).setDistances(distances)
+				.setId2Vehicle(id2Vehicle).setPrototypeMissions(prototypeMissions).addSpecialMission(eonMission)
+				.setAnalyzer(analyzer).setRetainSystemStates(false);
+		replicationRunner.run();
+
 		System.out.println(analyzer);
 
 	}
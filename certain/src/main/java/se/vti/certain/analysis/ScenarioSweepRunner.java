@@ -0,0 +1,276 @@
+/**
+ * se.vti.certain.analysis
+ * 
+ * Copyright (C) 2025 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.certain.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import de.vandermeer.asciitable.AsciiTable;
+import de.vandermeer.asciitable.CWC_FixedWidth;
+import se.vti.certain.datastructures.Mission;
+import se.vti.certain.datastructures.Vehicle;
+import se.vti.certain.simulation.IncidentSimulator;
+import se.vti.certain.simulation.SimulationTimeLine;
+import se.vti.certain.simulation.missionimplementation.MissionImplementationSimulator;
+import se.vti.certain.simulation.missionimplementation.SystemState;
+import se.vti.certain.simulation.missionimplementation.VehicleDispatchIndex;
+import se.vti.certain.spatial.Distances;
+import se.vti.certain.spatial.Zone;
+
+/**
+ * Compares fleet variants (e.g. created with
+ * VehicleTypeModifier.createScenarioVehicles) with common random numbers. Per
+ * replication, incidents, timings, start times and fleet deployments are
+ * sampled once and replayed in every variant, so that only the mission
+ * implementation is simulated per variant. Replications use the same seeds as
+ * a ReplicationRunner with an equally seeded Random.
+ * 
+ * Besides per-variant statistics, paired differences of every variant to the
+ * first (reference) variant are reported. Their variance excludes the sampling
+ * noise shared by both variants.
+ * 
+ * Variants that change the zones (e.g. ZoneModifier) change the sampled
+ * missions themselves and cannot be replayed here. Running them with equally
+ * seeded runners still gives them equal replication seeds.
+ * 
+ * @author GunnarF
+ */
+public class ScenarioSweepRunner {
+
+	private final Random rnd;
+	private boolean verbose = true;
+	private Integer numberOfReplications = null;
+	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+	private SimulationTimeLine timeLine = null;
+	private Double minRelSOC = null;
+
+	private Map<String, Zone> id2Zone = null;
+	private Distances distances = null;
+
+	private List<Mission> prototypeMissions = null;
+	private final List<Mission> specialMissions = new ArrayList<>();
+
+	private final Map<String, Map<String, Vehicle>> variant2Id2Vehicle = new LinkedHashMap<>();
+
+	private final Map<String, Function<SystemState, Double>> name2Observable = new LinkedHashMap<>();
+
+	private Map<String, ReplicationAnalyzer> variant2Analyzer = null;
+	private Map<String, ReplicationAnalyzer> variant2DifferenceAnalyzer = null;
+
+	public ScenarioSweepRunner(Random rnd) {
+		this.rnd = rnd;
+	}
+
+	public ScenarioSweepRunner() {
+		this(new Random());
+	}
+
+	public ScenarioSweepRunner setVerbose(boolean verbose) {
+		this.verbose = verbose;
+		return this;
+	}
+
+	public ScenarioSweepRunner setNumberOfReplications(int numberOfReplications) {
+		this.numberOfReplications = numberOfReplications;
+		return this;
+	}
+
+	public ScenarioSweepRunner setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+		return this;
+	}
+
+	public ScenarioSweepRunner setTimeLine(SimulationTimeLine timeLine) {
+		this.timeLine = timeLine;
+		return this;
+	}
+
+	public ScenarioSweepRunner setMinRelSOC(double minRelSOC) {
+		this.minRelSOC = minRelSOC;
+		return this;
+	}
+
+	public ScenarioSweepRunner setId2Zone(Map<String, Zone> id2Zone) {
+		this.id2Zone = id2Zone;
+		return this;
+	}
+
+	public ScenarioSweepRunner setDistances(Distances distances) {
+		this.distances = distances;
+		return this;
+	}
+
+	public ScenarioSweepRunner setPrototypeMissions(List<Mission> prototypeMissions) {
+		this.prototypeMissions = prototypeMissions;
+		return this;
+	}
+
+	public ScenarioSweepRunner addSpecialMission(Mission mission) {
+		this.specialMissions.add(mission);
+		return this;
+	}
+
+	/**
+	 * The first added variant is the reference of all paired differences.
+	 */
+	public ScenarioSweepRunner addVariant(String name, Map<String, Vehicle> id2Vehicle) {
+		this.variant2Id2Vehicle.put(name, id2Vehicle);
+		return this;
+	}
+
+	public ScenarioSweepRunner addObservable(String name, Function<SystemState, Double> observable) {
+		this.name2Observable.put(name, observable);
+		return this;
+	}
+
+	public Map<String, ReplicationAnalyzer> getVariant2Analyzer() {
+		return this.variant2Analyzer;
+	}
+
+	/**
+	 * Statistics of (variant - reference variant), per replication. Contains no
+	 * entry for the reference variant.
+	 */
+	public Map<String, ReplicationAnalyzer> getVariant2DifferenceAnalyzer() {
+		return this.variant2DifferenceAnalyzer;
+	}
+
+	private ReplicationAnalyzer createAnalyzer() {
+		var analyzer = new ReplicationAnalyzer();
+		this.name2Observable.entrySet().forEach(e -> analyzer.addObservable(e.getKey(), e.getValue()));
+		return analyzer;
+	}
+
+	public void run() {
+
+		List<String> variants = new ArrayList<>(this.variant2Id2Vehicle.keySet());
+		if (variants.size() == 0) {
+			throw new RuntimeException("No variants.");
+		}
+
+		long[] seeds = ReplicationRunner.createReplicationSeeds(this.rnd, this.numberOfReplications);
+
+		List<VehicleDispatchIndex> dispatchIndices = new ArrayList<>(variants.size());
+		for (String variant : variants) {
+			dispatchIndices.add(new VehicleDispatchIndex(this.variant2Id2Vehicle.get(variant), this.distances));
+		}
+		var intensities = new IncidentSimulator.Intensities(this.timeLine, this.id2Zone);
+		ReplicationAnalyzer evaluator = this.createAnalyzer();
+
+		double[][][] observations = new double[this.numberOfReplications][variants.size()][];
+		AtomicInteger finishedReplications = new AtomicInteger(0);
+		List<Callable<Void>> jobs = new ArrayList<>(this.numberOfReplications);
+		for (int replication = 0; replication < this.numberOfReplications; replication++) {
+			final int replicationIndex = replication;
+			jobs.add(() -> {
+				List<Mission> missions = ReplicationRunner.simulateMissions(seeds[replicationIndex], this.timeLine,
+						intensities, this.prototypeMissions, this.specialMissions);
+				for (int variantIndex = 0; variantIndex < variants.size(); variantIndex++) {
+					var missionImplementationSimulator = new MissionImplementationSimulator(
+							this.variant2Id2Vehicle.get(variants.get(variantIndex)), this.distances).setVerbose(false)
+							.setRelSOCWhenAvailable(this.minRelSOC).setDispatchIndex(dispatchIndices.get(variantIndex));
+					observations[replicationIndex][variantIndex] = evaluator
+							.evaluate(missionImplementationSimulator.simulateMissionImplementation(missions));
+				}
+				if (this.verbose) {
+					System.out.println(finishedReplications.incrementAndGet() + " / " + this.numberOfReplications);
+				}
+				return null;
+			});
+		}
+
+		ExecutorService threadPool = Executors
+				.newFixedThreadPool(Math.max(1, Math.min(this.numberOfThreads, this.numberOfReplications)));
+		try {
+			for (Future<Void> future : threadPool.invokeAll(jobs)) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			threadPool.shutdown();
+		}
+
+		this.variant2Analyzer = new LinkedHashMap<>();
+		this.variant2DifferenceAnalyzer = new LinkedHashMap<>();
+		for (int variantIndex = 0; variantIndex < variants.size(); variantIndex++) {
+			var analyzer = this.createAnalyzer();
+			var differenceAnalyzer = (variantIndex > 0 ? this.createAnalyzer() : null);
+			for (double[][] replicationObservations : observations) {
+				analyzer.add(replicationObservations[variantIndex]);
+				if (differenceAnalyzer != null) {
+					double[] differences = new double[this.name2Observable.size()];
+					for (int i = 0; i < differences.length; i++) {
+						differences[i] = replicationObservations[variantIndex][i] - replicationObservations[0][i];
+					}
+					differenceAnalyzer.add(differences);
+				}
+			}
+			this.variant2Analyzer.put(variants.get(variantIndex), analyzer);
+			if (differenceAnalyzer != null) {
+				this.variant2DifferenceAnalyzer.put(variants.get(variantIndex), differenceAnalyzer);
+			}
+		}
+	}
+
+	String format(double number) {
+		return String.format(Locale.US, "%.3f", number);
+	}
+
+	/**
+	 * Paired differences to the reference variant, with 95% confidence intervals
+	 * from the normal approximation.
+	 */
+	public String toString() {
+
+		final AsciiTable table = new AsciiTable();
+		table.getRenderer().setCWC(new CWC_FixedWidth().add(20).add(30).add(10).add(10).add(10).add(10));
+		table.addRule();
+		table.addRow("Variant", "Statistic", "Mean diff.", "StdErr", "CI95 low", "CI95 high");
+		table.addRule();
+		if (this.variant2DifferenceAnalyzer != null) {
+			for (var variantEntry : this.variant2DifferenceAnalyzer.entrySet()) {
+				for (var statisticEntry : variantEntry.getValue().getStatistics().entrySet()) {
+					double mean = statisticEntry.getValue().getMean();
+					double standardError = statisticEntry.getValue().getStandardError();
+					table.addRow(Arrays.asList(variantEntry.getKey(), statisticEntry.getKey(), format(mean),
+							format(standardError), format(mean - 1.96 * standardError),
+							format(mean + 1.96 * standardError)));
+				}
+			}
+		}
+		table.addRule();
+
+		return table.render();
+	}
+}
@@ -22,6 +22,7 @@ package se.vti.certain.analysis.modifiers;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +30,7 @@ import com.fasterxml.jackson.core.exc.StreamWriteException;
 import com.fasterxml.jackson.databind.DatabindException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import se.vti.certain.datastructures.Vehicle;
 import se.vti.certain.datastructures.VehicleType;
 
 /**
@@ -77,15 +79,34 @@ public class VehicleTypeModifier {
 		return vehicleType.getMaxSpeed_km_h();
 	}
 
-	public void createVehicleTypeFile(String fileName) throws StreamWriteException, DatabindException, IOException {
-		List<VehicleType> scenarioVehicleTypes = new ArrayList<>(this.id2VehicleType.size());
+	public Map<String, VehicleType> createScenarioVehicleTypes() {
+		Map<String, VehicleType> id2ScenarioVehicleType = new LinkedHashMap<>(this.id2VehicleType.size());
 		for (VehicleType vehicleType : this.id2VehicleType.values()) {
 			VehicleType scenarioVehicleType = new VehicleType(vehicleType.getId(),
 					this.computeBatteryCapacity_kWh(vehicleType), this.computeEnergyNeed_kWh_per_km(vehicleType),
 					this.computeChargingRate_kW(vehicleType), this.computeEnergyNeedDuringMission_kW(vehicleType),
 					this.computeMaxSpeed_km_h(vehicleType));
-			scenarioVehicleTypes.add(scenarioVehicleType);
+			id2ScenarioVehicleType.put(scenarioVehicleType.getId(), scenarioVehicleType);
 		}
+		return id2ScenarioVehicleType;
+	}
+
+	/**
+	 * Same vehicles at the same stations, but of the scenario vehicle types. Meant
+	 * for in-memory scenario variants, see ScenarioSweepRunner.
+	 */
+	public Map<String, Vehicle> createScenarioVehicles(Map<String, Vehicle> id2Vehicle) {
+		Map<String, VehicleType> id2ScenarioVehicleType = this.createScenarioVehicleTypes();
+		Map<String, Vehicle> id2ScenarioVehicle = new LinkedHashMap<>(id2Vehicle.size());
+		for (Vehicle vehicle : id2Vehicle.values()) {
+			id2ScenarioVehicle.put(vehicle.getId(), new Vehicle(vehicle.getId(),
+					id2ScenarioVehicleType.get(vehicle.getVehicleType().getId()), vehicle.getStation()));
+		}
+		return id2ScenarioVehicle;
+	}
+
+	public void createVehicleTypeFile(String fileName) throws StreamWriteException, DatabindException, IOException {
+		List<VehicleType> scenarioVehicleTypes = new ArrayList<>(this.createScenarioVehicleTypes().values());
 		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(fileName), scenarioVehicleTypes);
 	}
 
@@ -96,11 +96,6 @@ public class MinimalExample {
 		var timeLine = new SimulationTimeLine(Season.WINTER, TypeOfDay.WORKDAY, daylightStart_h, daylightEnd_h,
 				numberOfSimulatedDays);
 		
-		var replicationRunner = new ReplicationRunner(rnd).setNumberOfReplications(numberOfReplications)
-				.setTimeLine(timeLine).setMinRelSOC(0.8).setId2Zone(id2Zone).setDistances(distances)
-				.setId2Vehicle(id2Vehicle).setPrototypeMissions(prototypeMissions);
-		replicationRunner.run();
-
 		var analyzer = new ReplicationAnalyzer();
 		analyzer.addObservable(NumberOfMissions.NAME, new NumberOfMissions());
 		analyzer.addObservable(AverageTimeFromVehicleRequestToArrival.NAME,
@@ -108,8 +103,13 @@ public class MinimalExample {
 		analyzer.addObservable(ShareOfVehiclesRunningOutOfCharge.NAME, new ShareOfVehiclesRunningOutOfCharge());
 		analyzer.addObservable(AverageMissingSOCWhenOutOfCharge.NAME, new AverageMissingSOCWhenOutOfCharge());
 		analyzer.addObservable(ShareOfDaytimeIncidents.NAME, new ShareOfDaytimeIncidents());
-		
-		analyzer.add(replicationRunner.getSimulatedSystemStates());
+
+		var replicationRunner = new ReplicationRunner(rnd).setNumberOfReplications(numberOfReplications)
+				.setTimeLine(timeLine).setMinRelSOC(0.8).setId2Zone(id2Zone).setDistances(distances)
+				.setId2Vehicle(id2Vehicle).setPrototypeMissions(prototypeMissions).setAnalyzer(analyzer)
+				.setRetainSystemStates(false);
+		replicationRunner.run();
+
 		System.out.println(analyzer);
 
 	}
@@ -132,12 +132,6 @@ class RTOG_Runner {
 		}
 		var timeLine = new SimulationTimeLine(season, typeOfDay, daylightStart_h, daylightEnd_h, numberOfDays);
 
-		var replicationRunner = new ReplicationRunner(rnd).setVerbose(false)
-				.setNumberOfReplications(numberOfReplications).setTimeLine(timeLine).setMinRelSOC(minRelSOC)
-				.setId2Zone(this.id2Zone).setDistances(this.distances).setId2Vehicle(this.id2Vehicle)
-				.setPrototypeMissions(this.prototypeMissions);
-		replicationRunner.run();
-
 		this.analyzer = new ReplicationAnalyzer();
 		this.analyzer.addObservable(NumberOfMissions.NAME, new NumberOfMissions());
 		this.analyzer.addObservable(AverageTimeFromVehicleRequestToArrival.NAME,
@@ -146,7 +140,13 @@ class RTOG_Runner {
 		this.analyzer.addObservable(ShareOfIncompleteMissions.NAME, new ShareOfIncompleteMissions());
 		this.analyzer.addObservable(AverageMissingSOCWhenOutOfCharge.NAME, new AverageMissingSOCWhenOutOfCharge());
 
-		this.analyzer.add(replicationRunner.getSimulatedSystemStates());
+		var replicationRunner = new ReplicationRunner(rnd).setVerbose(false)
+				.setNumberOfReplications(numberOfReplications).setTimeLine(timeLine).setMinRelSOC(minRelSOC)
+				.setId2Zone(this.id2Zone).setDistances(this.distances).setId2Vehicle(this.id2Vehicle)
+				.setPrototypeMissions(this.prototypeMissions).setAnalyzer(this.analyzer)
+				.setRetainSystemStates(false);
+		replicationRunner.run();
+
 		System.out.println(this.analyzer);
 	}
 }
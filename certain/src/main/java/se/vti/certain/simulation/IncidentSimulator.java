@@ -20,6 +20,8 @@
 package se.vti.certain.simulation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,34 +32,97 @@ import se.vti.certain.datastructures.IncidentType;
 import se.vti.certain.datastructures.Mission;
 import se.vti.certain.spatial.Zone;
 
+/**
+ * Per incident type, the total number of incidents is drawn from a single
+ * Poisson distribution, and each incident is then assigned to a zone with
+ * probability proportional to the zone's expected number. This has the same
+ * distribution as independent Poisson counts per zone and incident type, but
+ * needs random draws only per incident.
+ */
 public class IncidentSimulator {
 
+	/**
+	 * Expected incident numbers of a time line and zone system. Can be prepared
+	 * once and shared by all replications.
+	 */
+	public static class Intensities {
+
+		private final List<IncidentType> incidentTypes = new ArrayList<>();
+
+		private final List<Zone[]> zonesPerType = new ArrayList<>();
+
+		// cumulative expected numbers, starting at zero
+		private final List<double[]> cumulativeExpectedNumbersPerType = new ArrayList<>();
+
+		public Intensities(SimulationTimeLine timeLine, Map<String, Zone> id2Zone) {
+			Map<IncidentType, List<Zone>> type2Zones = new LinkedHashMap<>();
+			Map<IncidentType, List<Double>> type2ExpectedNumbers = new LinkedHashMap<>();
+			for (Zone zone : id2Zone.values()) {
+				for (Map.Entry<IncidentType, Double> entry : zone.getIncidentType2Intensity_1_yr().entrySet()) {
+					IncidentType incidentType = entry.getKey();
+					double intensity_1_yr = incidentType.getRelativeWeight(timeLine.season)
+							* incidentType.getRelativeWeight(timeLine.dayType) * entry.getValue();
+					if (intensity_1_yr >= 1e-12) {
+						double expectedNumber = intensity_1_yr * timeLine.numberOfDays / 365.0;
+						type2Zones.computeIfAbsent(incidentType, t -> new ArrayList<>()).add(zone);
+						type2ExpectedNumbers.computeIfAbsent(incidentType, t -> new ArrayList<>()).add(expectedNumber);
+					}
+				}
+			}
+			for (IncidentType incidentType : type2Zones.keySet()) {
+				List<Double> expectedNumbers = type2ExpectedNumbers.get(incidentType);
+				double[] cumulativeExpectedNumbers = new double[expectedNumbers.size() + 1];
+				for (int i = 0; i < expectedNumbers.size(); i++) {
+					cumulativeExpectedNumbers[i + 1] = cumulativeExpectedNumbers[i] + expectedNumbers.get(i);
+				}
+				this.incidentTypes.add(incidentType);
+				this.zonesPerType.add(type2Zones.get(incidentType).toArray(new Zone[0]));
+				this.cumulativeExpectedNumbersPerType.add(cumulativeExpectedNumbers);
+			}
+		}
+	}
+
 	private final SimulationTimeLine timeLine;
 
+	private final Well19937c rng;
+
 	private final RandomDataGenerator rdg;
 
 	public IncidentSimulator(SimulationTimeLine timeLine, long seed) {
 		this.timeLine = timeLine;
-		this.rdg = new RandomDataGenerator(new Well19937c(seed));
+		this.rng = new Well19937c(seed);
+		this.rdg = new RandomDataGenerator(this.rng);
 	}
 
 	/**
 	 * Creates a list of missions containing only IncidentType and Location.
 	 */
 	public List<Mission> simulateMissions(Map<String, Zone> id2Zone) {
+		return this.simulateMissions(new Intensities(this.timeLine, id2Zone));
+	}
+
+	/**
+	 * Creates a list of missions containing only IncidentType and Location.
+	 */
+	public List<Mission> simulateMissions(Intensities intensities) {
 		ArrayList<Mission> missions = new ArrayList<>();
-		for (Zone zone : id2Zone.values()) {
-			for (Map.Entry<IncidentType, Double> entry : zone.getIncidentType2Intensity_1_yr().entrySet()) {
-				IncidentType incidentType = entry.getKey();
-				double intensity_1_yr = incidentType.getRelativeWeight(this.timeLine.season)
-						* incidentType.getRelativeWeight(this.timeLine.dayType) * entry.getValue();
-				if (intensity_1_yr >= 1e-12) {
-					double expectedNumber = intensity_1_yr * this.timeLine.numberOfDays / 365.0;
-					long numberOfIncidents = this.rdg.nextPoisson(expectedNumber);
-					for (long i = 0; i < numberOfIncidents; i++) {
-						missions.add(new Mission(incidentType, zone));
-					}
+		for (int typeIndex = 0; typeIndex < intensities.incidentTypes.size(); typeIndex++) {
+			IncidentType incidentType = intensities.incidentTypes.get(typeIndex);
+			Zone[] zones = intensities.zonesPerType.get(typeIndex);
+			double[] cumulativeExpectedNumbers = intensities.cumulativeExpectedNumbersPerType.get(typeIndex);
+			double totalExpectedNumber = cumulativeExpectedNumbers[zones.length];
+			long numberOfIncidents = this.rdg.nextPoisson(totalExpectedNumber);
+			missions.ensureCapacity(missions.size() + (int) numberOfIncidents);
+			for (long i = 0; i < numberOfIncidents; i++) {
+				double u = this.rng.nextDouble() * totalExpectedNumber;
+				// last zone whose cumulative lower bound does not exceed u
+				int pos = Arrays.binarySearch(cumulativeExpectedNumbers, 0, zones.length, u);
+				int zoneIndex = (pos >= 0 ? pos : -pos - 2);
+				// equal bounds only arise from expected numbers lost in rounding
+				while (zoneIndex + 1 < zones.length && cumulativeExpectedNumbers[zoneIndex + 1] <= u) {
+					zoneIndex++;
 				}
+				missions.add(new Mission(incidentType, zones[zoneIndex]));
 			}
 		}
 		return missions;
@@ -45,6 +45,10 @@ public class SimulationTimeLine {
 	public final double totalNight_h;
 	public final double totalDay_h;
 
+	// Interval start positions when concatenating all intervals, plus the end.
+	final double[] nightIntervalCumulativeStarts_h;
+	final double[] dayIntervalCumulativeStarts_h;
+
 	public SimulationTimeLine(Season season, TypeOfDay dayType, double sunUpTime_h, double sunDownTime_h,
 			int numberOfDays) {
 		this.season = season;
@@ -72,5 +76,16 @@ public class SimulationTimeLine {
 
 		this.totalNight_h = tmpNightIntervals_h.stream().mapToDouble(n -> n.getB() - n.getA()).sum();
 		this.totalDay_h = tmpDayIntervals_h.stream().mapToDouble(d -> d.getB() - d.getA()).sum();
+
+		this.nightIntervalCumulativeStarts_h = createCumulativeStarts(this.nightIntervals_h);
+		this.dayIntervalCumulativeStarts_h = createCumulativeStarts(this.dayIntervals_h);
+	}
+
+	private static double[] createCumulativeStarts(List<Tuple<Double, Double>> intervals_h) {
+		double[] result = new double[intervals_h.size() + 1];
+		for (int i = 0; i < intervals_h.size(); i++) {
+			result[i + 1] = result[i] + (intervals_h.get(i).getB() - intervals_h.get(i).getA());
+		}
+		return result;
 	}
 }
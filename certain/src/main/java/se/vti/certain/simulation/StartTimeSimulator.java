@@ -20,6 +20,7 @@
 package se.vti.certain.simulation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -46,25 +47,32 @@ public class StartTimeSimulator {
 
 	private Double simulateStartTime_h(TimeOfDay timeOfDay) {
 		final List<Tuple<Double, Double>> intervals_h;
+		final double[] cumulativeStarts_h;
 		final double totalTime_h;
 		if (TimeOfDay.DAY == timeOfDay) {
 			intervals_h = this.timeLine.dayIntervals_h;
+			cumulativeStarts_h = this.timeLine.dayIntervalCumulativeStarts_h;
 			totalTime_h = this.timeLine.totalDay_h;
 		} else if (TimeOfDay.NIGHT == timeOfDay) {
 			intervals_h = this.timeLine.nightIntervals_h;
+			cumulativeStarts_h = this.timeLine.nightIntervalCumulativeStarts_h;
 			totalTime_h = this.timeLine.totalNight_h;
 		} else {
 			throw new UnsupportedOperationException("Unkown: " + timeOfDay);
 		}
 
+		// Same interval as a linear scan: the last one starting at or before u, if
+		// it ends after u.
 		double u = this.rnd.nextDouble() * totalTime_h;
-		double sum_h = 0.0;
-		for (Tuple<Double, Double> interval_h : intervals_h) {
+		int pos = Arrays.binarySearch(cumulativeStarts_h, 0, intervals_h.size(), u);
+		int index = (pos >= 0 ? pos : -pos - 2);
+		while (index + 1 < intervals_h.size() && cumulativeStarts_h[index + 1] <= u) {
+			index++;
+		}
+		if (index >= 0 && cumulativeStarts_h[index + 1] > u) {
+			Tuple<Double, Double> interval_h = intervals_h.get(index);
 			double intervalSize_h = interval_h.getB() - interval_h.getA();
-			if (sum_h <= u && sum_h + intervalSize_h > u) {
-				return (interval_h.getA() + this.rnd.nextDouble() * intervalSize_h);
-			}
-			sum_h += intervalSize_h;
+			return (interval_h.getA() + this.rnd.nextDouble() * intervalSize_h);
 		}
 		return null;
 	}
@@ -87,6 +95,26 @@ public class StartTimeSimulator {
 		return result;
 	}
 
+	/**
+	 * Merges further missions into an already start time sorted list in O(n + k
+	 * log k), for k further missions. The result equals
+	 * getStartTimeSortedMissions of the concatenated lists.
+	 */
+	public static List<Mission> mergeStartTimeSortedMissions(List<Mission> sortedMissions,
+			List<Mission> otherMissions) {
+		List<Mission> sortedOthers = getStartTimeSortedMissions(otherMissions);
+		List<Mission> result = new ArrayList<>(sortedMissions.size() + sortedOthers.size());
+		int j = 0;
+		for (Mission mission : sortedMissions) {
+			while (j < sortedOthers.size() && sortedOthers.get(j).getStartTime_h() < mission.getStartTime_h()) {
+				result.add(sortedOthers.get(j++));
+			}
+			result.add(mission);
+		}
+		result.addAll(sortedOthers.subList(j, sortedOthers.size()));
+		return result;
+	}
+
 	public static List<Mission> getMissionsWithoutStartTimes(List<Mission> allMissions) {
 		return new ArrayList<>(allMissions.stream().filter(m -> m.getStartTime_h() == null).toList());
 	}
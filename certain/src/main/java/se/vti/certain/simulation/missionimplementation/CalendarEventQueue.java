@@ -0,0 +1,237 @@
+/**
+ * se.vti.certain
+ * 
+ * Copyright (C) 2025 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.certain.simulation.missionimplementation;
+
+import java.util.Arrays;
+
+/**
+ * Calendar queue (Brown, 1988) for the near-monotone event times of the
+ * mission implementation simulation. Events are hashed by start time into a
+ * ring of buckets of equal width; each bucket is a list sorted by (start time,
+ * insertion order). Polling scans the buckets from the current one, which takes
+ * amortized constant time if the bucket width matches the event density. The
+ * number of buckets follows the queue size, and the width is re-estimated
+ * from the queued events whenever the buckets are resized.
+ * 
+ * Entries are stored in parallel arrays with a free list, so that adding and
+ * polling events does not allocate.
+ * 
+ * @author GunnarF
+ *
+ */
+public class CalendarEventQueue implements EventQueue {
+
+	// -------------------- CONSTANTS --------------------
+
+	private static final int MIN_BUCKET_CNT = 16;
+
+	// -------------------- MEMBERS --------------------
+
+	// entry storage, linked into bucket lists through next
+
+	private double[] times_h = new double[64];
+
+	private long[] sequenceNumbers = new long[64];
+
+	private Event[] events = new Event[64];
+
+	private int[] next = new int[64];
+
+	private int usedSlotCnt = 0;
+
+	private int freeSlot = -1;
+
+	// calendar
+
+	private int[] bucketHeads;
+
+	private int bucketMask;
+
+	private double bucketWidth_h;
+
+	// all queued events are in this or later (unwrapped) bucket numbers
+	private long currentBucketNumber = 0;
+
+	private int size = 0;
+
+	private long nextSequenceNumber = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public CalendarEventQueue(double initialBucketWidth_h) {
+		this.bucketWidth_h = initialBucketWidth_h;
+		this.bucketHeads = new int[MIN_BUCKET_CNT];
+		Arrays.fill(this.bucketHeads, -1);
+		this.bucketMask = MIN_BUCKET_CNT - 1;
+	}
+
+	public CalendarEventQueue() {
+		this(1.0);
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private long bucketNumber(double time_h) {
+		return (long) Math.floor(time_h / this.bucketWidth_h);
+	}
+
+	private boolean before(int slot1, int slot2) {
+		return (this.times_h[slot1] < this.times_h[slot2]) || ((this.times_h[slot1] == this.times_h[slot2])
+				&& (this.sequenceNumbers[slot1] < this.sequenceNumbers[slot2]));
+	}
+
+	private int allocateSlot() {
+		if (this.freeSlot >= 0) {
+			final int slot = this.freeSlot;
+			this.freeSlot = this.next[slot];
+			return slot;
+		}
+		if (this.usedSlotCnt == this.times_h.length) {
+			final int newLength = 2 * this.times_h.length;
+			this.times_h = Arrays.copyOf(this.times_h, newLength);
+			this.sequenceNumbers = Arrays.copyOf(this.sequenceNumbers, newLength);
+			this.events = Arrays.copyOf(this.events, newLength);
+			this.next = Arrays.copyOf(this.next, newLength);
+		}
+		return this.usedSlotCnt++;
+	}
+
+	private void insert(int slot) {
+		final int bucket = (int) (this.bucketNumber(this.times_h[slot]) & this.bucketMask);
+		int previous = -1;
+		int current = this.bucketHeads[bucket];
+		while (current >= 0 && this.before(current, slot)) {
+			previous = current;
+			current = this.next[current];
+		}
+		this.next[slot] = current;
+		if (previous >= 0) {
+			this.next[previous] = slot;
+		} else {
+			this.bucketHeads[bucket] = slot;
+		}
+	}
+
+	private Event removeHead(int bucket) {
+		final int slot = this.bucketHeads[bucket];
+		this.bucketHeads[bucket] = this.next[slot];
+		final Event event = this.events[slot];
+		this.events[slot] = null;
+		this.next[slot] = this.freeSlot;
+		this.freeSlot = slot;
+		this.size--;
+		return event;
+	}
+
+	private void resize(int newBucketCnt) {
+		final int[] slots = new int[this.size];
+		int cnt = 0;
+		double minTime_h = Double.POSITIVE_INFINITY;
+		double maxTime_h = Double.NEGATIVE_INFINITY;
+		for (int head : this.bucketHeads) {
+			for (int slot = head; slot >= 0; slot = this.next[slot]) {
+				slots[cnt++] = slot;
+				minTime_h = Math.min(minTime_h, this.times_h[slot]);
+				maxTime_h = Math.max(maxTime_h, this.times_h[slot]);
+			}
+		}
+
+		// About three events per bucket-width, as recommended by Brown.
+		if (maxTime_h > minTime_h) {
+			this.bucketWidth_h = 3.0 * (maxTime_h - minTime_h) / cnt;
+		}
+		this.bucketHeads = new int[newBucketCnt];
+		Arrays.fill(this.bucketHeads, -1);
+		this.bucketMask = newBucketCnt - 1;
+		for (int i = 0; i < cnt; i++) {
+			this.insert(slots[i]);
+		}
+		if (cnt > 0) {
+			this.currentBucketNumber = this.bucketNumber(minTime_h);
+		}
+	}
+
+	// -------------------- IMPLEMENTATION OF EventQueue --------------------
+
+	@Override
+	public void add(Event event) {
+		final int slot = this.allocateSlot();
+		this.times_h[slot] = event.getStartTime_h();
+		this.sequenceNumbers[slot] = this.nextSequenceNumber++;
+		this.events[slot] = event;
+
+		final long bucketNumber = this.bucketNumber(this.times_h[slot]);
+		if ((this.size == 0) || (bucketNumber < this.currentBucketNumber)) {
+			this.currentBucketNumber = bucketNumber;
+		}
+		this.insert(slot);
+		this.size++;
+
+		if (this.size > 2 * this.bucketHeads.length) {
+			this.resize(2 * this.bucketHeads.length);
+		}
+	}
+
+	@Override
+	public Event poll() {
+		if (this.size == 0) {
+			return null;
+		}
+
+		final Event result;
+		long bucketNumber = this.currentBucketNumber;
+		int foundBucket = -1;
+		for (int i = 0; i < this.bucketHeads.length; i++, bucketNumber++) {
+			final int bucket = (int) (bucketNumber & this.bucketMask);
+			final int head = this.bucketHeads[bucket];
+			if ((head >= 0) && (this.bucketNumber(this.times_h[head]) == bucketNumber)) {
+				foundBucket = bucket;
+				break;
+			}
+		}
+
+		if (foundBucket >= 0) {
+			this.currentBucketNumber = bucketNumber;
+			result = this.removeHead(foundBucket);
+		} else {
+			// No event within one round through the calendar: search directly.
+			int bestSlot = -1;
+			for (int bucket = 0; bucket < this.bucketHeads.length; bucket++) {
+				final int head = this.bucketHeads[bucket];
+				if ((head >= 0) && ((bestSlot < 0) || this.before(head, bestSlot))) {
+					bestSlot = head;
+					foundBucket = bucket;
+				}
+			}
+			this.currentBucketNumber = this.bucketNumber(this.times_h[bestSlot]);
+			result = this.removeHead(foundBucket);
+		}
+
+		if ((this.bucketHeads.length > MIN_BUCKET_CNT) && (this.size < this.bucketHeads.length / 2)) {
+			this.resize(this.bucketHeads.length / 2);
+		}
+		return result;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+}
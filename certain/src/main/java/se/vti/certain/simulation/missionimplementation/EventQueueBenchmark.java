@@ -0,0 +1,160 @@
+/**
+ * se.vti.certain
+ * 
+ * Copyright (C) 2025 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.certain.simulation.missionimplementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares event queue implementations on a synthetic workload shaped like the
+ * mission implementation simulation: all incidents of a long time line are
+ * queued up front, and each processed incident queues a few vehicle requests
+ * shortly after it. Also checks that CalendarEventQueue polls in the same order
+ * as HeapEventQueue.
+ * 
+ * Not a JMH benchmark; results are wall-clock times after warm-up rounds.
+ * 
+ * @author GunnarF
+ *
+ */
+public class EventQueueBenchmark {
+
+	private static class BenchmarkEvent extends Event {
+
+		private final int requestCnt;
+
+		private final double[] requestOffsets_h;
+
+		BenchmarkEvent(double startTime_h, int requestCnt, double[] requestOffsets_h) {
+			super(startTime_h);
+			this.requestCnt = requestCnt;
+			this.requestOffsets_h = requestOffsets_h;
+		}
+
+		@Override
+		public List<Event> process(SystemState systemState) {
+			if (this.requestCnt == 0) {
+				return Collections.emptyList();
+			}
+			List<Event> result = new ArrayList<>(this.requestCnt);
+			for (int i = 0; i < this.requestCnt; i++) {
+				result.add(new BenchmarkEvent(this.getStartTime_h() + this.requestOffsets_h[i], 0, null));
+			}
+			return result;
+		}
+	}
+
+	private static List<BenchmarkEvent> createIncidents(int incidentCnt, int numberOfDays, Random rnd) {
+		double[] startTimes_h = new double[incidentCnt];
+		for (int i = 0; i < incidentCnt; i++) {
+			// whole minutes, so that ties occur
+			startTimes_h[i] = Math.floor(rnd.nextDouble() * numberOfDays * 24.0 * 60.0) / 60.0;
+		}
+		Arrays.sort(startTimes_h);
+		List<BenchmarkEvent> result = new ArrayList<>(incidentCnt);
+		for (double startTime_h : startTimes_h) {
+			int requestCnt = 1 + rnd.nextInt(4);
+			double[] offsets_h = new double[requestCnt];
+			for (int i = 0; i < requestCnt; i++) {
+				offsets_h[i] = (rnd.nextBoolean() ? 0.0 : rnd.nextDouble());
+			}
+			result.add(new BenchmarkEvent(startTime_h, requestCnt, offsets_h));
+		}
+		return result;
+	}
+
+	private static List<Event> simulate(EventQueue eventQueue, List<BenchmarkEvent> incidents, boolean record) {
+		List<Event> polled = (record ? new ArrayList<>() : null);
+		incidents.forEach(e -> eventQueue.add(e));
+		while (!eventQueue.isEmpty()) {
+			Event event = eventQueue.poll();
+			if (record) {
+				polled.add(event);
+			}
+			for (Event newEvent : event.process(null)) {
+				eventQueue.add(newEvent);
+			}
+		}
+		return polled;
+	}
+
+	private static double simulateWithPriorityQueue(List<BenchmarkEvent> incidents) {
+		PriorityQueue<Event> eventQueue = new PriorityQueue<>(
+				(e1, e2) -> Double.compare(e1.getStartTime_h(), e2.getStartTime_h()));
+		long start = System.nanoTime();
+		eventQueue.addAll(incidents);
+		while (!eventQueue.isEmpty()) {
+			eventQueue.addAll(eventQueue.poll().process(null));
+		}
+		return (System.nanoTime() - start) * 1e-6;
+	}
+
+	private static double time(Supplier<EventQueue> factory, List<BenchmarkEvent> incidents) {
+		long start = System.nanoTime();
+		simulate(factory.get(), incidents, false);
+		return (System.nanoTime() - start) * 1e-6;
+	}
+
+	// -------------------- MAIN FUNCTION, ONLY FOR TESTING --------------------
+
+	public static void main(String[] args) {
+		int numberOfDays = 90;
+		int warmupRounds = 5;
+		int measuredRounds = 10;
+		Random rnd = new Random(4711);
+
+		for (int incidentCnt : new int[] { 1_000, 10_000, 100_000, 1_000_000 }) {
+			List<BenchmarkEvent> incidents = createIncidents(incidentCnt, numberOfDays, rnd);
+
+			List<Event> heapOrder = simulate(new HeapEventQueue(), incidents, true);
+			List<Event> calendarOrder = simulate(new CalendarEventQueue(), incidents, true);
+			for (int i = 0; i < heapOrder.size(); i++) {
+				if ((heapOrder.get(i).getStartTime_h() != calendarOrder.get(i).getStartTime_h())
+						|| (heapOrder.get(i).getClass() != calendarOrder.get(i).getClass())) {
+					throw new RuntimeException("Different event order at position " + i + ".");
+				}
+			}
+
+			double priorityQueue_ms = 0;
+			double heap_ms = 0;
+			double calendar_ms = 0;
+			for (int round = 0; round < warmupRounds + measuredRounds; round++) {
+				double p = simulateWithPriorityQueue(incidents);
+				double h = time(HeapEventQueue::new, incidents);
+				double c = time(CalendarEventQueue::new, incidents);
+				if (round >= warmupRounds) {
+					priorityQueue_ms += p / measuredRounds;
+					heap_ms += h / measuredRounds;
+					calendar_ms += c / measuredRounds;
+				}
+			}
+			System.out.println(String.format(Locale.US,
+					"%8d incidents, %8d events: PriorityQueue %9.3f ms, HeapEventQueue %9.3f ms, "
+							+ "CalendarEventQueue %9.3f ms",
+					incidentCnt, heapOrder.size(), priorityQueue_ms, heap_ms, calendar_ms));
+		}
+	}
+}
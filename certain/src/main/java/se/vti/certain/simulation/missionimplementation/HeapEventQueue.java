@@ -0,0 +1,68 @@
+/**
+ * se.vti.certain
+ * 
+ * Copyright (C) 2025 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.certain.simulation.missionimplementation;
+
+import java.util.PriorityQueue;
+
+/**
+ * EventQueue on top of a java.util.PriorityQueue. Allocates one entry per
+ * event. Mainly kept as a reference for CalendarEventQueue.
+ * 
+ * @author GunnarF
+ *
+ */
+public class HeapEventQueue implements EventQueue {
+
+	private static class Entry {
+
+		private final double time_h;
+		private final long sequenceNumber;
+		private final Event event;
+
+		private Entry(Event event, long sequenceNumber) {
+			this.time_h = event.getStartTime_h();
+			this.sequenceNumber = sequenceNumber;
+			this.event = event;
+		}
+	}
+
+	private final PriorityQueue<Entry> queue = new PriorityQueue<>((e1, e2) -> {
+		int result = Double.compare(e1.time_h, e2.time_h);
+		return (result != 0 ? result : Long.compare(e1.sequenceNumber, e2.sequenceNumber));
+	});
+
+	private long nextSequenceNumber = 0;
+
+	@Override
+	public void add(Event event) {
+		this.queue.add(new Entry(event, this.nextSequenceNumber++));
+	}
+
+	@Override
+	public Event poll() {
+		Entry entry = this.queue.poll();
+		return (entry != null ? entry.event : null);
+	}
+
+	@Override
+	public int size() {
+		return this.queue.size();
+	}
+}
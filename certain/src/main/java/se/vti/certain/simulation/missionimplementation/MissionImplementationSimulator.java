@@ -21,7 +21,7 @@ package se.vti.certain.simulation.missionimplementation;
 
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.function.Supplier;
 
 import se.vti.certain.datastructures.Mission;
 import se.vti.certain.datastructures.Vehicle;
@@ -41,6 +41,10 @@ public class MissionImplementationSimulator {
 	private boolean verbose = true;
 	
 	private double relSOCWhenAvailable = 1.0;
+
+	private VehicleDispatchIndex dispatchIndex = null;
+
+	private Supplier<EventQueue> eventQueueFactory = CalendarEventQueue::new;
 	
 	public MissionImplementationSimulator(Map<String, Vehicle> id2Vehicle, Distances distances) {
 		this.id2Vehicle = id2Vehicle;
@@ -57,6 +61,20 @@ public class MissionImplementationSimulator {
 		return this;
 	}
 	
+	/**
+	 * Allows to share one index between simulators of the same vehicles and
+	 * distances. Otherwise, a new index is created per simulation.
+	 */
+	public MissionImplementationSimulator setDispatchIndex(VehicleDispatchIndex dispatchIndex) {
+		this.dispatchIndex = dispatchIndex;
+		return this;
+	}
+
+	public MissionImplementationSimulator setEventQueueFactory(Supplier<EventQueue> eventQueueFactory) {
+		this.eventQueueFactory = eventQueueFactory;
+		return this;
+	}
+
 	private boolean canBeSimulated(Mission mission) {
 		return true;
 	}
@@ -64,11 +82,12 @@ public class MissionImplementationSimulator {
 	public SystemState simulateMissionImplementation(List<Mission> missions) {
 
 		double time_h = 0.0;
-		PriorityQueue<Event> eventQueue = new PriorityQueue<>(
-				(e1, e2) -> Double.compare(e1.getStartTime_h(), e2.getStartTime_h()));
+		EventQueue eventQueue = this.eventQueueFactory.get();
 		missions.stream().filter(m -> this.canBeSimulated(m)).forEach(m -> eventQueue.add(new IncidentHappensEvent(m)));
 
-		SystemState systemState = new SystemState(this.id2Vehicle, this.distances, this.relSOCWhenAvailable);
+		VehicleDispatchIndex dispatchIndex = (this.dispatchIndex != null ? this.dispatchIndex
+				: new VehicleDispatchIndex(this.id2Vehicle, this.distances));
+		SystemState systemState = new SystemState(dispatchIndex, this.relSOCWhenAvailable);
 
 		while (!eventQueue.isEmpty()) {
 			Event nextEvent = eventQueue.poll();
@@ -76,8 +95,9 @@ public class MissionImplementationSimulator {
 			if (this.verbose) {
 				System.out.println(time_h + ": " + nextEvent);
 			}
-			List<Event> newEvents = nextEvent.process(systemState);
-			eventQueue.addAll(newEvents);
+			for (Event newEvent : nextEvent.process(systemState)) {
+				eventQueue.add(newEvent);
+			}
 		}
 
 		return systemState;
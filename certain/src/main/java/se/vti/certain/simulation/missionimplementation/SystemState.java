@@ -28,8 +28,13 @@ import se.vti.certain.datastructures.Mission;
 import se.vti.certain.datastructures.Vehicle;
 import se.vti.certain.datastructures.VehicleType;
 import se.vti.certain.spatial.Distances;
+import se.vti.certain.spatial.Zone;
 
 /**
+ * Vehicle availabilities are held in an array indexed as in the
+ * VehicleDispatchIndex. A vehicle request only visits the connected vehicles of
+ * the requested type, in order of increasing travel time, and stops as soon as
+ * no remaining vehicle can arrive earlier than the best one found so far.
  * 
  * @author GunnarF
  *
@@ -38,11 +43,11 @@ public class SystemState {
 
 	private final double relSOCWhenAvailable;
 
-	private final Map<VehicleType, List<Vehicle>> vehicleType2Vehicles = new LinkedHashMap<>();
+	private final VehicleDispatchIndex dispatchIndex;
 
 	// contains exactly those times when vehicles are a available at SOC level
 	// this.relSOCWhenAvailable
-	private final Map<Vehicle, Double> vehicle2Availability_h = new LinkedHashMap<>();
+	private final double[] vehicleIndex2Availability_h;
 
 	private final Distances distances;
 
@@ -50,45 +55,63 @@ public class SystemState {
 
 	private final List<VehicleRequestedEvent> failedRequests = new ArrayList<>();
 
-	public SystemState(Map<String, Vehicle> id2Vehicle, Distances distances, double relSOCWhenAvailable) {
+	public SystemState(VehicleDispatchIndex dispatchIndex, double relSOCWhenAvailable) {
 		this.relSOCWhenAvailable = relSOCWhenAvailable;
-		for (Vehicle vehicle : id2Vehicle.values()) {
-			VehicleType vehicleType = vehicle.getVehicleType();
-			this.vehicleType2Vehicles.computeIfAbsent(vehicleType, t -> new ArrayList<>()).add(vehicle);
-			this.vehicle2Availability_h.put(vehicle, -(1.0 - relSOCWhenAvailable) * vehicleType.getBatteryCapacity_kWh()
-					/ vehicleType.getChargingRate_kW());
+		this.dispatchIndex = dispatchIndex;
+		this.vehicleIndex2Availability_h = new double[dispatchIndex.getNumberOfVehicles()];
+		for (int vehicleIndex = 0; vehicleIndex < dispatchIndex.getNumberOfVehicles(); vehicleIndex++) {
+			VehicleType vehicleType = dispatchIndex.getVehicle(vehicleIndex).getVehicleType();
+			this.vehicleIndex2Availability_h[vehicleIndex] = -(1.0 - relSOCWhenAvailable)
+					* vehicleType.getBatteryCapacity_kWh() / vehicleType.getChargingRate_kW();
 		}
-		this.distances = distances;
+		this.distances = dispatchIndex.getDistances();
+	}
+
+	public SystemState(Map<String, Vehicle> id2Vehicle, Distances distances, double relSOCWhenAvailable) {
+		this(new VehicleDispatchIndex(id2Vehicle, distances), relSOCWhenAvailable);
 	}
 
+	/**
+	 * Picks the vehicle with the earliest arrival at the destination; among equal
+	 * arrivals the first one in vehicle map order.
+	 */
 	public VehicleAvailability reserveNextAvailableVehicle(VehicleRequestedEvent vehicleRequestedEvent) {
-		VehicleAvailability bestAvailability = null;
-		for (Vehicle candidateVehicle : this.vehicleType2Vehicles
-				.get(vehicleRequestedEvent.getVehicleMission().getVehicleType())) {
-
-			if (this.distances.connects(candidateVehicle.getStation().getZone(),
-					vehicleRequestedEvent.getMission().getZone())) {
-				double candidateDepartureFromStation_h = Math.max(vehicleRequestedEvent.getRequestTime_h(),
-						this.vehicle2Availability_h.get(candidateVehicle));
-				double candidateArrivalAtDestination_h = candidateDepartureFromStation_h + this.distances
-						.computeTravelTimeFromStation_h(candidateVehicle, vehicleRequestedEvent.getMission().getZone());
-				if ((bestAvailability == null)
-						|| (candidateArrivalAtDestination_h < bestAvailability.getArrivalTimeAtDestination_h())) {
-					bestAvailability = new VehicleAvailability(candidateVehicle,
-							vehicleRequestedEvent.getMission().getZone(), candidateDepartureFromStation_h,
-							candidateArrivalAtDestination_h);
-				}
+		Zone destination = vehicleRequestedEvent.getMission().getZone();
+		VehicleDispatchIndex.Candidates candidates = this.dispatchIndex
+				.getCandidates(vehicleRequestedEvent.getVehicleMission().getVehicleType(), destination);
+		double requestTime_h = vehicleRequestedEvent.getRequestTime_h();
+
+		int bestVehicleIndex = -1;
+		double bestDepartureFromStation_h = Double.NaN;
+		double bestArrivalAtDestination_h = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < candidates.vehicleIndices.length; i++) {
+			double travelTime_h = candidates.travelTimes_h[i];
+			if ((bestVehicleIndex >= 0) && (requestTime_h + travelTime_h > bestArrivalAtDestination_h)) {
+				break; // no departure is earlier than the request, travel times only increase
+			}
+			int vehicleIndex = candidates.vehicleIndices[i];
+			double candidateDepartureFromStation_h = Math.max(requestTime_h,
+					this.vehicleIndex2Availability_h[vehicleIndex]);
+			double candidateArrivalAtDestination_h = candidateDepartureFromStation_h + travelTime_h;
+			if ((bestVehicleIndex < 0) || (candidateArrivalAtDestination_h < bestArrivalAtDestination_h)
+					|| ((candidateArrivalAtDestination_h == bestArrivalAtDestination_h)
+							&& (vehicleIndex < bestVehicleIndex))) {
+				bestVehicleIndex = vehicleIndex;
+				bestDepartureFromStation_h = candidateDepartureFromStation_h;
+				bestArrivalAtDestination_h = candidateArrivalAtDestination_h;
 			}
 		}
 
-		if (bestAvailability != null) {
-			Vehicle vehicle = bestAvailability.getVehicle();
+		if (bestVehicleIndex >= 0) {
+			Vehicle vehicle = this.dispatchIndex.getVehicle(bestVehicleIndex);
+			VehicleAvailability bestAvailability = new VehicleAvailability(vehicle, destination,
+					bestDepartureFromStation_h, bestArrivalAtDestination_h);
 
 			// Possibly incomplete charging level when first ready for mission.
 			double initialSOC_kWh = this.relSOCWhenAvailable * vehicle.getVehicleType().getBatteryCapacity_kWh();
 			// Possibly larger (and capacity-unconstrained) charging level when requested.
 			initialSOC_kWh += Math.max(0.0,
-					bestAvailability.getDepartureTimeFromStation_h() - this.vehicle2Availability_h.get(vehicle))
+					bestAvailability.getDepartureTimeFromStation_h() - this.vehicleIndex2Availability_h[bestVehicleIndex])
 					* vehicle.getVehicleType().getChargingRate_kW();
 			// Capacity-constrained charging level when requested for mission.
 			initialSOC_kWh = Math.min(initialSOC_kWh, vehicle.getVehicleType().getBatteryCapacity_kWh());
@@ -96,14 +119,14 @@ public class SystemState {
 			VehicleMissionLog anticipatedLog = new VehicleMissionLog(vehicleRequestedEvent, bestAvailability,
 					this.distances, initialSOC_kWh, this.relSOCWhenAvailable);
 			bestAvailability.setAnticipatedDispatchmentLog(anticipatedLog);
-			this.vehicle2Availability_h.put(bestAvailability.getVehicle(), anticipatedLog.againAvailable_h);
+			this.vehicleIndex2Availability_h[bestVehicleIndex] = anticipatedLog.againAvailable_h;
 			this.getMission2VehicleMissionLogs()
 					.computeIfAbsent(vehicleRequestedEvent.getMission(), m -> new ArrayList<>()).add(anticipatedLog);
+			return bestAvailability;
 		} else {
 			this.failedRequests.add(vehicleRequestedEvent);
+			return null;
 		}
-
-		return bestAvailability;
 	}
 
 	public Map<Mission, List<VehicleMissionLog>> getMission2VehicleMissionLogs() {
@@ -0,0 +1,117 @@
+/**
+ * se.vti.certain
+ * 
+ * Copyright (C) 2025 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.certain.simulation.missionimplementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import se.vti.certain.datastructures.Vehicle;
+import se.vti.certain.datastructures.VehicleType;
+import se.vti.certain.spatial.Distances;
+import se.vti.certain.spatial.Zone;
+
+/**
+ * Dense vehicle indices and, per (vehicle type, destination zone), the vehicles
+ * that can reach the destination, sorted by travel time from their station.
+ * Ties are ordered by vehicle index, i.e. by the order of the vehicle map.
+ * Candidate lists are built on first request and can be shared by concurrently
+ * simulated replications.
+ * 
+ * @author GunnarF
+ *
+ */
+public class VehicleDispatchIndex {
+
+	// -------------------- INNER CLASS --------------------
+
+	static class Candidates {
+
+		final int[] vehicleIndices;
+
+		final double[] travelTimes_h;
+
+		private Candidates(int[] vehicleIndices, double[] travelTimes_h) {
+			this.vehicleIndices = vehicleIndices;
+			this.travelTimes_h = travelTimes_h;
+		}
+	}
+
+	// -------------------- MEMBERS --------------------
+
+	private final Distances distances;
+
+	private final Vehicle[] vehicles;
+
+	private final ConcurrentMap<VehicleType, ConcurrentMap<Zone, Candidates>> vehicleType2Zone2Candidates = new ConcurrentHashMap<>();
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public VehicleDispatchIndex(Map<String, Vehicle> id2Vehicle, Distances distances) {
+		this.distances = distances;
+		this.vehicles = id2Vehicle.values().toArray(new Vehicle[0]);
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private Candidates createCandidates(VehicleType vehicleType, Zone destination) {
+		List<Integer> indices = new ArrayList<>();
+		for (int index = 0; index < this.vehicles.length; index++) {
+			Vehicle vehicle = this.vehicles[index];
+			if (vehicleType.equals(vehicle.getVehicleType())
+					&& this.distances.connects(vehicle.getStation().getZone(), destination)) {
+				indices.add(index);
+			}
+		}
+		double[] index2TravelTime_h = new double[this.vehicles.length];
+		for (int index : indices) {
+			index2TravelTime_h[index] = this.distances.computeTravelTimeFromStation_h(this.vehicles[index],
+					destination);
+		}
+		// Stable, so equal travel times remain in vehicle index order.
+		indices.sort((i1, i2) -> Double.compare(index2TravelTime_h[i1], index2TravelTime_h[i2]));
+
+		int[] vehicleIndices = indices.stream().mapToInt(i -> i).toArray();
+		double[] travelTimes_h = Arrays.stream(vehicleIndices).mapToDouble(i -> index2TravelTime_h[i]).toArray();
+		return new Candidates(vehicleIndices, travelTimes_h);
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	public Distances getDistances() {
+		return this.distances;
+	}
+
+	public int getNumberOfVehicles() {
+		return this.vehicles.length;
+	}
+
+	public Vehicle getVehicle(int index) {
+		return this.vehicles[index];
+	}
+
+	Candidates getCandidates(VehicleType vehicleType, Zone destination) {
+		return this.vehicleType2Zone2Candidates.computeIfAbsent(vehicleType, t -> new ConcurrentHashMap<>())
+				.computeIfAbsent(destination, z -> this.createCandidates(vehicleType, z));
+	}
+}
@@ -22,11 +22,17 @@ package se.vti.certain.spatial;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -39,16 +45,112 @@ import se.vti.certain.datastructures.VehicleType;
 import se.vti.utils.misc.Tuple;
 
 /**
+ * Lookups (connects, computeDistance_km, computeTravelTime_h) read from dense
+ * zone-indexed tables that are built on first use and discarded by add, set and
+ * symmetrize. Changes made through getZone2Zone2Distances() or to returned
+ * DistanceValue lists are not tracked.
  * 
  * @author GunnarF
  *
  */
 public class Distances {
 
+	// -------------------- INNER CLASS --------------------
+
+	/**
+	 * Row-major zone x zone tables. Entries of undefined ODs are NaN. An entry
+	 * holds the sum over the distance values of its OD, in list order.
+	 */
+	private static class Tables {
+
+		private final Map<Zone, Integer> zone2Index;
+
+		private final List<Zone> zones;
+
+		private final BitSet defined;
+
+		private final double[] distances_km;
+
+		// Minimum travel times per max speed, the only vehicle type property they
+		// depend on. Not keyed by vehicle type, which is equal by id and hence also
+		// equal for variants with a modified max speed.
+		private final ConcurrentMap<Double, double[]> maxSpeed2TravelTimes_h = new ConcurrentHashMap<>();
+
+		private final List<DistanceValue>[] distanceValues;
+
+		@SuppressWarnings("unchecked")
+		private Tables(Map<Zone, Map<Zone, List<DistanceValue>>> zone2Zone2Distances) {
+			final Set<Zone> allZones = new LinkedHashSet<>();
+			for (var entry : zone2Zone2Distances.entrySet()) {
+				allZones.add(entry.getKey());
+				allZones.addAll(entry.getValue().keySet());
+			}
+			this.zones = new ArrayList<>(allZones);
+			this.zone2Index = new HashMap<>(2 * this.zones.size());
+			for (int i = 0; i < this.zones.size(); i++) {
+				this.zone2Index.put(this.zones.get(i), i);
+			}
+
+			final int zoneCnt = this.zones.size();
+			this.defined = new BitSet(zoneCnt * zoneCnt);
+			this.distanceValues = new List[zoneCnt * zoneCnt];
+			for (var entry1 : zone2Zone2Distances.entrySet()) {
+				final int from = this.zone2Index.get(entry1.getKey());
+				for (var entry2 : entry1.getValue().entrySet()) {
+					if (entry2.getValue() != null) {
+						final int od = from * zoneCnt + this.zone2Index.get(entry2.getKey());
+						this.defined.set(od);
+						this.distanceValues[od] = entry2.getValue();
+					}
+				}
+			}
+
+			this.distances_km = this.createTable(dv -> dv.getDistance_km());
+		}
+
+		private double[] createTable(ToDoubleFunction<DistanceValue> value) {
+			final int zoneCnt = this.zones.size();
+			final double[] result = new double[zoneCnt * zoneCnt];
+			IntStream.range(0, zoneCnt).parallel().forEach(from -> {
+				for (int od = from * zoneCnt; od < (from + 1) * zoneCnt; od++) {
+					result[od] = (this.defined.get(od)
+							? this.distanceValues[od].stream().mapToDouble(value).sum()
+							: Double.NaN);
+				}
+			});
+			return result;
+		}
+
+		private double[] getTravelTimes_h(VehicleType vehicleType) {
+			return this.maxSpeed2TravelTimes_h.computeIfAbsent(vehicleType.getMaxSpeed_km_h(),
+					maxSpeed_km_h -> this.createTable(dv -> dv.getMinTravelTime_h(vehicleType)));
+		}
+
+		private int od(Zone from, Zone to) {
+			final Integer fromIndex = this.zone2Index.get(from);
+			final Integer toIndex = this.zone2Index.get(to);
+			if ((fromIndex == null) || (toIndex == null)) {
+				return -1;
+			}
+			final int od = fromIndex * this.zones.size() + toIndex;
+			return (this.defined.get(od) ? od : -1);
+		}
+
+		private int definedOD(Zone from, Zone to) {
+			final int od = this.od(from, to);
+			if (od < 0) {
+				throw new RuntimeException("No distances from zone " + from.getId() + " to zone " + to.getId() + ".");
+			}
+			return od;
+		}
+	}
+
 	// -------------------- MEMBERS --------------------
 
 	private final Map<Zone, Map<Zone, List<DistanceValue>>> zone2Zone2Distances;
 
+	private volatile Tables tables = null;
+
 	// -------------------- JSON --------------------
 
 	static class Raw {
@@ -81,6 +183,22 @@ public class Distances {
 		this.zone2Zone2Distances = new LinkedHashMap<>();
 	}
 
+	// -------------------- INTERNALS --------------------
+
+	private Tables getTables() {
+		Tables result = this.tables;
+		if (result == null) {
+			synchronized (this) {
+				result = this.tables;
+				if (result == null) {
+					result = new Tables(this.zone2Zone2Distances);
+					this.tables = result;
+				}
+			}
+		}
+		return result;
+	}
+
 	// -------------------- IMPLEMENTATION --------------------
 
 	@JsonProperty("zone2Zone2Distances")
@@ -115,10 +233,11 @@ public class Distances {
 	}
 
 	public boolean connects(Zone one, Zone two) {
-		return ((this.getDistances(one, two) != null) && (this.getDistances(two, one) != null));
+		final Tables tables = this.getTables();
+		return ((tables.od(one, two) >= 0) && (tables.od(two, one) >= 0));
 	}
 
-	public void symmetrize() {
+	public synchronized void symmetrize() {
 		Set<Tuple<Zone, Zone>> wellDefinedODs = new LinkedHashSet<>();
 		for (var entry1 : this.zone2Zone2Distances.entrySet()) {
 			var from = entry1.getKey();
@@ -135,26 +254,30 @@ public class Distances {
 				this.set(inverseOrigin, inverseDestination, this.getDistances(od.getA(), od.getB()));
 			}
 		}
+		this.tables = null;
 	}
 
-	public Distances add(Zone from, Zone to, DistanceValue distanceValue) {
+	public synchronized Distances add(Zone from, Zone to, DistanceValue distanceValue) {
+		this.tables = null;
 		this.zone2Zone2Distances.computeIfAbsent(from, z -> new LinkedHashMap<>())
 				.computeIfAbsent(to, z -> new ArrayList<>()).add(distanceValue);
 		return this;
 	}
 
-	public Distances set(Zone from, Zone to, List<DistanceValue> distanceValues) {
+	public synchronized Distances set(Zone from, Zone to, List<DistanceValue> distanceValues) {
+		this.tables = null;
 		this.zone2Zone2Distances.computeIfAbsent(from, z -> new LinkedHashMap<>()).put(to, distanceValues);
 		return this;
 	}
 
 	public double computeDistance_km(Zone from, Zone to) {
-		return this.zone2Zone2Distances.get(from).get(to).stream().mapToDouble(dv -> dv.getDistance_km()).sum();
+		final Tables tables = this.getTables();
+		return tables.distances_km[tables.definedOD(from, to)];
 	}
 
 	public double computeTravelTime_h(Zone from, Zone to, VehicleType vehicleType) {
-		return this.zone2Zone2Distances.get(from).get(to).stream().mapToDouble(dv -> dv.getMinTravelTime_h(vehicleType))
-				.sum();
+		final Tables tables = this.getTables();
+		return tables.getTravelTimes_h(vehicleType)[tables.definedOD(from, to)];
 	}
 
 	public double computeTravelTimeFromStation_h(Vehicle vehicle, Zone destination) {
@@ -0,0 +1,65 @@
+/**
+ * se.vti.certain
+ * 
+ * Copyright (C) 2025 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.certain.spatial;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import se.vti.certain.analysis.modifiers.VehicleTypeModifier;
+import se.vti.certain.datastructures.Station;
+import se.vti.certain.datastructures.Vehicle;
+import se.vti.certain.datastructures.VehicleType;
+
+/**
+ * @author GunnarF
+ */
+class DistancesTest {
+
+    @Test
+    void testSpeedModifiedVariantChangesTravelTimes() {
+        Zone from = new Zone("from");
+        Zone to = new Zone("to");
+        Distances distances = new Distances().add(from, to, new DistanceValue(new DistanceType("road", 100.0), 60.0));
+
+        VehicleType reference = new VehicleType("ambulance", 50.0, 0.2, 50.0, 1.0, 80.0);
+        Map<String, VehicleType> id2VehicleType = new LinkedHashMap<>();
+        id2VehicleType.put(reference.getId(), reference);
+        Map<String, Vehicle> id2Vehicle = new LinkedHashMap<>();
+        id2Vehicle.put("v1", new Vehicle("v1", reference, new Station("station", from)));
+
+        Vehicle slowVehicle = new VehicleTypeModifier(id2VehicleType) {
+            @Override
+            public double computeMaxSpeed_km_h(VehicleType vehicleType) {
+                return 0.5 * vehicleType.getMaxSpeed_km_h();
+            }
+        }.createScenarioVehicles(id2Vehicle).get("v1");
+        assertEquals(reference, slowVehicle.getVehicleType()); // same id
+
+        // Both variants share one Distances instance, as in ScenarioSweepRunner.
+        assertEquals(0.75, distances.computeTravelTime_h(from, to, reference), 1e-12);
+        assertEquals(1.5, distances.computeTravelTime_h(from, to, slowVehicle.getVehicleType()), 1e-12);
+        assertEquals(1.5, distances.computeTravelTimeFromStation_h(slowVehicle, to), 1e-12);
+        assertEquals(0.75, distances.computeTravelTime_h(from, to, reference), 1e-12);
+    }
+}
@@ -55,6 +55,20 @@ public class SamgodsConfigGroup extends ReflectiveConfigGroup {
 
 	//
 
+	private Double choiceReuseRelativeCostThreshold = null;
+
+	@StringGetter("choiceReuseRelativeCostThreshold")
+	public Double getChoiceReuseRelativeCostThreshold() {
+		return this.choiceReuseRelativeCostThreshold;
+	}
+
+	@StringSetter("choiceReuseRelativeCostThreshold")
+	public void setChoiceReuseRelativeCostThreshold(Double choiceReuseRelativeCostThreshold) {
+		this.choiceReuseRelativeCostThreshold = choiceReuseRelativeCostThreshold;
+	}
+
+	//
+
 	private String ascSourceFileName = null;
 
 	@StringGetter("ascSourceFileName")
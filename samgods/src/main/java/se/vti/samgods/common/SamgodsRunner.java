@@ -34,6 +34,10 @@ import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
 
@@ -67,6 +71,7 @@ import se.vti.samgods.logistics.choice.ChainAndShipmentSize;
 import se.vti.samgods.logistics.choice.ChainAndShipmentSizeUtilityFunction;
 import se.vti.samgods.logistics.choice.ChoiceJob;
 import se.vti.samgods.logistics.choice.ChoiceJobProcessor;
+import se.vti.samgods.logistics.choice.ChoiceOutcomeMemory;
 import se.vti.samgods.logistics.choice.LogisticChoiceDataProvider;
 import se.vti.samgods.logistics.choice.MonetaryChainAndShipmentSizeUtilityFunction;
 import se.vti.samgods.logistics.costs.NonTransportCostModel;
@@ -283,11 +288,32 @@ public class SamgodsRunner {
 	// -------------------- LOAD TRANSPORT DEMAND --------------------
 
 	public SamgodsRunner loadTransportDemand(String demandFilePrefix, String demandFileSuffix) {
-		this.transportDemand = new TransportDemandAndChains();
-		for (Commodity commodity : this.consideredCommodities) {
-			new ChainChoiReader(commodity, this.transportDemand, this.vehicles)
-					.setSamplingRate(this.samplingRate, new Random(4711))
-					.parse(demandFilePrefix + commodity.twoDigitCode() + demandFileSuffix);
+		final int threadCnt = Math.min(Math.min(this.maxThreads, Runtime.getRuntime().availableProcessors()),
+				this.consideredCommodities.size());
+		log.info("Loading transport demand with " + threadCnt + " threads.");
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCnt));
+		try {
+			// One reader and one private demand instance per commodity file.
+			final List<Future<TransportDemandAndChains>> futures = new ArrayList<>(
+					this.consideredCommodities.size());
+			for (Commodity commodity : this.consideredCommodities) {
+				futures.add(executor.submit(() -> {
+					final TransportDemandAndChains commodityDemand = new TransportDemandAndChains();
+					new ChainChoiReader(commodity, commodityDemand, this.vehicles)
+							.setSamplingRate(this.samplingRate, new Random(4711))
+							.parse(demandFilePrefix + commodity.twoDigitCode() + demandFileSuffix);
+					return commodityDemand;
+				}));
+			}
+			// Merge in commodity order, as if the files had been read sequentially.
+			this.transportDemand = new TransportDemandAndChains();
+			for (Future<TransportDemandAndChains> future : futures) {
+				this.transportDemand.addAll(future.get());
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
 		}
 		return this;
 	}
@@ -518,6 +544,16 @@ public class SamgodsRunner {
 			this.fleetCalibrator = null;
 		}
 
+		final ChoiceOutcomeMemory choiceOutcomeMemory;
+		if (this.config.getChoiceReuseRelativeCostThreshold() != null) {
+			choiceOutcomeMemory = new ChoiceOutcomeMemory(this.config.getChoiceReuseRelativeCostThreshold());
+			if (this.fleetCalibrator != null) {
+				log.warn("ASC calibration changes the choices in every iteration, so no choices will be reused.");
+			}
+		} else {
+			choiceOutcomeMemory = null;
+		}
+
 //		final Set<ConsolidationUnit> allConsolidationUnits = new LinkedHashSet<>();
 //		for (SamgodsConstants.Commodity commodity : this.consideredCommodities) {
 //			log.info(commodity + ": Collecting consolidation units.");
@@ -557,7 +593,7 @@ public class SamgodsRunner {
 								this.ascDataProvider.getConcurrentRailCommodity2ASC());
 						final ChoiceJobProcessor choiceSimulator = new ChoiceJobProcessor(
 								logisticChoiceDataProvider.createLogisticChoiceData(), nonTransportCostModel,
-								utilityFunction, jobQueue, allChoices);
+								utilityFunction, jobQueue, allChoices).setChoiceOutcomeMemory(choiceOutcomeMemory);
 						final Thread choiceThread = new Thread(choiceSimulator);
 						choiceThreads.add(choiceThread);
 						choiceThread.start();
@@ -586,6 +622,11 @@ public class SamgodsRunner {
 					for (Thread choiceThread : choiceThreads) {
 						choiceThread.join();
 					}
+					if (choiceOutcomeMemory != null) {
+						log.info("Reused choices of " + choiceOutcomeMemory.getReusedCnt() + " and re-simulated choices of "
+								+ choiceOutcomeMemory.getRecomputedCnt() + " commodity/OD pairs.");
+						choiceOutcomeMemory.resetCounts();
+					}
 
 				} catch (InterruptedException e) {
 					throw new RuntimeException(e);
@@ -645,6 +686,10 @@ public class SamgodsRunner {
 						transportWorkMonitor.getMode2lastRealizedDomesticGTonKm(),
 						transportWorkMonitor.getCommodity2lastRealizedRailDomesticGTonKm(), iteration);
 				this.ascDataProvider = this.fleetCalibrator.createASCDataProvider();
+				if (choiceOutcomeMemory != null) {
+					// ASCs enter the utilities but not the chain costs, so all choices are stale.
+					choiceOutcomeMemory.clear();
+				}
 			}
 
 //			NetworkAndFleetDataProvider.updateASCs(this.ascs);
@@ -652,7 +697,12 @@ public class SamgodsRunner {
 			if ((iteration == this.config.getMaxIterations() - 1)) {
 
 				if (this.networkFlowsFileName != null) {
-					new NetworkFlows().add(consolidationUnit2assignment).writeToFile(this.networkFlowsFileName);
+					final NetworkFlows networkFlows = new NetworkFlows(this.network).add(consolidationUnit2assignment);
+					if (this.networkFlowsFileName.toLowerCase().endsWith(".csv")) {
+						networkFlows.writeToCsvFile(this.networkFlowsFileName);
+					} else {
+						networkFlows.writeToFile(this.networkFlowsFileName);
+					}
 				}
 
 				new HalfLoopAssignment2NTMCalcWriter(
@@ -21,52 +21,190 @@ package se.vti.samgods.external.gis;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 import se.vti.samgods.common.SamgodsConstants.Commodity;
 import se.vti.samgods.transportation.consolidation.ConsolidationUnit;
 import se.vti.samgods.transportation.consolidation.HalfLoopConsolidationJobProcessor.FleetAssignment;
 
 /**
+ * Annual flows per link and commodity, accumulated in a (link index x
+ * commodity) primitive array. Links are indexed in the iteration order of the
+ * network's links.
  * 
  * @author GunnarF
  *
  */
 public class NetworkFlows {
 
-	private final Map<Id<Link>, Map<Commodity, Double>> id2commodity2flow_ton = new LinkedHashMap<>();
+	// -------------------- CONSTANTS --------------------
 
-	public NetworkFlows() {
+	private static final Commodity[] commodities = Commodity.values();
+
+	private static final int ASSIGNMENTS_PER_CHUNK = 1024;
+
+	private final List<Id<Link>> linkIds;
+
+	private final Map<Id<Link>, Integer> linkId2index;
+
+	// -------------------- MEMBERS --------------------
+
+	// flow of link i and commodity c is flows_ton[i * commodities.length + c]
+	private final double[] flows_ton;
+
+	// same layout as flows_ton; true if the commodity has been assigned to the link
+	private final boolean[] used;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public NetworkFlows(Network network) {
+		this.linkIds = new ArrayList<>(network.getLinks().keySet());
+		this.linkId2index = new LinkedHashMap<>(2 * this.linkIds.size());
+		for (int i = 0; i < this.linkIds.size(); i++) {
+			this.linkId2index.put(this.linkIds.get(i), i);
+		}
+		this.flows_ton = new double[this.linkIds.size() * commodities.length];
+		this.used = new boolean[this.linkIds.size() * commodities.length];
 	}
 
+	// -------------------- INTERNALS --------------------
+
+	private void add(ConsolidationUnit consolidationUnit, FleetAssignment fleetAssignment, double[] flows_ton,
+			boolean[] used) {
+		final int c = consolidationUnit.commodity.ordinal();
+		for (Id<Link> linkId : consolidationUnit.getRoute(fleetAssignment.vehicleType)) {
+			final Integer i = this.linkId2index.get(linkId);
+			if (i == null) {
+				throw new RuntimeException("Link " + linkId + " on the route of " + consolidationUnit
+						+ " is not contained in the network of these flows.");
+			}
+			final int j = i * commodities.length + c;
+			flows_ton[j] += fleetAssignment.annualDemand_ton;
+			used[j] = true;
+		}
+	}
+
+	private boolean isUsed(int i) {
+		for (int j = i * commodities.length; j < (i + 1) * commodities.length; j++) {
+			if (this.used[j]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * Splits the assignments into fixed chunks, each of which is accumulated into
+	 * its own partial arrays. The chunks are processed in parallel rounds of one
+	 * chunk per processor, and the partial arrays of a round are added up in chunk
+	 * order before they are reused by the next round. The chunking does not depend
+	 * on the number of processors, so the resulting flows do not either.
+	 */
 	public NetworkFlows add(Map<ConsolidationUnit, FleetAssignment> consolidationUnit2assignment) {
-		for (Map.Entry<ConsolidationUnit, FleetAssignment> entry : consolidationUnit2assignment.entrySet()) {
-			final ConsolidationUnit consolidationUnit = entry.getKey();
-			final FleetAssignment fleetAssignment = entry.getValue();
-			for (Id<Link> linkId : consolidationUnit.getRoute(fleetAssignment.vehicleType)) {
-				this.id2commodity2flow_ton.computeIfAbsent(linkId, id -> new LinkedHashMap<>(Commodity.values().length))
-						.compute(consolidationUnit.commodity, (c, q) -> q == null ? fleetAssignment.annualDemand_ton
-								: q + fleetAssignment.annualDemand_ton);
+		final List<Map.Entry<ConsolidationUnit, FleetAssignment>> entries = new ArrayList<>(
+				consolidationUnit2assignment.entrySet());
+		final int chunkCnt = (entries.size() + ASSIGNMENTS_PER_CHUNK - 1) / ASSIGNMENTS_PER_CHUNK;
+		final int roundSize = Math.max(1, Math.min(chunkCnt, Runtime.getRuntime().availableProcessors()));
+		final double[][] partialFlows_ton = new double[roundSize][];
+		final boolean[][] partialUsed = new boolean[roundSize][];
+		for (int roundStart = 0; roundStart < chunkCnt; roundStart += roundSize) {
+			final int firstChunk = roundStart;
+			final int chunksInRound = Math.min(roundSize, chunkCnt - roundStart);
+			IntStream.range(0, chunksInRound).parallel().forEach(k -> {
+				if (partialFlows_ton[k] == null) {
+					partialFlows_ton[k] = new double[this.flows_ton.length];
+					partialUsed[k] = new boolean[this.used.length];
+				} else {
+					Arrays.fill(partialFlows_ton[k], 0.0);
+					Arrays.fill(partialUsed[k], false);
+				}
+				final int chunk = firstChunk + k;
+				final int end = Math.min(entries.size(), (chunk + 1) * ASSIGNMENTS_PER_CHUNK);
+				for (int e = chunk * ASSIGNMENTS_PER_CHUNK; e < end; e++) {
+					this.add(entries.get(e).getKey(), entries.get(e).getValue(), partialFlows_ton[k], partialUsed[k]);
+				}
+			});
+			for (int k = 0; k < chunksInRound; k++) {
+				for (int j = 0; j < this.flows_ton.length; j++) {
+					this.flows_ton[j] += partialFlows_ton[k][j];
+					this.used[j] |= partialUsed[k][j];
+				}
 			}
 		}
 		return this;
 	}
 
+	public double getFlow_ton(Id<Link> linkId, Commodity commodity) {
+		final Integer i = this.linkId2index.get(linkId);
+		return (i == null ? 0.0 : this.flows_ton[i * commodities.length + commodity.ordinal()]);
+	}
+
+	// -------------------- FILE OUTPUT --------------------
+
+	/**
+	 * Streams {linkId: {commodity: flow_ton, ...}, ...} to file, containing only
+	 * links and commodities with assigned flows.
+	 */
 	public void writeToFile(String fileName) {
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.enable(SerializationFeature.INDENT_OUTPUT);
-		mapper.configure(SerializationFeature.WRITE_NULL_MAP_VALUES, false);
-		try {
-			mapper.writeValue(new File(fileName), this.id2commodity2flow_ton);
+		try (JsonGenerator gen = new JsonFactory().createGenerator(new File(fileName), JsonEncoding.UTF8)) {
+			gen.useDefaultPrettyPrinter();
+			gen.writeStartObject();
+			for (int i = 0; i < this.linkIds.size(); i++) {
+				if (this.isUsed(i)) {
+					gen.writeObjectFieldStart(this.linkIds.get(i).toString());
+					for (Commodity commodity : commodities) {
+						if (this.used[i * commodities.length + commodity.ordinal()]) {
+							gen.writeNumberField(commodity.toString(),
+									this.flows_ton[i * commodities.length + commodity.ordinal()]);
+						}
+					}
+					gen.writeEndObject();
+				}
+			}
+			gen.writeEndObject();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Streams one row per link with assigned flows and one column per commodity.
+	 */
+	public void writeToCsvFile(String fileName) {
+		try (PrintWriter writer = new PrintWriter(fileName)) {
+			final StringBuilder line = new StringBuilder("linkId");
+			for (Commodity commodity : commodities) {
+				line.append(',').append(commodity);
+			}
+			writer.println(line);
+			for (int i = 0; i < this.linkIds.size(); i++) {
+				if (this.isUsed(i)) {
+					line.setLength(0);
+					line.append(this.linkIds.get(i));
+					for (int c = 0; c < commodities.length; c++) {
+						line.append(',').append(this.flows_ton[i * commodities.length + c]);
+					}
+					writer.println(line);
+				}
+			}
 		} catch (IOException e) {
-			throw new RuntimeException();
+			throw new RuntimeException(e);
 		}
 	}
 }
@@ -22,6 +22,7 @@ package se.vti.samgods.logistics;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +31,7 @@ import java.util.Random;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.vehicles.Vehicles;
 
 import se.vti.samgods.common.OD;
@@ -40,6 +42,10 @@ import se.vti.utils.misc.tabularfileparser.AbstractTabularFileHandlerWithHeaderL
 import se.vti.utils.misc.tabularfileparser.TabularFileParser;
 
 /**
+ * Columns are resolved once by index from the header line. Node ids and
+ * reduced chain types are cached per reader, such that concurrently running
+ * readers (one per commodity file, each writing into its own
+ * TransportDemandAndChains) do not contend on shared state.
  * 
  * @author GunnarF
  *
@@ -80,6 +86,21 @@ public class ChainChoiReader extends AbstractTabularFileHandlerWithHeaderLine {
 	private double samplingRate = 1.0;
 	private Random rnd = null;
 
+	private final Map<String, Id<Node>> string2nodeId = new HashMap<>();
+
+	private final Map<String, String> chainType2reducedChainType = new HashMap<>();
+
+	private int keyIndex;
+	private int probIndex;
+	private int annualVolumeIndex;
+	private int nRelationsIndex;
+	private int chainTypeIndex;
+	private int origIndex;
+	private int destIndex;
+	private List<int[]> originIndicesByChainLength;
+	private List<int[]> destinationIndicesByChainLength;
+	private String[] row = null;
+
 	// -------------------- CONSTRUCTION/CONFIGURATION --------------------
 
 	public ChainChoiReader(final SamgodsConstants.Commodity commodity, final TransportDemandAndChains transportDemand,
@@ -129,10 +150,55 @@ public class ChainChoiReader extends AbstractTabularFileHandlerWithHeaderLine {
 		return false;
 	}
 
+	private int[] indices(List<String> labels) {
+		if (labels == null) {
+			return null;
+		}
+		final int[] result = new int[labels.size()];
+		for (int i = 0; i < labels.size(); i++) {
+			final Integer index = this.label2index.get(labels.get(i));
+			if (index == null) {
+				return null; // file does not contain chains of this length
+			}
+			result[i] = index;
+		}
+		return result;
+	}
+
+	private void resolveColumnIndices() {
+		this.keyIndex = this.index(Key);
+		this.probIndex = this.index(Prob);
+		this.annualVolumeIndex = this.index(AnnualVolumeTonnesPerRelation);
+		this.nRelationsIndex = this.index(NRelations);
+		this.chainTypeIndex = this.index(ChainType);
+		this.origIndex = this.index(Orig);
+		this.destIndex = this.index(Dest);
+		this.originIndicesByChainLength = new ArrayList<>(originsColumnsByChainLength.size());
+		this.destinationIndicesByChainLength = new ArrayList<>(destinationColumnsByChainLength.size());
+		for (int length = 0; length < originsColumnsByChainLength.size(); length++) {
+			this.originIndicesByChainLength.add(this.indices(originsColumnsByChainLength.get(length)));
+			this.destinationIndicesByChainLength.add(this.indices(destinationColumnsByChainLength.get(length)));
+		}
+	}
+
+	private Id<Node> nodeId(int column) {
+		return this.string2nodeId.computeIfAbsent(this.row[column], s -> Id.createNodeId(Long.parseLong(s)));
+	}
+
+	private String reducedChainType(String chainType) {
+		return this.chainType2reducedChainType.computeIfAbsent(chainType, t -> {
+			String result = t;
+			for (int i = 1; i < 10; i++) {
+				result = result.replace("" + i, "");
+			}
+			return result;
+		});
+	}
+
 	private Long key = null;
 	private Double singleInstanceVolume_ton_yr = null;
 	private Integer numberOfInstances = null;
-	private Map<OD, Double> od2proba = new LinkedHashMap<>();
+	private final Map<OD, Double> od2proba = new LinkedHashMap<>();
 
 	private void addTmpDataToDemandAndReset() {
 		assert ((this.samplingRate < 1.0)
@@ -145,7 +211,7 @@ public class ChainChoiReader extends AbstractTabularFileHandlerWithHeaderLine {
 		this.key = null;
 		this.singleInstanceVolume_ton_yr = null;
 		this.numberOfInstances = null;
-		this.od2proba = null;
+		this.od2proba.clear();
 	}
 
 	// --------------- IMPLEMENTATION OF TabularFileHandler ---------------
@@ -155,6 +221,16 @@ public class ChainChoiReader extends AbstractTabularFileHandlerWithHeaderLine {
 	@Override
 	public void startDocument() {
 		this.reducedChainTypeWarnCnt = 0;
+		this.originIndicesByChainLength = null;
+		this.destinationIndicesByChainLength = null;
+	}
+
+	@Override
+	public void startDataRow(final String[] row) {
+		if (this.originIndicesByChainLength == null) {
+			this.resolveColumnIndices();
+		}
+		this.row = row;
 	}
 
 	@Override
@@ -166,12 +242,11 @@ public class ChainChoiReader extends AbstractTabularFileHandlerWithHeaderLine {
 
 		// Load chain parameters.
 
-		final long key = Long.parseLong(this.getStringValue(Key));
-		final double proba = this.getDoubleValue(Prob);
-		final double singleInstanceVolume_ton_yr = this.getDoubleValue(AnnualVolumeTonnesPerRelation);
-		final int numberOfInstances = this.getIntValue(NRelations);
-		final OD od = new OD(Id.createNodeId(Long.parseLong(this.getStringValue(Orig))),
-				Id.createNodeId(Long.parseLong(this.getStringValue(Dest))));
+		final long key = Long.parseLong(this.row[this.keyIndex]);
+		final double proba = Double.parseDouble(this.row[this.probIndex]);
+		final double singleInstanceVolume_ton_yr = Double.parseDouble(this.row[this.annualVolumeIndex]);
+		final int numberOfInstances = Integer.parseInt(this.row[this.nRelationsIndex]);
+		final OD od = new OD(this.nodeId(this.origIndex), this.nodeId(this.destIndex));
 
 		// Load OD demand.
 
@@ -186,18 +261,15 @@ public class ChainChoiReader extends AbstractTabularFileHandlerWithHeaderLine {
 			this.key = key;
 			this.singleInstanceVolume_ton_yr = singleInstanceVolume_ton_yr;
 			this.numberOfInstances = numberOfInstances;
-			this.od2proba = new LinkedHashMap<>();
 			this.od2proba.put(od, proba);
 		}
 
 		// Load transport legs.
 
-		String chainType = this.getStringValue(ChainType);
+		final String chainType;
 		{
-			final String oldChainType = chainType;
-			for (int i = 1; i < 10; i++) {
-				chainType = chainType.replace("" + i, "");
-			}
+			final String oldChainType = this.row[this.chainTypeIndex];
+			chainType = this.reducedChainType(oldChainType);
 			if (oldChainType.length() > chainType.length()) {
 				this.reducedChainTypeWarnCnt++;
 				if (this.reducedChainTypeWarnCnt <= 10) {
@@ -209,15 +281,13 @@ public class ChainChoiReader extends AbstractTabularFileHandlerWithHeaderLine {
 			}
 		}
 
-		final List<String> originColumns = originsColumnsByChainLength.get(chainType.length());
-		final List<String> destinationColumns = destinationColumnsByChainLength.get(chainType.length());
+		final int[] originColumns = this.originIndicesByChainLength.get(chainType.length());
+		final int[] destinationColumns = this.destinationIndicesByChainLength.get(chainType.length());
 
 		final List<OD> segmentODs = new ArrayList<>(chainType.length());
 		final List<SamgodsConstants.TransportMode> modes = new ArrayList<>(chainType.length());
 		for (int i = 0; i < chainType.length(); i++) {
-			final long intermedOrigin = Long.parseLong(this.getStringValue(originColumns.get(i)));
-			final long intermedDestination = Long.parseLong(this.getStringValue(destinationColumns.get(i)));
-			segmentODs.add(new OD(Id.createNodeId(intermedOrigin), Id.createNodeId(intermedDestination)));
+			segmentODs.add(new OD(this.nodeId(originColumns[i]), this.nodeId(destinationColumns[i])));
 			modes.add(TransportModes.CODE_2_SAMGODSMODE.get(chainType.charAt(i)));
 		}
 
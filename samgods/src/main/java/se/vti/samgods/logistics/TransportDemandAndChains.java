@@ -56,6 +56,30 @@ public class TransportDemandAndChains {
 				.add(new AnnualShipment(commodity, od, singleInstanceAmount_ton, numberOfInstances));
 	}
 
+	/**
+	 * Appends all content of the other instance, preserving its insertion order.
+	 * Used to merge per-commodity instances that were filled concurrently; adding
+	 * them in commodity order yields the same structure as a sequential load.
+	 */
+	public void addAll(TransportDemandAndChains other) {
+		for (Map.Entry<Commodity, Map<OD, List<TransportChain>>> commodityEntry : other.commodity2od2transportChains
+				.entrySet()) {
+			final Map<OD, List<TransportChain>> od2chains = this.commodity2od2transportChains
+					.computeIfAbsent(commodityEntry.getKey(), c -> new LinkedHashMap<>());
+			for (Map.Entry<OD, List<TransportChain>> odEntry : commodityEntry.getValue().entrySet()) {
+				od2chains.computeIfAbsent(odEntry.getKey(), od -> new LinkedList<>()).addAll(odEntry.getValue());
+			}
+		}
+		for (Map.Entry<Commodity, Map<OD, List<AnnualShipment>>> commodityEntry : other.commodity2od2annualShipments
+				.entrySet()) {
+			final Map<OD, List<AnnualShipment>> od2shipments = this.commodity2od2annualShipments
+					.computeIfAbsent(commodityEntry.getKey(), c -> new LinkedHashMap<>());
+			for (Map.Entry<OD, List<AnnualShipment>> odEntry : commodityEntry.getValue().entrySet()) {
+				od2shipments.computeIfAbsent(odEntry.getKey(), od -> new LinkedList<>()).addAll(odEntry.getValue());
+			}
+		}
+	}
+
 	// -------------------- GETTERS --------------------
 
 	public Map<Commodity, Map<OD, List<TransportChain>>> getCommodity2od2transportChains() {
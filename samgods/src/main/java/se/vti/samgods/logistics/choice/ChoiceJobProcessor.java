@@ -20,10 +20,10 @@
 package se.vti.samgods.logistics.choice;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -63,6 +63,8 @@ public class ChoiceJobProcessor implements Runnable {
 
 	private final BlockingQueue<ChainAndShipmentSize> allChoices;
 
+	private ChoiceOutcomeMemory choiceOutcomeMemory = null;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	public ChoiceJobProcessor(LogisticChoiceData choiceData, NonTransportCostModel nonTransportCostModel,
@@ -75,6 +77,11 @@ public class ChoiceJobProcessor implements Runnable {
 		this.allChoices = allChoices;
 	}
 
+	public ChoiceJobProcessor setChoiceOutcomeMemory(ChoiceOutcomeMemory choiceOutcomeMemory) {
+		this.choiceOutcomeMemory = choiceOutcomeMemory;
+		return this;
+	}
+
 	// -------------------- IMPLEMENTATION OF Runnable --------------------
 
 	@Override
@@ -95,8 +102,28 @@ public class ChoiceJobProcessor implements Runnable {
 	// -------------------- INTERNALS --------------------
 
 	private void process(ChoiceJob job) throws InterruptedException {
-		final Map<TransportChain, DetailedTransportCost> chain2transportUnitCost_1_ton = job.transportChains.stream()
-				.collect(Collectors.toMap(c -> c, c -> this.choiceData.computeChain2transportUnitCost_1_ton(c)));
+		final List<DetailedTransportCost> transportUnitCosts_1_ton = job.transportChains.stream()
+				.map(c -> this.choiceData.computeChain2transportUnitCost_1_ton(c)).toList();
+		if (this.choiceOutcomeMemory != null) {
+			final List<ChainAndShipmentSize> previousChoices = this.choiceOutcomeMemory.getReusableChoices(job,
+					transportUnitCosts_1_ton);
+			if (previousChoices != null) {
+				for (ChainAndShipmentSize choice : previousChoices) {
+					this.allChoices.put(choice);
+				}
+				/*
+				 * No put(..) here: Overwriting the reference costs of a reused OD would let
+				 * a sequence of small changes accumulate without ever triggering a
+				 * re-simulation.
+				 */
+				return;
+			}
+		}
+		final List<ChainAndShipmentSize> choices = new ArrayList<>();
+		final Map<TransportChain, DetailedTransportCost> chain2transportUnitCost_1_ton = new LinkedHashMap<>();
+		for (int i = 0; i < job.transportChains.size(); i++) {
+			chain2transportUnitCost_1_ton.put(job.transportChains.get(i), transportUnitCosts_1_ton.get(i));
+		}
 		if (chain2transportUnitCost_1_ton.size() > 0) {
 			for (AnnualShipment annualShipment : job.annualShipments) {
 				List<ChainAndShipmentSize> alternatives = new ArrayList<>();
@@ -127,10 +154,15 @@ public class ChoiceJobProcessor implements Runnable {
 				for (int instance = 0; instance < annualShipment.getNumberOfInstances(); instance++) {
 					final ChainAndShipmentSize choice = this.choiceModel.choose(alternatives, a -> a.singleInstanceUtility);
 					assert (choice != null);
-					this.allChoices.put(choice.createSingleInstance());
+					final ChainAndShipmentSize singleInstanceChoice = choice.createSingleInstance();
+					choices.add(singleInstanceChoice);
+					this.allChoices.put(singleInstanceChoice);
 				}
 
 			}
+			if (this.choiceOutcomeMemory != null) {
+				this.choiceOutcomeMemory.put(job, transportUnitCosts_1_ton, choices);
+			}
 		} else {
 			log.warn("Cannot compute choices for choice job: " + job);
 		}
@@ -0,0 +1,159 @@
+/**
+ * se.vti.samgods.logistics.choice
+ *
+ * Copyright (C) 2024 by Gunnar Flötteröd (VTI, LiU).
+ *
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.samgods.logistics.choice;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import se.vti.samgods.common.OD;
+import se.vti.samgods.common.SamgodsConstants.Commodity;
+import se.vti.samgods.logistics.TransportChain;
+import se.vti.samgods.transportation.costs.DetailedTransportCost;
+
+/**
+ * Remembers, per commodity and OD, the chain unit costs that entered the last
+ * choice simulation together with the resulting choices. If in a later
+ * iteration no utility-relevant chain cost (monetary cost, duration) has
+ * changed by more than the relative threshold, the previous choices are reused
+ * instead of being re-simulated.
+ *
+ * The choices also depend on the ASCs, which are not part of the chain costs.
+ * The memory hence has to be cleared whenever the ASCs change. With ASC
+ * calibration, this happens after every iteration, so that no choices are
+ * reused.
+ *
+ * Thread-safe; one instance is shared by all ChoiceJobProcessors.
+ *
+ * @author GunnarF
+ *
+ */
+public class ChoiceOutcomeMemory {
+
+	// -------------------- INNER CLASS --------------------
+
+	private static class Entry {
+
+		private final List<TransportChain> transportChains;
+		private final double[] costs;
+		private final List<ChainAndShipmentSize> choices;
+
+		private Entry(List<TransportChain> transportChains, double[] costs, List<ChainAndShipmentSize> choices) {
+			this.transportChains = transportChains;
+			this.costs = costs;
+			this.choices = choices;
+		}
+	}
+
+	// -------------------- CONSTANTS --------------------
+
+	private final double relativeCostThreshold;
+
+	private final ConcurrentMap<Commodity, ConcurrentMap<OD, Entry>> commodity2od2entry = new ConcurrentHashMap<>();
+
+	// -------------------- MEMBERS --------------------
+
+	private final AtomicLong reusedCnt = new AtomicLong(0);
+
+	private final AtomicLong recomputedCnt = new AtomicLong(0);
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public ChoiceOutcomeMemory(double relativeCostThreshold) {
+		this.relativeCostThreshold = relativeCostThreshold;
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private static double[] createCosts(List<TransportChain> transportChains,
+			List<DetailedTransportCost> transportUnitCosts_1_ton) {
+		final double[] result = new double[2 * transportChains.size()];
+		for (int i = 0; i < transportChains.size(); i++) {
+			final DetailedTransportCost cost = transportUnitCosts_1_ton.get(i);
+			result[2 * i] = cost.monetaryCost;
+			result[2 * i + 1] = cost.duration_h;
+		}
+		return result;
+	}
+
+	private boolean isUnchanged(double[] previousCosts, double[] currentCosts) {
+		if (previousCosts.length != currentCosts.length) {
+			return false;
+		}
+		for (int i = 0; i < currentCosts.length; i++) {
+			final double absDiff = Math.abs(currentCosts[i] - previousCosts[i]);
+			if (absDiff > this.relativeCostThreshold * Math.max(Math.abs(previousCosts[i]), 1e-8)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * Returns the previously simulated choices for this job if all chain unit
+	 * costs (given in the order of job.transportChains) are unchanged within the
+	 * threshold, otherwise null.
+	 */
+	public List<ChainAndShipmentSize> getReusableChoices(ChoiceJob job,
+			List<DetailedTransportCost> transportUnitCosts_1_ton) {
+		final ConcurrentMap<OD, Entry> od2entry = this.commodity2od2entry.get(job.commodity);
+		final Entry entry = (od2entry != null ? od2entry.get(job.od) : null);
+		if ((entry != null) && (entry.transportChains == job.transportChains)
+				&& this.isUnchanged(entry.costs, createCosts(job.transportChains, transportUnitCosts_1_ton))) {
+			this.reusedCnt.incrementAndGet();
+			return entry.choices;
+		} else {
+			this.recomputedCnt.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Replaces the chain unit costs and choices remembered for the job's
+	 * commodity and OD.
+	 */
+	public void put(ChoiceJob job, List<DetailedTransportCost> transportUnitCosts_1_ton,
+			List<ChainAndShipmentSize> choices) {
+		this.commodity2od2entry.computeIfAbsent(job.commodity, c -> new ConcurrentHashMap<>()).put(job.od,
+				new Entry(job.transportChains, createCosts(job.transportChains, transportUnitCosts_1_ton), choices));
+	}
+
+	public void clear() {
+		this.commodity2od2entry.clear();
+	}
+
+	// -------------------- STATISTICS --------------------
+
+	public long getReusedCnt() {
+		return this.reusedCnt.get();
+	}
+
+	public long getRecomputedCnt() {
+		return this.recomputedCnt.get();
+	}
+
+	public void resetCounts() {
+		this.reusedCnt.set(0);
+		this.recomputedCnt.set(0);
+	}
+}
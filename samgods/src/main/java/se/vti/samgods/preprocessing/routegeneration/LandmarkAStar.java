@@ -0,0 +1,157 @@
+/**
+ * se.vti.samgods.preprocessing.routegeneration
+ *
+ * Copyright (C) 2024 by Gunnar Flötteröd (VTI, LiU).
+ *
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.samgods.preprocessing.routegeneration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Lightweight, reusable A* search state on top of shared LandmarkData. Not
+ * thread-safe; meant to be held by a single routing thread and reused for all
+ * vehicle types on the same network.
+ *
+ * Search arrays are invalidated by incrementing a search counter instead of
+ * being refilled, so each query only touches the nodes it actually visits.
+ *
+ * @author GunnarF
+ *
+ */
+class LandmarkAStar {
+
+	// -------------------- CONSTANTS --------------------
+
+	private final LandmarkData data;
+
+	// -------------------- MEMBERS --------------------
+
+	private final double[] costToNode;
+
+	private final double[] estimatedRemainingCost;
+
+	private final int[] predecessorLink;
+
+	private final int[] visitedInSearch;
+
+	private final boolean[] settled;
+
+	private final LandmarkData.MinHeap heap;
+
+	private int search = 0;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	LandmarkAStar(LandmarkData data) {
+		this.data = data;
+		final int nodeCnt = data.getNodeCnt();
+		this.costToNode = new double[nodeCnt];
+		this.estimatedRemainingCost = new double[nodeCnt];
+		this.predecessorLink = new int[nodeCnt];
+		this.visitedInSearch = new int[nodeCnt];
+		this.settled = new boolean[nodeCnt];
+		this.heap = new LandmarkData.MinHeap(1024);
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private boolean visit(int node, int target) {
+		if (this.visitedInSearch[node] != this.search) {
+			this.visitedInSearch[node] = this.search;
+			this.costToNode[node] = Double.POSITIVE_INFINITY;
+			this.estimatedRemainingCost[node] = this.data.estimateRemainingCost(node, target);
+			this.settled[node] = false;
+		}
+		return Double.isFinite(this.estimatedRemainingCost[node]);
+	}
+
+	// -------------------- IMPLEMENTATION --------------------
+
+	/**
+	 * @param linkCosts link costs indexed as in the underlying LandmarkData; must
+	 *                  not fall below the costs used to compute the landmark
+	 *                  tables. Infinite costs mark unusable links.
+	 *
+	 * @return the link ids of a least cost path, an empty list if from equals to,
+	 *         or null if no path exists.
+	 */
+	List<Id<Link>> computeRoute(Id<Node> fromNodeId, Id<Node> toNodeId, double[] linkCosts) {
+		final Integer from = this.data.getNodeIndex(fromNodeId);
+		final Integer to = this.data.getNodeIndex(toNodeId);
+		if ((from == null) || (to == null)) {
+			return null;
+		}
+		if (from.equals(to)) {
+			return new ArrayList<>(0);
+		}
+
+		if (++this.search == Integer.MAX_VALUE) {
+			Arrays.fill(this.visitedInSearch, 0);
+			this.search = 1;
+		}
+		this.heap.clear();
+
+		if (!this.visit(from, to)) {
+			return null;
+		}
+		this.costToNode[from] = 0.0;
+		this.predecessorLink[from] = -1;
+		this.heap.insert(from, this.estimatedRemainingCost[from]);
+
+		while (!this.heap.isEmpty()) {
+			final int node = this.heap.poll();
+			if (this.settled[node]) {
+				continue; // outdated heap entry
+			}
+			this.settled[node] = true;
+			if (node == to) {
+				final List<Id<Link>> result = new ArrayList<>();
+				for (int link = this.predecessorLink[to]; link >= 0; link = this.predecessorLink[this.data
+						.getLinkFromNode(link)]) {
+					result.add(this.data.getLinkId(link));
+				}
+				Collections.reverse(result);
+				return result;
+			}
+			final double cost = this.costToNode[node];
+			for (int pos = this.data.getFirstOutLinkPosition(node); pos < this.data
+					.getEndOutLinkPosition(node); pos++) {
+				final int link = this.data.getOutLink(pos);
+				final double linkCost = linkCosts[link];
+				if (Double.isFinite(linkCost)) {
+					final int next = this.data.getLinkToNode(link);
+					if (this.visit(next, to) && !this.settled[next]) {
+						final double nextCost = cost + linkCost;
+						if (nextCost < this.costToNode[next]) {
+							this.costToNode[next] = nextCost;
+							this.predecessorLink[next] = link;
+							this.heap.insert(next, nextCost + this.estimatedRemainingCost[next]);
+						}
+					}
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,344 @@
+/**
+ * se.vti.samgods.preprocessing.routegeneration
+ *
+ * Copyright (C) 2024 by Gunnar Flötteröd (VTI, LiU).
+ *
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.samgods.preprocessing.routegeneration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Read-only routing data of one unimodal network, meant to be shared by all
+ * routing threads: the network topology in compressed (forward and backward
+ * star) form and ALT landmark distance tables.
+ *
+ * The landmark distances are computed with link costs that are lower bounds of
+ * the costs of all vehicle types using the network. This keeps the landmark
+ * heuristic admissible and consistent for each of these vehicle types, so that
+ * the tables need to be computed only once per network.
+ *
+ * @author GunnarF
+ *
+ */
+class LandmarkData {
+
+	// -------------------- MEMBERS --------------------
+
+	private final Map<Id<Node>, Integer> nodeId2index;
+
+	private final List<Id<Node>> nodeIds;
+
+	private final List<Id<Link>> linkIds;
+
+	private final int[] linkFromNode;
+
+	private final int[] linkToNode;
+
+	// links leaving node n are outLinks[firstOutLink[n]..firstOutLink[n+1]-1]
+	private final int[] firstOutLink;
+	private final int[] outLinks;
+
+	// links entering node n are inLinks[firstInLink[n]..firstInLink[n+1]-1]
+	private final int[] firstInLink;
+	private final int[] inLinks;
+
+	private int landmarkCnt;
+
+	// distance from landmark l to node n is fromLandmark[l * nodeCnt + n]
+	private double[] fromLandmark;
+
+	// distance from node n to landmark l is toLandmark[l * nodeCnt + n]
+	private double[] toLandmark;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	private LandmarkData(Network network) {
+		this.nodeIds = new ArrayList<>(network.getNodes().keySet());
+		this.nodeId2index = new HashMap<>(2 * this.nodeIds.size());
+		for (int i = 0; i < this.nodeIds.size(); i++) {
+			this.nodeId2index.put(this.nodeIds.get(i), i);
+		}
+
+		final int nodeCnt = this.nodeIds.size();
+		final List<Link> links = new ArrayList<>(network.getLinks().values());
+		this.linkIds = new ArrayList<>(links.size());
+		this.linkFromNode = new int[links.size()];
+		this.linkToNode = new int[links.size()];
+		this.firstOutLink = new int[nodeCnt + 1];
+		this.firstInLink = new int[nodeCnt + 1];
+		for (int l = 0; l < links.size(); l++) {
+			final Link link = links.get(l);
+			this.linkIds.add(link.getId());
+			this.linkFromNode[l] = this.nodeId2index.get(link.getFromNode().getId());
+			this.linkToNode[l] = this.nodeId2index.get(link.getToNode().getId());
+			this.firstOutLink[this.linkFromNode[l] + 1]++;
+			this.firstInLink[this.linkToNode[l] + 1]++;
+		}
+		for (int n = 0; n < nodeCnt; n++) {
+			this.firstOutLink[n + 1] += this.firstOutLink[n];
+			this.firstInLink[n + 1] += this.firstInLink[n];
+		}
+		this.outLinks = new int[links.size()];
+		this.inLinks = new int[links.size()];
+		final int[] outFill = Arrays.copyOf(this.firstOutLink, nodeCnt);
+		final int[] inFill = Arrays.copyOf(this.firstInLink, nodeCnt);
+		for (int l = 0; l < links.size(); l++) {
+			this.outLinks[outFill[this.linkFromNode[l]]++] = l;
+			this.inLinks[inFill[this.linkToNode[l]]++] = l;
+		}
+	}
+
+	/**
+	 * @param lowerBoundLinkCost must not exceed the link cost of any vehicle type
+	 *                           that is routed with the resulting tables; may be
+	 *                           infinite for links that no such vehicle type can
+	 *                           use.
+	 */
+	static LandmarkData create(Network network, ToDoubleFunction<Link> lowerBoundLinkCost, int landmarkCnt) {
+		final LandmarkData result = new LandmarkData(network);
+		result.computeLandmarkTables(result.createLinkCosts(network.getLinks(), lowerBoundLinkCost), landmarkCnt);
+		return result;
+	}
+
+	// -------------------- LINK COSTS --------------------
+
+	/**
+	 * @param links must contain all links of the network from which this instance
+	 *              was created, but may contain more.
+	 */
+	double[] createLinkCosts(Map<Id<Link>, ? extends Link> links, ToDoubleFunction<Link> linkCost) {
+		final double[] result = new double[this.linkIds.size()];
+		for (int l = 0; l < result.length; l++) {
+			result[l] = linkCost.applyAsDouble(links.get(this.linkIds.get(l)));
+		}
+		return result;
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private void dijkstra(int source, double[] linkCosts, boolean forward, double[] dist, int offset) {
+		final int nodeCnt = this.getNodeCnt();
+		Arrays.fill(dist, offset, offset + nodeCnt, Double.POSITIVE_INFINITY);
+		final MinHeap heap = new MinHeap(nodeCnt);
+		dist[offset + source] = 0.0;
+		heap.insert(source, 0.0);
+		while (!heap.isEmpty()) {
+			final double d = heap.peekKey();
+			final int node = heap.poll();
+			if (d > dist[offset + node]) {
+				continue; // outdated heap entry
+			}
+			final int[] first = (forward ? this.firstOutLink : this.firstInLink);
+			final int[] adjacentLinks = (forward ? this.outLinks : this.inLinks);
+			for (int i = first[node]; i < first[node + 1]; i++) {
+				final int link = adjacentLinks[i];
+				final double linkCost = linkCosts[link];
+				if (Double.isFinite(linkCost)) {
+					final int next = (forward ? this.linkToNode[link] : this.linkFromNode[link]);
+					final double nextDist = d + linkCost;
+					if (nextDist < dist[offset + next]) {
+						dist[offset + next] = nextDist;
+						heap.insert(next, nextDist);
+					}
+				}
+			}
+		}
+	}
+
+	private void computeLandmarkTables(double[] linkCosts, int maxLandmarkCnt) {
+		final int nodeCnt = this.getNodeCnt();
+		this.landmarkCnt = Math.min(maxLandmarkCnt, nodeCnt);
+		this.fromLandmark = new double[this.landmarkCnt * nodeCnt];
+		this.toLandmark = new double[this.landmarkCnt * nodeCnt];
+
+		/*
+		 * Farthest landmark selection: Each new landmark is the node that maximizes
+		 * the minimal (reachable) distance to all previously selected landmarks.
+		 */
+		final double[] minDistToLandmarks = new double[nodeCnt];
+		Arrays.fill(minDistToLandmarks, Double.POSITIVE_INFINITY);
+		int landmark = 0;
+		for (int l = 0; l < this.landmarkCnt; l++) {
+			final int offset = l * nodeCnt;
+			this.dijkstra(landmark, linkCosts, true, this.fromLandmark, offset);
+			this.dijkstra(landmark, linkCosts, false, this.toLandmark, offset);
+			int nextLandmark = -1;
+			double maxMinDist = Double.NEGATIVE_INFINITY;
+			for (int n = 0; n < nodeCnt; n++) {
+				final double dist = this.fromLandmark[offset + n];
+				if (Double.isFinite(dist)) {
+					minDistToLandmarks[n] = Math.min(minDistToLandmarks[n], dist);
+				}
+				// Unreached nodes (infinite distance) are preferred, covering other components.
+				if (minDistToLandmarks[n] > maxMinDist) {
+					maxMinDist = minDistToLandmarks[n];
+					nextLandmark = n;
+				}
+			}
+			landmark = nextLandmark;
+		}
+	}
+
+	// -------------------- READ-ONLY ACCESS --------------------
+
+	int getNodeCnt() {
+		return this.nodeIds.size();
+	}
+
+	Integer getNodeIndex(Id<Node> nodeId) {
+		return this.nodeId2index.get(nodeId);
+	}
+
+	Id<Link> getLinkId(int link) {
+		return this.linkIds.get(link);
+	}
+
+	int getLinkFromNode(int link) {
+		return this.linkFromNode[link];
+	}
+
+	int getLinkToNode(int link) {
+		return this.linkToNode[link];
+	}
+
+	int getFirstOutLinkPosition(int node) {
+		return this.firstOutLink[node];
+	}
+
+	int getEndOutLinkPosition(int node) {
+		return this.firstOutLink[node + 1];
+	}
+
+	int getOutLink(int position) {
+		return this.outLinks[position];
+	}
+
+	/**
+	 * ALT lower bound on the cost of traveling from node to target. Infinite if
+	 * the landmark tables prove that target is not reachable from node.
+	 */
+	double estimateRemainingCost(int node, int target) {
+		final int nodeCnt = this.getNodeCnt();
+		double result = 0.0;
+		for (int l = 0; l < this.landmarkCnt; l++) {
+			final int offset = l * nodeCnt;
+
+			// triangle inequality: d(l,target) <= d(l,node) + d(node,target)
+			final double fromLandmarkToNode = this.fromLandmark[offset + node];
+			final double fromLandmarkToTarget = this.fromLandmark[offset + target];
+			if (Double.isFinite(fromLandmarkToNode)) {
+				if (Double.isFinite(fromLandmarkToTarget)) {
+					result = Math.max(result, fromLandmarkToTarget - fromLandmarkToNode);
+				} else {
+					return Double.POSITIVE_INFINITY;
+				}
+			}
+
+			// triangle inequality: d(node,l) <= d(node,target) + d(target,l)
+			final double fromNodeToLandmark = this.toLandmark[offset + node];
+			final double fromTargetToLandmark = this.toLandmark[offset + target];
+			if (Double.isFinite(fromTargetToLandmark)) {
+				if (Double.isFinite(fromNodeToLandmark)) {
+					result = Math.max(result, fromNodeToLandmark - fromTargetToLandmark);
+				} else {
+					return Double.POSITIVE_INFINITY;
+				}
+			}
+		}
+		return result;
+	}
+
+	// -------------------- BINARY MIN HEAP WITH DUPLICATES --------------------
+
+	static class MinHeap {
+
+		private int[] elements;
+		private double[] keys;
+		private int size = 0;
+
+		MinHeap(int initialCapacity) {
+			this.elements = new int[Math.max(1, initialCapacity)];
+			this.keys = new double[Math.max(1, initialCapacity)];
+		}
+
+		void clear() {
+			this.size = 0;
+		}
+
+		boolean isEmpty() {
+			return (this.size == 0);
+		}
+
+		double peekKey() {
+			return this.keys[0];
+		}
+
+		void insert(int element, double key) {
+			if (this.size == this.elements.length) {
+				this.elements = Arrays.copyOf(this.elements, 2 * this.size);
+				this.keys = Arrays.copyOf(this.keys, 2 * this.size);
+			}
+			int pos = this.size++;
+			while (pos > 0) {
+				final int parent = (pos - 1) >>> 1;
+				if (this.keys[parent] <= key) {
+					break;
+				}
+				this.elements[pos] = this.elements[parent];
+				this.keys[pos] = this.keys[parent];
+				pos = parent;
+			}
+			this.elements[pos] = element;
+			this.keys[pos] = key;
+		}
+
+		int poll() {
+			final int result = this.elements[0];
+			final int lastElement = this.elements[--this.size];
+			final double lastKey = this.keys[this.size];
+			int pos = 0;
+			while (true) {
+				int child = 2 * pos + 1;
+				if (child >= this.size) {
+					break;
+				}
+				if ((child + 1 < this.size) && (this.keys[child + 1] < this.keys[child])) {
+					child++;
+				}
+				if (lastKey <= this.keys[child]) {
+					break;
+				}
+				this.elements[pos] = this.elements[child];
+				this.keys[pos] = this.keys[child];
+				pos = child;
+			}
+			this.elements[pos] = lastElement;
+			this.keys[pos] = lastKey;
+			return result;
+		}
+	}
+}
@@ -22,32 +22,33 @@ package se.vti.samgods.preprocessing.routegeneration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.logging.log4j.core.config.Configurator;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
-import org.matsim.core.router.AStarLandmarksFactory;
-import org.matsim.core.router.Dijkstra;
-import org.matsim.core.router.util.LeastCostPathCalculator;
-import org.matsim.core.router.util.LeastCostPathCalculator.Path;
 import org.matsim.core.router.util.TravelDisutility;
-import org.matsim.core.router.util.TravelTime;
 import org.matsim.vehicles.VehicleType;
 
 import se.vti.samgods.common.NetworkAndFleetData;
 import se.vti.samgods.common.NetworkAndFleetDataProvider;
+import se.vti.samgods.common.SamgodsConstants.TransportMode;
 import se.vti.samgods.transportation.consolidation.ConsolidationUnit;
+import se.vti.samgods.transportation.fleet.SamgodsVehicleAttributes;
 
 /**
  * 
@@ -60,47 +61,118 @@ public class PathBasedRouter {
 
 	private static final Logger log = LogManager.getLogger(PathBasedRouter.class);
 
-	private long lastUpdate_ms = System.currentTimeMillis();
+	private final AtomicLong lastUpdate_ms = new AtomicLong(System.currentTimeMillis());
 
-	private Set<Runnable> recentlyActiveThreads = new LinkedHashSet<>();
+	private final Set<Runnable> recentlyActiveThreads = ConcurrentHashMap.newKeySet();
 
-	private long foundRoutes = 0;
-	private long failedRoutesNoOD = 0;
-	private long failedRoutesNoConnection = 0;
-	private long failedRoutesNoRouter = 0;
+	private final LongAdder foundRoutes = new LongAdder();
+	private final LongAdder failedRoutesNoOD = new LongAdder();
+	private final LongAdder failedRoutesNoConnection = new LongAdder();
+	private final LongAdder failedRoutesNoRouter = new LongAdder();
 
 	private void msgOrNot() {
-		if (System.currentTimeMillis() - this.lastUpdate_ms > 500) {
-			log.info("found " + this.foundRoutes + ", failed: " + this.failedRoutesNoOD + " (no OD), "
-					+ this.failedRoutesNoConnection + " (no connection), " + this.failedRoutesNoRouter + " (no router)"
-					+ ", active threads: " + this.recentlyActiveThreads.size());
-			this.lastUpdate_ms = System.currentTimeMillis();
+		final long lastUpdate_ms = this.lastUpdate_ms.get();
+		final long now_ms = System.currentTimeMillis();
+		// Only the thread that wins the update writes the message.
+		if ((now_ms - lastUpdate_ms > 500) && this.lastUpdate_ms.compareAndSet(lastUpdate_ms, now_ms)) {
+			log.info("found " + this.foundRoutes.sum() + ", failed: " + this.failedRoutesNoOD.sum() + " (no OD), "
+					+ this.failedRoutesNoConnection.sum() + " (no connection), " + this.failedRoutesNoRouter.sum()
+					+ " (no router)" + ", active threads: " + this.recentlyActiveThreads.size());
 			this.recentlyActiveThreads.clear();
 		}
 	}
 
-	private synchronized void registerFoundRoute(Runnable thread) {
-		this.msgOrNot();
-		this.foundRoutes++;
+	private void registerFoundRoute(Runnable thread) {
+		this.foundRoutes.increment();
 		this.recentlyActiveThreads.add(thread);
+		this.msgOrNot();
 	}
 
-	private synchronized void registerFailedRouteNoOD(Runnable thread) {
-		this.msgOrNot();
-		this.failedRoutesNoOD++;
+	private void registerFailedRouteNoOD(Runnable thread) {
+		this.failedRoutesNoOD.increment();
 		this.recentlyActiveThreads.add(thread);
+		this.msgOrNot();
 	}
 
-	private synchronized void registerFailedRouteNoConnection(Runnable thread) {
-		this.msgOrNot();
-		this.failedRoutesNoConnection++;
+	private void registerFailedRouteNoConnection(Runnable thread) {
+		this.failedRoutesNoConnection.increment();
 		this.recentlyActiveThreads.add(thread);
+		this.msgOrNot();
 	}
 
-	private synchronized void registerFailedRouteNoRouter(Runnable thread) {
-		this.msgOrNot();
-		this.failedRoutesNoRouter++;
+	private void registerFailedRouteNoRouter(Runnable thread) {
+		this.failedRoutesNoRouter.increment();
 		this.recentlyActiveThreads.add(thread);
+		this.msgOrNot();
+	}
+
+	// -------------------- SHARED ROUTING DATA --------------------
+
+	/*
+	 * Vehicle types with equal main mode and network modes have the same unimodal
+	 * network, see NetworkAndFleetDataProvider.createNetwork(..).
+	 */
+	private record UnimodalNetworkKey(TransportMode samgodsMode, Set<String> networkModes) {
+		UnimodalNetworkKey(SamgodsVehicleAttributes vehicleAttrs) {
+			this(vehicleAttrs.samgodsMode, new TreeSet<>(vehicleAttrs.networkModes));
+		}
+	}
+
+	private final ConcurrentMap<UnimodalNetworkKey, FutureTask<LandmarkData>> networkKey2landmarkData =
+			new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<VehicleType, double[]> vehicleType2linkCosts = new ConcurrentHashMap<>();
+
+	private static double computeLinkCost(NetworkAndFleetData networkAndFleetData, VehicleType vehicleType,
+			Link link) {
+		if (networkAndFleetData.getLinkId2unitCost(vehicleType).containsKey(link.getId())) {
+			return networkAndFleetData.getTravelDisutility(vehicleType).getLinkTravelDisutility(link, 0, null,
+					null);
+		} else {
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+
+	private LandmarkData createLandmarkData(UnimodalNetworkKey key, VehicleType vehicleType,
+			NetworkAndFleetData networkAndFleetData) {
+		final Network unimodalNetwork = networkAndFleetData.getUnimodalNetwork(vehicleType);
+		if (unimodalNetwork == null) {
+			return null;
+		}
+		final List<VehicleType> sameNetworkVehicleTypes = networkAndFleetData.getVehicleType2attributes().entrySet()
+				.stream().filter(e -> key.equals(new UnimodalNetworkKey(e.getValue()))).map(e -> e.getKey())
+				.toList();
+		log.info("Computing landmarks for " + key + ", shared by " + sameNetworkVehicleTypes.size()
+				+ " vehicle types.");
+		return LandmarkData.create(unimodalNetwork,
+				link -> sameNetworkVehicleTypes.stream()
+						.mapToDouble(vt -> computeLinkCost(networkAndFleetData, vt, link)).min()
+						.orElse(Double.POSITIVE_INFINITY),
+				this.landmarkCnt);
+	}
+
+	/*
+	 * The landmark computation takes long, so it does not run inside
+	 * computeIfAbsent, which would block the map meanwhile. The first caller for
+	 * a key publishes and runs the task, all other callers wait for its result.
+	 */
+	private LandmarkData getOrCreateLandmarkData(UnimodalNetworkKey key, VehicleType vehicleType,
+			NetworkAndFleetData networkAndFleetData) {
+		final FutureTask<LandmarkData> newTask = new FutureTask<>(
+				() -> this.createLandmarkData(key, vehicleType, networkAndFleetData));
+		FutureTask<LandmarkData> task = this.networkKey2landmarkData.putIfAbsent(key, newTask);
+		if (task == null) {
+			task = newTask;
+			task.run();
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
 	}
 
 	// -------------------- INNER CLASSES --------------------
@@ -111,8 +183,8 @@ public class PathBasedRouter {
 		private final NetworkAndFleetData networkAndFleetData;
 		private final BlockingQueue<ConsolidationUnit> jobQueue;
 
-		private final AStarLandmarksFactory routerFactory = new AStarLandmarksFactory(4);
-		private final Map<VehicleType, LeastCostPathCalculator> vehicleType2router = new LinkedHashMap<>();
+		// Pooled per-thread search state, one per (shared) unimodal network.
+		private final Map<UnimodalNetworkKey, LandmarkAStar> networkKey2router = new LinkedHashMap<>();
 
 		RouteProcessor(String name, NetworkAndFleetData networkAndFleetData,
 				BlockingQueue<ConsolidationUnit> jobQueue) {
@@ -121,31 +193,29 @@ public class PathBasedRouter {
 			this.jobQueue = jobQueue;
 		}
 
-		List<Link> computeRoute(ConsolidationUnit job, VehicleType vehicleType) {
+		List<Id<Link>> computeRoute(ConsolidationUnit job, VehicleType vehicleType) {
 
-			final Network unimodalNetwork = this.networkAndFleetData.getUnimodalNetwork(vehicleType);
-			if (unimodalNetwork == null) {
+			final UnimodalNetworkKey key = new UnimodalNetworkKey(
+					this.networkAndFleetData.getVehicleType2attributes().get(vehicleType));
+			final LandmarkData landmarkData = getOrCreateLandmarkData(key, vehicleType, this.networkAndFleetData);
+			if (landmarkData == null) {
 				log.warn("No network available. Skipping consolidationUnit " + job);
 				return null;
 			}
 
-			final LeastCostPathCalculator router = this.vehicleType2router.computeIfAbsent(vehicleType, vt -> {
-				final TravelDisutility travelDisutility = this.networkAndFleetData.getTravelDisutility(vehicleType);
-				if (travelDisutility == null) {
-					log.warn("No TravelDisutility available. Skipping consolidationUnit " + job);
-					return null;
-				}
-				final TravelTime travelTime = this.networkAndFleetData.getTravelTime(vehicleType);
-				if (travelTime == null) {
-					log.warn("No TravelTime available. Skipping consolidationUnit: " + job);
-					return null;
+			final TravelDisutility travelDisutility = this.networkAndFleetData.getTravelDisutility(vehicleType);
+			if (travelDisutility == null) {
+				log.warn("No TravelDisutility available. Skipping consolidationUnit " + job);
+				if (logProgress) {
+					registerFailedRouteNoRouter(this);
 				}
-				return this.routerFactory.createPathCalculator(unimodalNetwork, travelDisutility, travelTime);
-			});
-			if (router == null) {
-				log.warn("No Router available. Skipping consolidationUnit: " + job);
 				return null;
 			}
+			final double[] linkCosts = vehicleType2linkCosts.computeIfAbsent(vehicleType,
+					vt -> landmarkData.createLinkCosts(this.networkAndFleetData.getLinks(),
+							link -> computeLinkCost(this.networkAndFleetData, vt, link)));
+			final LandmarkAStar router = this.networkKey2router.computeIfAbsent(key,
+					k -> new LandmarkAStar(landmarkData));
 
 			final Id<Node> fromNodeId = job.od.origin;
 			final Id<Node> toNodeId = job.od.destination;
@@ -154,31 +224,22 @@ public class PathBasedRouter {
 					registerFoundRoute(this);
 				}
 				return (new ArrayList<>());
+			} else if ((landmarkData.getNodeIndex(fromNodeId) == null)
+					|| (landmarkData.getNodeIndex(toNodeId) == null)) {
+				if (logProgress) {
+					registerFailedRouteNoOD(this);
+				}
+				return null;
 			} else {
-				final Node from = unimodalNetwork.getNodes().get(fromNodeId);
-				final Node to = unimodalNetwork.getNodes().get(toNodeId);
-				if ((from != null) && (to != null) && (router != null)) {
-					final Path path = router.calcLeastCostPath(from, to, 0, null, null);
-					if (path == null) {
-						if (logProgress) {
-							registerFailedRouteNoConnection(this);
-						}
-					} else if (logProgress) {
+				final List<Id<Link>> linkIds = router.computeRoute(fromNodeId, toNodeId, linkCosts);
+				if (logProgress) {
+					if (linkIds == null) {
+						registerFailedRouteNoConnection(this);
+					} else {
 						registerFoundRoute(this);
 					}
-					return (path == null ? null : path.links);
-				} else {
-					if (logProgress) {
-						if (from == null || to == null) {
-							registerFailedRouteNoOD(this);
-						} else if (router == null) {
-							registerFailedRouteNoRouter(this);
-						} else {
-							throw new RuntimeException("impossible");
-						}
-					}
-					return null;
 				}
+				return linkIds;
 			}
 		}
 
@@ -187,9 +248,9 @@ public class PathBasedRouter {
 			final Set<VehicleType> compatibleVehicleTypes = this.networkAndFleetData.getCompatibleVehicleTypes(
 					consolidationUnit.commodity, consolidationUnit.samgodsMode, consolidationUnit.isContainer);
 			for (VehicleType vehicleType : compatibleVehicleTypes) {
-				final List<Link> links = this.computeRoute(consolidationUnit, vehicleType);
-				if (links != null) {
-					consolidationUnit.setRouteFromLinks(vehicleType, links);
+				final List<Id<Link>> linkIds = this.computeRoute(consolidationUnit, vehicleType);
+				if (linkIds != null) {
+					consolidationUnit.setRouteFromLinkIds(vehicleType, linkIds);
 				}
 			}
 		}
@@ -221,6 +282,8 @@ public class PathBasedRouter {
 
 	private int maxThreads = 64;
 
+	private int landmarkCnt = 16;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	public PathBasedRouter(NetworkAndFleetDataProvider networkAndFleetDataProvider) {
@@ -237,6 +300,11 @@ public class PathBasedRouter {
 		return this;
 	}
 
+	public PathBasedRouter setLandmarkCnt(int landmarkCnt) {
+		this.landmarkCnt = landmarkCnt;
+		return this;
+	}
+
 	// -------------------- IMPLEMENTATION --------------------
 
 	public void route(Collection<ConsolidationUnit> allJobs) {
@@ -245,9 +313,6 @@ public class PathBasedRouter {
 			final BlockingQueue<ConsolidationUnit> jobQueue = new LinkedBlockingQueue<>(10 * threadCnt);
 			final List<Thread> routingThreads = new ArrayList<>();
 
-			Level level = LogManager.getLogger(Dijkstra.class).getLevel();
-			Configurator.setLevel(Dijkstra.class, Level.OFF);
-
 			log.info("Starting " + threadCnt + " routing threads.");
 			for (int i = 0; i < threadCnt; i++) {
 				final RouteProcessor routeProcessor = new RouteProcessor(RouteProcessor.class.getSimpleName() + i,
@@ -270,8 +335,6 @@ public class PathBasedRouter {
 				routingThread.join();
 			}
 
-			Configurator.setLevel(Dijkstra.class, level);
-
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		}
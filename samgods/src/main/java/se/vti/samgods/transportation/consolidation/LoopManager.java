@@ -22,6 +22,7 @@ package se.vti.samgods.transportation.consolidation;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -35,6 +36,7 @@ import org.matsim.vehicles.VehicleType;
 
 import se.vti.samgods.common.OD;
 import se.vti.samgods.common.SamgodsConstants.CommodityMode;
+import se.vti.samgods.common.SamgodsConstants.TransportMode;
 
 /**
  * Exploratory.
@@ -107,92 +109,144 @@ public class LoopManager {
 		return this.consolidationUnit2Loops.get(consolidationUnit);
 	}
 	
-	public void postprocessLoops() {
+	// -------------------- POSTPROCESSING --------------------
+
+	/*
+	 * Dense per-mode vehicle type indices, such that the vehicle types compatible
+	 * with a consolidation unit can be represented as a long bitmask.
+	 */
+	private Map<TransportMode, List<VehicleType>> mode2indexedVehicleTypes = null;
+
+	private Map<ConsolidationUnit, Long> consolidationUnit2vehicleTypeMask = null;
+
+	private void indexVehicleTypes() {
+		final Map<TransportMode, Map<VehicleType, Integer>> mode2vehicleType2index = new LinkedHashMap<>();
+		this.mode2indexedVehicleTypes = new LinkedHashMap<>();
+		this.consolidationUnit2vehicleTypeMask = new IdentityHashMap<>();
+		for (ConsolidationUnit cu : this.consolidationUnitManager.getAllRepresentativeConsolidationUnits()) {
+			final Map<VehicleType, Integer> vehicleType2index = mode2vehicleType2index.computeIfAbsent(cu.samgodsMode,
+					m -> new LinkedHashMap<>());
+			final List<VehicleType> indexedVehicleTypes = this.mode2indexedVehicleTypes
+					.computeIfAbsent(cu.samgodsMode, m -> new ArrayList<>());
+			long mask = 0L;
+			for (var vehicleTypes : cu.vehicleType2route.keySet()) {
+				for (VehicleType vehicleType : vehicleTypes) {
+					final int index = vehicleType2index.computeIfAbsent(vehicleType, vt -> {
+						indexedVehicleTypes.add(vt);
+						return indexedVehicleTypes.size() - 1;
+					});
+					if (index >= Long.SIZE) {
+						throw new RuntimeException("More than " + Long.SIZE + " vehicle types for mode "
+								+ cu.samgodsMode + ", cannot represent these as a bitmask.");
+					}
+					mask |= (1L << index);
+				}
+			}
+			this.consolidationUnit2vehicleTypeMask.put(cu, mask);
+		}
+	}
 
-		this.consolidationUnit2Loops = new LinkedHashMap<>();
+	private long getVehicleTypeMask(ConsolidationUnit consolidationUnit) {
+		return this.consolidationUnit2vehicleTypeMask.getOrDefault(consolidationUnit, 0L);
+	}
 
-		for (var entry : this.commodityMode2Loops.entrySet()) {
-			var commodityMode = entry.getKey();
+	private Set<VehicleType> createVehicleTypes(TransportMode mode, long mask) {
+		final List<VehicleType> indexedVehicleTypes = this.mode2indexedVehicleTypes.get(mode);
+		final Set<VehicleType> result = new LinkedHashSet<>(Long.bitCount(mask));
+		for (long remaining = mask; remaining != 0L; remaining &= (remaining - 1)) {
+			result.add(indexedVehicleTypes.get(Long.numberOfTrailingZeros(remaining)));
+		}
+		return result;
+	}
 
-			for (Loop loop : entry.getValue()) {
-				Set<VehicleType> feasibleContainerVehicleTypes = null;
-				Set<VehicleType> feasibleNoContainerVehicleTypes = null;
+	public void postprocessLoops() {
 
-				List<Set<ConsolidationUnit>> consolidationUnitsPerContainerSegment = new ArrayList<>(loop.size());
-				List<Set<ConsolidationUnit>> consolidationUnitsPerNoContainerSegment = new ArrayList<>(loop.size());
+		this.indexVehicleTypes();
 
+		final List<Loop> allLoops = this.commodityMode2Loops.values().stream().flatMap(Set::stream).toList();
+
+		// The loops are independent of each other, only consolidationUnit2Loops is
+		// shared and hence filled afterwards, in deterministic order.
+		allLoops.parallelStream().forEach(loop -> this.postprocessLoop(loop));
+
+		this.consolidationUnit2Loops = new LinkedHashMap<>();
+		for (Loop loop : allLoops) {
+			if (loop.getFeasibleVehicleTypesView() != null) {
 				for (int i = 0; i < loop.size(); i++) {
-					Id<Node> fromNodeId = loop.getMATSimNodeIdsView().get(i);
-					Id<Node> toNodeId = loop.getMATSimNodeIdsView().get((i + 1) % loop.size());
-					OD od = new OD(fromNodeId, toNodeId);
-
-					var consolidationUnits = this.consolidationUnitManager.getConsolidationUnits(commodityMode, od);
-					Set<ConsolidationUnit> containerConsolidationUnits = new LinkedHashSet<>();
-					Set<ConsolidationUnit> noContainerConsolidationUnits = new LinkedHashSet<>();
-					consolidationUnitsPerContainerSegment.add(containerConsolidationUnits);
-					consolidationUnitsPerNoContainerSegment.add(noContainerConsolidationUnits);
-
-					if ((consolidationUnits == null) || (consolidationUnits.size() == 0)) {
-						feasibleContainerVehicleTypes = new LinkedHashSet<>(0);
-						feasibleNoContainerVehicleTypes = new LinkedHashSet<>(0);
-						System.err.println("Rejecting loop because of lacking consolidation units.");
-						break;
+					for (ConsolidationUnit cu : loop.getContainerConsolidationUnits(i)) {
+						this.consolidationUnit2Loops.computeIfAbsent(cu, cu2 -> new LinkedHashSet<>()).add(loop);
 					}
-
-					for (ConsolidationUnit cu : consolidationUnits) {
-						Set<VehicleType> unitVehicleTypes = new LinkedHashSet<>();
-						for (var vehicleTypes : cu.vehicleType2route.keySet()) {
-							unitVehicleTypes.addAll(vehicleTypes);
-						}
-
-						if (cu.isContainer) {
-							containerConsolidationUnits.add(cu);
-							if (feasibleContainerVehicleTypes == null) {
-								feasibleContainerVehicleTypes = new LinkedHashSet<>(unitVehicleTypes);
-							} else {
-								feasibleContainerVehicleTypes.retainAll(unitVehicleTypes);
-							}
-						} else {
-							noContainerConsolidationUnits.add(cu);
-							if (feasibleNoContainerVehicleTypes == null) {
-								feasibleNoContainerVehicleTypes = new LinkedHashSet<>(unitVehicleTypes);
-							} else {
-								feasibleNoContainerVehicleTypes.retainAll(unitVehicleTypes);
-							}
-						}
+					for (ConsolidationUnit cu : loop.getNoContainerConsolidationUnits(i)) {
+						this.consolidationUnit2Loops.computeIfAbsent(cu, cu2 -> new LinkedHashSet<>()).add(loop);
 					}
 				}
+			}
+		}
+	}
 
-				var feasibleVehicleTypes = new LinkedHashSet<VehicleType>();
-				if ((feasibleContainerVehicleTypes != null)) {
-					feasibleVehicleTypes.addAll(feasibleContainerVehicleTypes);
-				}
-				if (feasibleNoContainerVehicleTypes != null) {
-					feasibleVehicleTypes.addAll(feasibleNoContainerVehicleTypes);
-				}
-				if (feasibleVehicleTypes.isEmpty()) {
-					System.err.println("Rejecting loop because of lacking vehicle types.");
+	private void postprocessLoop(Loop loop) {
+		final CommodityMode commodityMode = loop.getCommodityMode();
+
+		// Bitmasks over the dense vehicle type index of the loop's mode. Null as long
+		// as no consolidation unit of the respective kind has been encountered.
+		Long feasibleContainerMask = null;
+		Long feasibleNoContainerMask = null;
+
+		List<Set<ConsolidationUnit>> consolidationUnitsPerContainerSegment = new ArrayList<>(loop.size());
+		List<Set<ConsolidationUnit>> consolidationUnitsPerNoContainerSegment = new ArrayList<>(loop.size());
+
+		for (int i = 0; i < loop.size(); i++) {
+			Id<Node> fromNodeId = loop.getMATSimNodeIdsView().get(i);
+			Id<Node> toNodeId = loop.getMATSimNodeIdsView().get((i + 1) % loop.size());
+			OD od = new OD(fromNodeId, toNodeId);
+
+			var consolidationUnits = this.consolidationUnitManager.getConsolidationUnits(commodityMode, od);
+			Set<ConsolidationUnit> containerConsolidationUnits = new LinkedHashSet<>();
+			Set<ConsolidationUnit> noContainerConsolidationUnits = new LinkedHashSet<>();
+			consolidationUnitsPerContainerSegment.add(containerConsolidationUnits);
+			consolidationUnitsPerNoContainerSegment.add(noContainerConsolidationUnits);
+
+			if ((consolidationUnits == null) || (consolidationUnits.size() == 0)) {
+				feasibleContainerMask = 0L;
+				feasibleNoContainerMask = 0L;
+				System.err.println("Rejecting loop because of lacking consolidation units.");
+				break;
+			}
+
+			for (ConsolidationUnit cu : consolidationUnits) {
+				final long unitMask = this.getVehicleTypeMask(cu);
+				if (cu.isContainer) {
+					containerConsolidationUnits.add(cu);
+					feasibleContainerMask = (feasibleContainerMask == null ? unitMask
+							: feasibleContainerMask & unitMask);
 				} else {
+					noContainerConsolidationUnits.add(cu);
+					feasibleNoContainerMask = (feasibleNoContainerMask == null ? unitMask
+							: feasibleNoContainerMask & unitMask);
+				}
+			}
+		}
 
-					loop.setFeasibleVehicleTypes(feasibleVehicleTypes);
+		final long feasibleMask = (feasibleContainerMask != null ? feasibleContainerMask : 0L)
+				| (feasibleNoContainerMask != null ? feasibleNoContainerMask : 0L);
+		if (feasibleMask == 0L) {
+			System.err.println("Rejecting loop because of lacking vehicle types.");
+		} else {
 
-					this.alignConsolidationUnitsPerSegmentWithLoop(consolidationUnitsPerContainerSegment, loop);
-					loop.setConsolidationUnitsPerContainerSegment(consolidationUnitsPerContainerSegment);
+			loop.setFeasibleVehicleTypes(this.createVehicleTypes(loop.getMode(), feasibleMask));
 
-					this.alignConsolidationUnitsPerSegmentWithLoop(consolidationUnitsPerNoContainerSegment, loop);
-					loop.setConsolidationUnitsPerNoContainerSegment(consolidationUnitsPerNoContainerSegment);
-				}
-			}
+			this.alignConsolidationUnitsPerSegmentWithLoop(consolidationUnitsPerContainerSegment, feasibleMask);
+			loop.setConsolidationUnitsPerContainerSegment(consolidationUnitsPerContainerSegment);
+
+			this.alignConsolidationUnitsPerSegmentWithLoop(consolidationUnitsPerNoContainerSegment, feasibleMask);
+			loop.setConsolidationUnitsPerNoContainerSegment(consolidationUnitsPerNoContainerSegment);
 		}
 	}
 
 	private void alignConsolidationUnitsPerSegmentWithLoop(List<Set<ConsolidationUnit>> consolidationUnitsPerSegment,
-			Loop loop) {
+			long feasibleMask) {
 		for (var consolidationUnits : consolidationUnitsPerSegment) {
-			consolidationUnits.removeIf(cu -> cu.vehicleType2route.keySet().stream().flatMap(Set::stream)
-					.noneMatch(loop.getFeasibleVehicleTypesView()::contains));
-			consolidationUnits.stream().forEach(
-					cu -> this.consolidationUnit2Loops.computeIfAbsent(cu, cu2 -> new LinkedHashSet<>()).add(loop));
+			consolidationUnits.removeIf(cu -> (this.getVehicleTypeMask(cu) & feasibleMask) == 0L);
 		}
 	}
 
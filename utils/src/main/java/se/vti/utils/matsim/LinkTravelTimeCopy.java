@@ -20,10 +20,12 @@
 package se.vti.utils.matsim;
 
 import static java.lang.Math.ceil;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
@@ -33,79 +35,187 @@ import org.matsim.core.config.Config;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.vehicles.Vehicle;
 
-import se.vti.utils.misc.dynamicdata.DynamicData;
+import se.vti.utils.misc.dynamicdata.DynamicDataBinaryFileIO;
+import se.vti.utils.misc.dynamicdata.MappedDynamicData;
 
 /**
+ * Snapshot of link travel times. All values are held in a single primitive
+ * array of dimension (link index) x (time bin), where the link index is the
+ * MATSim-internal Id index. Instances are immutable once constructed: the
+ * only mutators (multiply/add) are private and applied to the fresh result of
+ * newWeightedSum before it is returned. Reading is therefore lock-free and may
+ * happen concurrently from any number of threads.
  *
  * @author Gunnar Flötteröd
  *
  */
 public class LinkTravelTimeCopy implements TravelTime {
 
-	@SuppressWarnings("serial")
-	private static class ModifiableDynamicData<K extends Object> extends DynamicData<K> {
+	// -------------------- CONSTANTS --------------------
 
-		ModifiableDynamicData(int startTime_s, int binSize_s, int binCnt) {
-			super(startTime_s, binSize_s, binCnt);
+	public static final DynamicDataBinaryFileIO<Id<Link>> LINK_ID_BINARY_IO = new DynamicDataBinaryFileIO<>() {
+		@Override
+		protected String key2string(Id<Link> key) {
+			return key.toString();
 		}
 
-		ModifiableDynamicData(final ModifiableDynamicData<K> parent) {
-			super(parent.getStartTime_s(), parent.getBinSize_s(), parent.getBinCnt());
-			this.add(parent, 1.0); // ensures deep copy of double[] data holding arrays
+		@Override
+		protected Id<Link> string2key(String string) {
+			return Id.createLinkId(string);
 		}
+	};
 
-		void multiply(final double factor) {
-			for (double[] series : this.data.values()) {
-				for (int i = 0; i < series.length; i++) {
-					series[i] *= factor;
-				}
-			}
+	private final int binSize_s;
+
+	private final int binCnt;
+
+	// Id index -> row in data_s; -1 if the link is not covered. Shared by copies.
+	private final int[] idIndex2row;
+
+	private final double[] data_s;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	public LinkTravelTimeCopy(final TravelTime travelTimes, final Config config, final Network network) {
+
+		this.binSize_s = (int) Math.round(config.travelTimeCalculator().getTraveltimeBinSize());
+		this.binCnt = (int) ceil(((double) config.travelTimeCalculator().getMaxTime()) / this.binSize_s);
+
+		int maxIdIndex = -1;
+		for (Id<Link> linkId : network.getLinks().keySet()) {
+			maxIdIndex = Math.max(maxIdIndex, linkId.index());
 		}
+		this.idIndex2row = new int[maxIdIndex + 1];
+		Arrays.fill(this.idIndex2row, -1);
+		this.data_s = new double[network.getLinks().size() * this.binCnt];
 
-		void add(final ModifiableDynamicData<K> other, final double otherFactor) {
-			for (Map.Entry<K, double[]> otherEntry : other.data.entrySet()) {
-				final double[] otherSeries = otherEntry.getValue();
-				final double[] mySeries = this.getNonNullDataArray(otherEntry.getKey());
-				for (int i = 0; i < mySeries.length; i++) {
-					mySeries[i] += otherFactor * otherSeries[i];
-				}
+		int row = 0;
+		for (Link link : network.getLinks().values()) {
+			this.idIndex2row[link.getId().index()] = row;
+			final int offset = row * this.binCnt;
+			for (int bin = 0; bin < this.binCnt; bin++) {
+				this.data_s[offset + bin] = travelTimes.getLinkTravelTime(link, (bin + 0.5) * this.binSize_s, null,
+						null);
 			}
+			row++;
 		}
 	}
 
-	private final ModifiableDynamicData<Id<Link>> data_s;
-
-	public LinkTravelTimeCopy(final TravelTime travelTimes, final Config config, final Network network) {
-
-		final int binSize_s = (int) Math.round(config.travelTimeCalculator().getTraveltimeBinSize());
-		final int binCnt = (int) ceil(((double) config.travelTimeCalculator().getMaxTime()) / binSize_s);
+	/**
+	 * Loads a snapshot from a binary DynamicData file, see
+	 * DynamicDataBinaryFileIO. Network links without a row in the file are
+	 * evaluated with the fallback travel time at the bin midpoints. If the
+	 * fallback is null, every network link must have a row in the file.
+	 */
+	public LinkTravelTimeCopy(final MappedDynamicData<Id<Link>> travelTimes, final Network network,
+			final TravelTime fallback) {
+		if (travelTimes.getStartTime_s() != 0) {
+			throw new IllegalArgumentException(
+					"Travel time snapshots must start at time zero, not at " + travelTimes.getStartTime_s() + "s.");
+		}
+		this.binSize_s = travelTimes.getBinSize_s();
+		this.binCnt = travelTimes.getBinCnt();
 
-		this.data_s = new ModifiableDynamicData<Id<Link>>(0, binSize_s, binCnt);
+		int maxIdIndex = -1;
+		for (Id<Link> linkId : network.getLinks().keySet()) {
+			maxIdIndex = Math.max(maxIdIndex, linkId.index());
+		}
+		this.idIndex2row = new int[maxIdIndex + 1];
+		Arrays.fill(this.idIndex2row, -1);
+		this.data_s = new double[network.getLinks().size() * this.binCnt];
 
+		int row = 0;
 		for (Link link : network.getLinks().values()) {
-			for (int bin = 0; bin < binCnt; bin++) {
-				this.data_s.put(link.getId(), bin,
-						travelTimes.getLinkTravelTime(link, (bin + 0.5) * binSize_s, null, null));
+			this.idIndex2row[link.getId().index()] = row;
+			final int offset = row * this.binCnt;
+			if (!travelTimes.copyValues(link.getId(), this.data_s, offset)) {
+				if (fallback == null) {
+					throw new IllegalArgumentException("No travel times for network link " + link.getId() + ".");
+				}
+				for (int bin = 0; bin < this.binCnt; bin++) {
+					this.data_s[offset + bin] = fallback.getLinkTravelTime(link, (bin + 0.5) * this.binSize_s, null,
+							null);
+				}
 			}
+			row++;
 		}
 	}
 
+	public LinkTravelTimeCopy(final MappedDynamicData<Id<Link>> travelTimes, final Network network) {
+		this(travelTimes, network, null);
+	}
+
 	public LinkTravelTimeCopy(final LinkTravelTimeCopy parent) {
-		this.data_s = new ModifiableDynamicData<>(parent.data_s);
+		this.binSize_s = parent.binSize_s;
+		this.binCnt = parent.binCnt;
+		this.idIndex2row = parent.idIndex2row;
+		this.data_s = Arrays.copyOf(parent.data_s, parent.data_s.length);
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private void checkCompatibility(final LinkTravelTimeCopy other) {
+		if ((this.binSize_s != other.binSize_s) || (this.binCnt != other.binCnt)
+				|| ((this.idIndex2row != other.idIndex2row) && !Arrays.equals(this.idIndex2row, other.idIndex2row))) {
+			throw new RuntimeException("incompatible travel time snapshots");
+		}
 	}
 
+	// -------------------- IMPLEMENTATION --------------------
+
 	@Override
-	public synchronized double getLinkTravelTime(Link link, double time_s, Person person, Vehicle vehicle) {
-		final int bin = min(this.data_s.getBinCnt() - 1, (int) (time_s / this.data_s.getBinSize_s()));
-		return this.data_s.getBinValue(link.getId(), bin);
+	public double getLinkTravelTime(Link link, double time_s, Person person, Vehicle vehicle) {
+		final int idIndex = link.getId().index();
+		final int row = (idIndex < this.idIndex2row.length ? this.idIndex2row[idIndex] : -1);
+		if (row < 0) {
+			return 0.0;
+		}
+		final int bin = max(0, min(this.binCnt - 1, (int) (time_s / this.binSize_s)));
+		return this.data_s[row * this.binCnt + bin];
+	}
+
+	private void multiply(final double factor) {
+		final double[] data = this.data_s;
+		for (int i = 0; i < data.length; i++) {
+			data[i] *= factor;
+		}
+	}
+
+	private void add(final LinkTravelTimeCopy other, final double otherFactor) {
+		this.checkCompatibility(other);
+		final double[] data = this.data_s;
+		final double[] otherData = other.data_s;
+		for (int i = 0; i < data.length; i++) {
+			data[i] += otherFactor * otherData[i];
+		}
+	}
+
+	/**
+	 * Streams this snapshot to a binary DynamicData file, one row per network
+	 * link, see DynamicDataBinaryFileIO.
+	 */
+	public void writeBinary(final String fileName, final Network network) throws IOException {
+		try (DynamicDataBinaryFileIO<Id<Link>>.Writer writer = LINK_ID_BINARY_IO.newWriter(fileName, 0,
+				this.binSize_s, this.binCnt, false)) {
+			final double[] values = new double[this.binCnt];
+			for (Id<Link> linkId : network.getLinks().keySet()) {
+				final int idIndex = linkId.index();
+				final int row = (idIndex < this.idIndex2row.length ? this.idIndex2row[idIndex] : -1);
+				if (row >= 0) {
+					System.arraycopy(this.data_s, row * this.binCnt, values, 0, this.binCnt);
+					writer.write(linkId, values);
+				}
+			}
+		}
 	}
 
-	public void multiply(final double factor) {
-		this.data_s.multiply(factor);
+	public static LinkTravelTimeCopy readBinary(final String fileName, final Network network,
+			final TravelTime fallback) throws IOException {
+		return new LinkTravelTimeCopy(LINK_ID_BINARY_IO.open(fileName), network, fallback);
 	}
 
-	public void add(final LinkTravelTimeCopy other, final double otherFactor) {
-		this.data_s.add(other.data_s, otherFactor);
+	public static LinkTravelTimeCopy readBinary(final String fileName, final Network network) throws IOException {
+		return readBinary(fileName, network, null);
 	}
 
 	public static LinkTravelTimeCopy newWeightedSum(final List<LinkTravelTimeCopy> addends,
@@ -0,0 +1,254 @@
+/**
+ * se.vti.utils
+ * 
+ * Copyright (C) 2026 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.utils.misc.dynamicdata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary alternative to DynamicDataXMLFileIO. File layout, all little-endian:
+ * 
+ * <ul>
+ * <li>a header of HEADER_BYTES bytes: magic number, version, bytes per value (8
+ * = double, 4 = float), start time, bin size, bin count, key count, a reserved
+ * int and the (long) offset of the key dictionary;
+ * <li>the data block: one row of bin count values per key, contiguously;
+ * <li>the key dictionary: per row, the UTF-8 byte length (int) and bytes of
+ * key2string(key).
+ * </ul>
+ * 
+ * Placing the dictionary after the data allows to stream rows to the file
+ * without knowing all keys in advance. Double precision files reproduce the
+ * values exactly, also when converting from and to the XML format.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param <K> the key type
+ */
+public abstract class DynamicDataBinaryFileIO<K> {
+
+	// -------------------- CONSTANTS --------------------
+
+	public static final int MAGIC = 0x444E5944; // "DYND" in little-endian byte order
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_BYTES = 64;
+
+	private static final int BUFFER_BYTES = 1 << 20;
+
+	// -------------------- INTERFACE DEFINITION --------------------
+
+	protected DynamicData<K> newInstance(final int startTime_s, final int binSize_s, final int binCnt) {
+		return new DynamicData<K>(startTime_s, binSize_s, binCnt);
+	}
+
+	protected abstract String key2string(final K key);
+
+	protected abstract K string2key(final String string);
+
+	// -------------------- STREAMING WRITE --------------------
+
+	/**
+	 * Writes rows one by one to a file. The header is completed when closing.
+	 */
+	public class Writer implements AutoCloseable {
+
+		private final FileChannel channel;
+
+		private final int startTime_s;
+
+		private final int binSize_s;
+
+		private final int binCnt;
+
+		private final int valueBytes;
+
+		private final ByteBuffer buffer;
+
+		private final Set<K> writtenKeys = new HashSet<>();
+
+		private ByteBuffer dictionaryBuffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+		private Writer(final String fileName, final int startTime_s, final int binSize_s, final int binCnt,
+				final boolean singlePrecision) throws IOException {
+			if (binSize_s <= 0) {
+				throw new IllegalArgumentException("binSize_s must be strictly positive");
+			}
+			if (binCnt <= 0) {
+				throw new IllegalArgumentException("binCnt must be strictly positive");
+			}
+			this.startTime_s = startTime_s;
+			this.binSize_s = binSize_s;
+			this.binCnt = binCnt;
+			this.valueBytes = (singlePrecision ? Float.BYTES : Double.BYTES);
+			this.buffer = ByteBuffer.allocate(Math.max(BUFFER_BYTES, binCnt * this.valueBytes))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			this.channel.position(HEADER_BYTES); // header is written when closing
+		}
+
+		private void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+
+		public void write(final K key, final double[] values) throws IOException {
+			if (values.length != this.binCnt) {
+				throw new IllegalArgumentException(
+						"Expected " + this.binCnt + " values but received " + values.length + " for key " + key);
+			}
+			if (!this.writtenKeys.add(key)) {
+				throw new IllegalArgumentException("Key " + key + " has already been written.");
+			}
+
+			final byte[] keyBytes = key2string(key).getBytes(StandardCharsets.UTF_8);
+			if (this.dictionaryBuffer.remaining() < Integer.BYTES + keyBytes.length) {
+				final ByteBuffer larger = ByteBuffer
+						.allocate(Math.max(2 * this.dictionaryBuffer.capacity(),
+								this.dictionaryBuffer.position() + Integer.BYTES + keyBytes.length))
+						.order(ByteOrder.LITTLE_ENDIAN);
+				this.dictionaryBuffer.flip();
+				larger.put(this.dictionaryBuffer);
+				this.dictionaryBuffer = larger;
+			}
+			this.dictionaryBuffer.putInt(keyBytes.length);
+			this.dictionaryBuffer.put(keyBytes);
+
+			if (this.buffer.remaining() < this.binCnt * this.valueBytes) {
+				this.flush();
+			}
+			if (this.valueBytes == Double.BYTES) {
+				for (double value : values) {
+					this.buffer.putDouble(value);
+				}
+			} else {
+				for (double value : values) {
+					this.buffer.putFloat((float) value);
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				this.flush();
+				final long dictionaryOffset = this.channel.position();
+
+				this.dictionaryBuffer.flip();
+				while (this.dictionaryBuffer.hasRemaining()) {
+					this.channel.write(this.dictionaryBuffer);
+				}
+
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC);
+				header.putInt(VERSION);
+				header.putInt(this.valueBytes);
+				header.putInt(this.startTime_s);
+				header.putInt(this.binSize_s);
+				header.putInt(this.binCnt);
+				header.putInt(this.writtenKeys.size());
+				header.putInt(0); // reserved
+				header.putLong(dictionaryOffset);
+				header.rewind();
+				long position = 0;
+				while (header.hasRemaining()) {
+					position += this.channel.write(header, position);
+				}
+			} finally {
+				this.channel.close();
+			}
+		}
+	}
+
+	public Writer newWriter(final String fileName, final int startTime_s, final int binSize_s, final int binCnt,
+			final boolean singlePrecision) throws IOException {
+		return new Writer(fileName, startTime_s, binSize_s, binCnt, singlePrecision);
+	}
+
+	// -------------------- WRITE IMPLEMENTATION --------------------
+
+	public void write(final String fileName, final DynamicData<K> dd, final boolean singlePrecision)
+			throws IOException {
+		try (Writer writer = this.newWriter(fileName, dd.getStartTime_s(), dd.getBinSize_s(), dd.getBinCnt(),
+				singlePrecision)) {
+			for (Map.Entry<K, double[]> entry : dd.data.entrySet()) {
+				if (entry.getValue() != null) {
+					writer.write(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	public void write(final String fileName, final DynamicData<K> dd) throws IOException {
+		this.write(fileName, dd, false);
+	}
+
+	// -------------------- READ IMPLEMENTATION --------------------
+
+	/**
+	 * Memory-maps the file for random access per key.
+	 */
+	public MappedDynamicData<K> open(final String fileName) throws IOException {
+		return new MappedDynamicData<>(fileName, this::string2key);
+	}
+
+	/**
+	 * Reads the entire file into a new instance as created by newInstance(..).
+	 */
+	public DynamicData<K> read(final String fileName) throws IOException {
+		final MappedDynamicData<K> source = this.open(fileName);
+		final DynamicData<K> result = this.newInstance(source.getStartTime_s(), source.getBinSize_s(),
+				source.getBinCnt());
+		for (K key : source.keySet()) {
+			result.data.put(key, source.getValues(key));
+		}
+		return result;
+	}
+
+	// -------------------- CONVERSION --------------------
+
+	public static <K> void convertXMLToBinary(final DynamicDataXMLFileIO<K> xmlIO, final String xmlFileName,
+			final DynamicDataBinaryFileIO<K> binaryIO, final String binaryFileName) throws IOException {
+		final DynamicData<K> dd = xmlIO.read(xmlFileName);
+		if (dd == null) {
+			throw new IOException("Could not read XML file " + xmlFileName);
+		}
+		binaryIO.write(binaryFileName, dd);
+	}
+
+	public static <K> void convertBinaryToXML(final DynamicDataBinaryFileIO<K> binaryIO,
+			final String binaryFileName, final DynamicDataXMLFileIO<K> xmlIO, final String xmlFileName)
+			throws IOException {
+		xmlIO.write(xmlFileName, binaryIO.read(binaryFileName));
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * se.vti.utils
+ * 
+ * Copyright (C) 2026 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.utils.misc.dynamicdata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Read-only, memory-mapped view of a file written by DynamicDataBinaryFileIO.
+ * Only the key dictionary is read into memory; values are read from the mapped
+ * data block on access. Since all reads are absolute, any number of threads
+ * may read concurrently.
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ * @param <K> the key type
+ */
+public class MappedDynamicData<K> {
+
+	// -------------------- CONSTANTS --------------------
+
+	private final int startTime_s;
+
+	private final int binSize_s;
+
+	private final int binCnt;
+
+	private final int valueBytes;
+
+	private final Map<K, Integer> key2row;
+
+	private final int rowsPerSegment;
+
+	private final ByteBuffer[] segments;
+
+	// -------------------- CONSTRUCTION --------------------
+
+	MappedDynamicData(final String fileName, final Function<String, K> string2key) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+
+			final ByteBuffer header = ByteBuffer.allocate(DynamicDataBinaryFileIO.HEADER_BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining()) {
+				if (channel.read(header) < 0) {
+					throw new IOException("Truncated header in file " + fileName);
+				}
+			}
+			header.flip();
+			if (header.getInt() != DynamicDataBinaryFileIO.MAGIC) {
+				throw new IOException("File " + fileName + " is not a binary DynamicData file.");
+			}
+			final int version = header.getInt();
+			if (version != DynamicDataBinaryFileIO.VERSION) {
+				throw new IOException("Unsupported binary DynamicData version " + version + " in file " + fileName);
+			}
+			this.valueBytes = header.getInt();
+			this.startTime_s = header.getInt();
+			this.binSize_s = header.getInt();
+			this.binCnt = header.getInt();
+			final int keyCnt = header.getInt();
+			header.getInt(); // reserved
+			final long dictionaryOffset = header.getLong();
+			if ((this.valueBytes != Double.BYTES) && (this.valueBytes != Float.BYTES)) {
+				throw new IOException("Invalid value size " + this.valueBytes + " in file " + fileName);
+			}
+
+			final long rowBytes = ((long) this.binCnt) * this.valueBytes;
+			if (dictionaryOffset != DynamicDataBinaryFileIO.HEADER_BYTES + keyCnt * rowBytes) {
+				throw new IOException("Inconsistent data block size in file " + fileName);
+			}
+
+			// Key dictionary, in row order.
+
+			final ByteBuffer dictionary = channel
+					.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset, channel.size() - dictionaryOffset)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			final Map<K, Integer> key2row = new LinkedHashMap<>();
+			for (int row = 0; row < keyCnt; row++) {
+				final byte[] bytes = new byte[dictionary.getInt()];
+				dictionary.get(bytes);
+				key2row.put(string2key.apply(new String(bytes, StandardCharsets.UTF_8)), row);
+			}
+			this.key2row = Collections.unmodifiableMap(key2row);
+
+			// Data block, mapped in segments of whole rows below 2 GB each.
+
+			this.rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE / Math.max(1, rowBytes));
+			this.segments = new ByteBuffer[(keyCnt + this.rowsPerSegment - 1) / this.rowsPerSegment];
+			for (int segment = 0; segment < this.segments.length; segment++) {
+				final int rowCnt = Math.min(this.rowsPerSegment, keyCnt - segment * this.rowsPerSegment);
+				this.segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY,
+						DynamicDataBinaryFileIO.HEADER_BYTES + segment * this.rowsPerSegment * rowBytes,
+						rowCnt * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+	}
+
+	// -------------------- INTERNALS --------------------
+
+	private double value(final int row, final int bin) {
+		final ByteBuffer segment = this.segments[row / this.rowsPerSegment];
+		final int position = ((row % this.rowsPerSegment) * this.binCnt + bin) * this.valueBytes;
+		return (this.valueBytes == Double.BYTES ? segment.getDouble(position) : segment.getFloat(position));
+	}
+
+	// -------------------- CONTENT ACCESS --------------------
+
+	public int getStartTime_s() {
+		return this.startTime_s;
+	}
+
+	public int getBinSize_s() {
+		return this.binSize_s;
+	}
+
+	public int getBinCnt() {
+		return this.binCnt;
+	}
+
+	public boolean isSinglePrecision() {
+		return (this.valueBytes == Float.BYTES);
+	}
+
+	/**
+	 * Keys in the order in which they were written.
+	 */
+	public Set<K> keySet() {
+		return this.key2row.keySet();
+	}
+
+	public boolean containsKey(final K key) {
+		return this.key2row.containsKey(key);
+	}
+
+	/**
+	 * Same semantics as DynamicData.getBinValue(..): zero for unknown keys.
+	 */
+	public double getBinValue(final K key, final int bin) {
+		final Integer row = this.key2row.get(key);
+		if (row == null) {
+			return 0;
+		} else {
+			return this.value(row, bin);
+		}
+	}
+
+	/**
+	 * Copies all values of key into target, starting at targetOffset.
+	 * 
+	 * @return false (and target unchanged) if key is unknown
+	 */
+	public boolean copyValues(final K key, final double[] target, final int targetOffset) {
+		final Integer row = this.key2row.get(key);
+		if (row == null) {
+			return false;
+		}
+		final ByteBuffer segment = this.segments[row / this.rowsPerSegment];
+		int position = (row % this.rowsPerSegment) * this.binCnt * this.valueBytes;
+		if (this.valueBytes == Double.BYTES) {
+			for (int bin = 0; bin < this.binCnt; bin++, position += Double.BYTES) {
+				target[targetOffset + bin] = segment.getDouble(position);
+			}
+		} else {
+			for (int bin = 0; bin < this.binCnt; bin++, position += Float.BYTES) {
+				target[targetOffset + bin] = segment.getFloat(position);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return a fresh array with all values of key, or null if key is unknown
+	 */
+	public double[] getValues(final K key) {
+		final double[] result = new double[this.binCnt];
+		return (this.copyValues(key, result, 0) ? result : null);
+	}
+}
@@ -42,6 +42,13 @@ public class UpdatedDynamicData<K extends Object> extends DynamicData<K> {
 		this.add(parent, 1.0); // ensures deep copy of double[] data holding arrays
 	}
 
+	public UpdatedDynamicData(final MappedDynamicData<K> source) {
+		super(source.getStartTime_s(), source.getBinSize_s(), source.getBinCnt());
+		for (K key : source.keySet()) {
+			this.data.put(key, source.getValues(key));
+		}
+	}
+
 	public boolean timeCompatible(final UpdatedDynamicData<K> other) {
 		return ((this.getStartTime_s() == other.getStartTime_s()) && (this.getBinCnt() == other.getBinCnt())
 				&& (this.getBinSize_s() == other.getBinSize_s()));
@@ -30,12 +30,76 @@ import java.util.function.ToDoubleFunction;
 import se.vti.utils.misc.fileio.FileAppender;
 
 /**
+ * Samples are kept in a primitive array, together with mean and sum of squared
+ * deviations (Welford) of each consecutive block of BLOCK_SIZE samples. The
+ * statistics of a sample range merge the accumulators of all blocks inside the
+ * range and only visit the samples of the two boundary blocks, so a check costs
+ * O(samples / BLOCK_SIZE + BLOCK_SIZE) instead of O(samples). This allows for
+ * small check intervals.
+ * 
  * @author GunnarF
  * 
  * @param <X>
  */
 public class BlockAverageTerminationCriterion<X> implements TerminationCriterion<X> {
 
+	// -------------------- CONSTANTS --------------------
+
+	static final int BLOCK_SIZE = 100;
+
+	// -------------------- INNER CLASSES --------------------
+
+	/**
+	 * Growable array of samples with per-block Welford accumulators.
+	 */
+	static class Samples {
+
+		private double[] values = new double[1024];
+
+		private double[] blockMeans = new double[16];
+
+		private double[] blockSumsOfSquaredDeviations = new double[16];
+
+		private int size = 0;
+
+		void add(double value) {
+			if (this.size == this.values.length) {
+				this.values = Arrays.copyOf(this.values, 2 * this.size);
+			}
+			final int block = this.size / BLOCK_SIZE;
+			final int indexInBlock = this.size % BLOCK_SIZE;
+			if (block == this.blockMeans.length) {
+				this.blockMeans = Arrays.copyOf(this.blockMeans, 2 * block);
+				this.blockSumsOfSquaredDeviations = Arrays.copyOf(this.blockSumsOfSquaredDeviations, 2 * block);
+			}
+			if (indexInBlock == 0) {
+				this.blockMeans[block] = value;
+				this.blockSumsOfSquaredDeviations[block] = 0.0;
+			} else {
+				final double delta = value - this.blockMeans[block];
+				this.blockMeans[block] += delta / (indexInBlock + 1);
+				this.blockSumsOfSquaredDeviations[block] += delta * (value - this.blockMeans[block]);
+			}
+			this.values[this.size++] = value;
+		}
+
+		double get(int index) {
+			return this.values[index];
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		boolean isEmpty() {
+			return (this.size == 0);
+		}
+
+		void clear() {
+			this.size = 0;
+		}
+	}
+
 	// -------------------- CONFIGURATION PARAMETERS --------------------
 
 	private ToDoubleFunction<X> extractor = null;
@@ -59,7 +123,7 @@ public class BlockAverageTerminationCriterion<X> implements TerminationCriterion
 
 	long iterations;
 
-	final List<Double> samples = new ArrayList<>();
+	final Samples samples = new Samples();
 
 	boolean stabilized = false;
 
@@ -290,23 +354,62 @@ public class BlockAverageTerminationCriterion<X> implements TerminationCriterion
 		}
 	}
 
-	private Stats computeStats(int from, int to) {
-		int n = to - from;
-
-		double sum = 0.0;
-		for (int i = from; i < to; i++) {
-			sum += this.samples.get(i);
+	/**
+	 * Count, mean and sum of squared deviations of a sample range, built up by
+	 * merging (Chan et al.) blocks and single samples in sample order.
+	 */
+	private static class Accumulator {
+		long n = 0;
+		double mean = 0.0;
+		double sumOfSquaredDeviations = 0.0;
+
+		void add(double value) {
+			this.n++;
+			final double delta = value - this.mean;
+			this.mean += delta / this.n;
+			this.sumOfSquaredDeviations += delta * (value - this.mean);
 		}
-		double mean = sum / n;
 
-		double varSum = 0.0;
-		for (int i = from; i < to; i++) {
-			double d = this.samples.get(i) - mean;
-			varSum += d * d;
+		void merge(long otherN, double otherMean, double otherSumOfSquaredDeviations) {
+			if (this.n == 0) {
+				this.n = otherN;
+				this.mean = otherMean;
+				this.sumOfSquaredDeviations = otherSumOfSquaredDeviations;
+			} else {
+				final long mergedN = this.n + otherN;
+				final double delta = otherMean - this.mean;
+				this.mean += delta * otherN / mergedN;
+				this.sumOfSquaredDeviations += otherSumOfSquaredDeviations
+						+ delta * delta * ((double) this.n) * otherN / mergedN;
+				this.n = mergedN;
+			}
 		}
-		double variance = varSum / Math.max(n - 1, 1);
+	}
 
-		return new Stats(mean, variance);
+	private Stats computeStats(int from, int to) {
+		final Accumulator accumulator = new Accumulator();
+		final int firstFullBlock = (from + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final int endFullBlock = to / BLOCK_SIZE;
+		if (firstFullBlock >= endFullBlock) {
+			for (int i = from; i < to; i++) {
+				accumulator.add(this.samples.get(i));
+			}
+		} else {
+			for (int i = from; i < firstFullBlock * BLOCK_SIZE; i++) {
+				accumulator.add(this.samples.get(i));
+			}
+			for (int block = firstFullBlock; block < endFullBlock; block++) {
+				accumulator.merge(BLOCK_SIZE, this.samples.blockMeans[block],
+						this.samples.blockSumsOfSquaredDeviations[block]);
+			}
+			for (int i = endFullBlock * BLOCK_SIZE; i < to; i++) {
+				accumulator.add(this.samples.get(i));
+			}
+		}
+		if (accumulator.n == 0) {
+			return new Stats(Double.NaN, 0.0); // as 0.0 / 0
+		}
+		return new Stats(accumulator.mean, accumulator.sumOfSquaredDeviations / Math.max(accumulator.n - 1, 1));
 	}
 
 	private double max(double a, double b, double c) {
@@ -0,0 +1,52 @@
+/**
+ * se.vti.utils
+ * 
+ * Copyright (C) 2015-2025 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.utils.misc.tabularfileparser;
+
+/**
+ * A TabularFileHandler that receives the columns of a row as CharSequence views
+ * into the parsed line, avoiding one String per column. The views (and the
+ * array holding them) are reused for the next row; copy what is to be kept,
+ * e.g. with toString().
+ * 
+ * @author Gunnar Flötteröd
+ * 
+ */
+public interface TabularFileFieldHandler extends TabularFileHandler {
+
+	/**
+	 * Is called by the <code>TabularFileParser</code> whenever a row has been
+	 * parsed
+	 * 
+	 * @param fields
+	 *            the row's columns in positions 0 to fieldCnt - 1
+	 * @param fieldCnt
+	 *            the number of columns
+	 */
+	public void startRow(CharSequence[] fields, int fieldCnt);
+
+	/**
+	 * Used where the parser has String columns anyway.
+	 */
+	@Override
+	public default void startRow(String[] row) {
+		this.startRow(row, row.length);
+	}
+
+}
@@ -24,12 +24,32 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 /**
  * Parser for plain text files that are structured in columns.
  * 
+ * All regular expressions are compiled once per call to parse(..). Lines are
+ * split without regular expressions if the delimiter is a single literal
+ * character, "\\s" or "\\s+", otherwise by the precompiled delimiter
+ * pattern. In both cases, the columns are those of String.split(delimiterRegex).
+ * 
+ * Handlers implementing TabularFileFieldHandler receive their columns as
+ * CharSequence views into the parsed line instead of String[] copies.
+ * 
+ * Files without start and end regex can be split into columns by several
+ * threads. Rows are then still passed to the handler in file order and by the
+ * calling thread.
+ * 
  * @author Gunnar Flötteröd
  * 
  */
@@ -41,6 +61,227 @@ public class TabularFileParser {
 
 	private static final String ANY_SPACE = "\\s*";
 
+	private static final int LINES_PER_CHUNK = 4096;
+
+	private static final String REGEX_METACHARACTERS = ".$|()[{^?*+\\";
+
+	// -------------------- INNER CLASSES --------------------
+
+	private static enum DelimiterType {
+		NONE, CHARACTER, WHITESPACE, WHITESPACE_RUN, REGEX
+	}
+
+	/**
+	 * A column as a view into the parsed line. Reused for the next line.
+	 */
+	private static class Field implements CharSequence {
+
+		private String line;
+		private int start;
+		private int end;
+
+		@Override
+		public int length() {
+			return this.end - this.start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return this.line.charAt(this.start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return this.line.substring(this.start + start, this.start + end);
+		}
+
+		@Override
+		public String toString() {
+			return this.line.substring(this.start, this.end);
+		}
+	}
+
+	/**
+	 * Precompiled configuration with reusable column buffers. One instance per
+	 * thread.
+	 */
+	private class RowSplitter {
+
+		private final Pattern startPattern = compile(startRegex);
+
+		private final Pattern endPattern = compile(endRegex);
+
+		private final Pattern commentPattern = compile(commentRegex);
+
+		private final DelimiterType delimiterType;
+
+		private final char delimiter;
+
+		private final Pattern delimiterPattern;
+
+		private int[] starts = new int[16];
+
+		private int[] ends = new int[16];
+
+		private int columnCnt = 0;
+
+		private Field[] fields = new Field[0];
+
+		private RowSplitter() {
+			final String regex = delimiterRegex;
+			if (regex == null) {
+				this.delimiterType = DelimiterType.NONE;
+				this.delimiter = 0;
+			} else if ("\\s".equals(regex)) {
+				this.delimiterType = DelimiterType.WHITESPACE;
+				this.delimiter = 0;
+			} else if ("\\s+".equals(regex)) {
+				this.delimiterType = DelimiterType.WHITESPACE_RUN;
+				this.delimiter = 0;
+			} else if (regex.length() == 1 && REGEX_METACHARACTERS.indexOf(regex.charAt(0)) < 0) {
+				this.delimiterType = DelimiterType.CHARACTER;
+				this.delimiter = regex.charAt(0);
+			} else if (regex.length() == 2 && regex.charAt(0) == '\\'
+					&& !Character.isLetterOrDigit(regex.charAt(1)) && regex.charAt(1) < 128) {
+				this.delimiterType = DelimiterType.CHARACTER;
+				this.delimiter = regex.charAt(1);
+			} else if (regex.length() == 5 && regex.startsWith("\\Q") && regex.endsWith("\\E")) {
+				this.delimiterType = DelimiterType.CHARACTER;
+				this.delimiter = regex.charAt(2);
+			} else {
+				this.delimiterType = DelimiterType.REGEX;
+				this.delimiter = 0;
+			}
+			this.delimiterPattern = (this.delimiterType == DelimiterType.REGEX ? Pattern.compile(regex) : null);
+		}
+
+		private boolean isStart(String line) {
+			return (this.startPattern == null) || this.startPattern.matcher(line).matches();
+		}
+
+		private boolean isEnd(String line) {
+			return (this.endPattern != null) && this.endPattern.matcher(line).matches();
+		}
+
+		private boolean isComment(String line) {
+			return (this.commentPattern != null) && this.commentPattern.matcher(line).matches();
+		}
+
+		private boolean isDelimiter(char c) {
+			if (this.delimiterType == DelimiterType.CHARACTER) {
+				return (c == this.delimiter);
+			} else {
+				// as \s without UNICODE_CHARACTER_CLASS
+				return (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r');
+			}
+		}
+
+		private void addColumn(int start, int end) {
+			if (this.columnCnt == this.starts.length) {
+				this.starts = Arrays.copyOf(this.starts, 2 * this.columnCnt);
+				this.ends = Arrays.copyOf(this.ends, 2 * this.columnCnt);
+			}
+			this.starts[this.columnCnt] = start;
+			this.ends[this.columnCnt] = end;
+			this.columnCnt++;
+		}
+
+		/**
+		 * Stores the column bounds of String.split(delimiterRegex), without empty
+		 * columns if these are to be omitted.
+		 */
+		private void split(String line) {
+			this.columnCnt = 0;
+			if (this.delimiterType == DelimiterType.NONE) {
+				this.addColumn(0, line.length());
+				return;
+			}
+
+			boolean matched = false;
+			int start = 0;
+			int pos = 0;
+			while (pos < line.length()) {
+				if (this.isDelimiter(line.charAt(pos))) {
+					matched = true;
+					this.addColumn(start, pos);
+					pos++;
+					if (this.delimiterType == DelimiterType.WHITESPACE_RUN) {
+						while (pos < line.length() && this.isDelimiter(line.charAt(pos))) {
+							pos++;
+						}
+					}
+					start = pos;
+				} else {
+					pos++;
+				}
+			}
+			this.addColumn(start, line.length());
+
+			if (matched) {
+				// String.split drops trailing empty strings
+				while (this.columnCnt > 0 && this.starts[this.columnCnt - 1] == this.ends[this.columnCnt - 1]) {
+					this.columnCnt--;
+				}
+			}
+			if (omitEmptyColumns) {
+				int cnt = 0;
+				for (int i = 0; i < this.columnCnt; i++) {
+					if (this.starts[i] < this.ends[i]) {
+						this.starts[cnt] = this.starts[i];
+						this.ends[cnt] = this.ends[i];
+						cnt++;
+					}
+				}
+				this.columnCnt = cnt;
+			}
+		}
+
+		private String[] splitToStrings(String line) {
+			if (this.delimiterType == DelimiterType.REGEX) {
+				final String[] naiveSplit = this.delimiterPattern.split(line);
+				final List<String> properSplit = new ArrayList<String>(naiveSplit.length);
+				for (String c : naiveSplit) {
+					if (!omitEmptyColumns || (c != null && c.length() > 0)) {
+						properSplit.add(c);
+					}
+				}
+				return properSplit.toArray(new String[] {});
+			}
+			this.split(line);
+			final String[] result = new String[this.columnCnt];
+			for (int i = 0; i < this.columnCnt; i++) {
+				result[i] = line.substring(this.starts[i], this.ends[i]);
+			}
+			return result;
+		}
+
+		private void handle(String line, TabularFileHandler handler) {
+			if (!(handler instanceof TabularFileFieldHandler) || (this.delimiterType == DelimiterType.REGEX)) {
+				final String[] split = this.splitToStrings(line);
+				if (split.length >= minRowLength) {
+					handler.startRow(split);
+				}
+				return;
+			}
+			this.split(line);
+			if (this.columnCnt >= minRowLength) {
+				if (this.fields.length < this.columnCnt) {
+					final int oldLength = this.fields.length;
+					this.fields = Arrays.copyOf(this.fields, Math.max(this.columnCnt, 2 * oldLength));
+					for (int i = oldLength; i < this.fields.length; i++) {
+						this.fields[i] = new Field();
+					}
+				}
+				for (int i = 0; i < this.columnCnt; i++) {
+					this.fields[i].line = line;
+					this.fields[i].start = this.starts[i];
+					this.fields[i].end = this.ends[i];
+				}
+				((TabularFileFieldHandler) handler).startRow(this.fields, this.columnCnt);
+			}
+		}
+	}
+
 	// -------------------- INSTANCE VARIABLES --------------------
 
 	private String startRegex = null;
@@ -59,6 +300,8 @@ public class TabularFileParser {
 	// TODO NEW
 	private String characterEncoding = null;
 
+	private int numberOfThreads = 1;
+
 	// -------------------- CONSTRUCTION --------------------
 
 	/**
@@ -163,6 +406,18 @@ public class TabularFileParser {
 		return this.characterEncoding;
 	}
 
+	/**
+	 * Values above one make files without start and end regex be split into
+	 * columns by that many threads. Ignored for files with start or end regex.
+	 */
+	public void setNumberOfThreads(final int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	public int getNumberOfThreads() {
+		return this.numberOfThreads;
+	}
+
 	// -------------------- CONFIGURATION VIA TAGS --------------------
 
 	private String alternativeExpr(String[] alternatives) {
@@ -240,46 +495,51 @@ public class TabularFileParser {
 
 	// -------------------- PARSING --------------------
 
-	private boolean isStart(String line) {
-		final String regex = this.startRegex;
-		if (regex == null)
-			return true;
-		else
-			return line.matches(regex);
+	private static Pattern compile(String regex) {
+		return (regex == null ? null : Pattern.compile(regex));
 	}
 
-	private boolean isEnd(String line) {
-		final String regex = this.endRegex;
-		if (regex == null)
-			return false;
-		else
-			return line.matches(regex);
-	}
-
-	private boolean isComment(String line) {
-		final String regex = this.commentRegex;
-		if (regex == null)
-			return false;
-		else
-			return line.matches(regex);
+	private List<String[]> splitChunk(List<String> lines) {
+		final RowSplitter splitter = new RowSplitter();
+		final List<String[]> result = new ArrayList<>(lines.size());
+		for (String line : lines) {
+			line = line.trim();
+			if (!splitter.isComment(line)) {
+				final String[] split = splitter.splitToStrings(line);
+				if (split.length >= this.minRowLength) {
+					result.add(split);
+				}
+			}
+		}
+		return result;
 	}
 
-	private String[] split(String line) {
-		final String regex = this.delimiterRegex;
-		if (regex == null)
-			return new String[] { line };
-		else {
-			final String[] naiveSplit = line.split(regex);
-			// System.out.println("naiveSplit.length = " + naiveSplit.length);
-			final List<String> properSplit = new ArrayList<String>(
-					naiveSplit.length);
-			for (String c : naiveSplit) {
-				// if (c != null && c.length() > 0) {
-				if (!this.omitEmptyColumns || (c != null && c.length() > 0)) {
-					properSplit.add(c);
+	private void parseChunked(final BufferedReader reader, final TabularFileHandler handler) throws IOException {
+		final ExecutorService threadPool = Executors.newFixedThreadPool(this.numberOfThreads);
+		final Deque<Future<List<String[]>>> pendingChunks = new ArrayDeque<>();
+		try {
+			List<String> chunk = new ArrayList<>(LINES_PER_CHUNK);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				chunk.add(handler.preprocess(line));
+				if (chunk.size() == LINES_PER_CHUNK) {
+					final List<String> lines = chunk;
+					pendingChunks.add(threadPool.submit(() -> this.splitChunk(lines)));
+					chunk = new ArrayList<>(LINES_PER_CHUNK);
+					while (pendingChunks.size() > 2 * this.numberOfThreads) {
+						pendingChunks.poll().get().forEach(row -> handler.startRow(row));
+					}
 				}
 			}
-			return properSplit.toArray(new String[] {});
+			final List<String> lines = chunk;
+			pendingChunks.add(threadPool.submit(() -> this.splitChunk(lines)));
+			while (!pendingChunks.isEmpty()) {
+				pendingChunks.poll().get().forEach(row -> handler.startRow(row));
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			threadPool.shutdownNow();
 		}
 	}
 
@@ -304,6 +564,7 @@ public class TabularFileParser {
 			throw new IllegalArgumentException("handler is null");
 		}
 
+		final RowSplitter splitter = new RowSplitter();
 		boolean started = (this.startRegex == null);
 		boolean ended = false;
 
@@ -321,6 +582,16 @@ public class TabularFileParser {
 		}
 		// TODO <<<<< NEW <<<<<
 
+		if ((this.numberOfThreads > 1) && (this.startRegex == null) && (this.endRegex == null)) {
+			try {
+				this.parseChunked(reader, handler);
+			} finally {
+				reader.close();
+			}
+			handler.endDocument();
+			return;
+		}
+
 		String line;
 		while ((line = reader.readLine()) != null && !ended) {
 
@@ -330,15 +601,12 @@ public class TabularFileParser {
 
 			if (started) {
 				line = line.trim();
-				ended = isEnd(line);
-				if (!ended && !isComment(line)) {
-					final String[] split = this.split(line);
-					if (split.length >= this.minRowLength) {
-						handler.startRow(split);
-					}
+				ended = splitter.isEnd(line);
+				if (!ended && !splitter.isComment(line)) {
+					splitter.handle(line, handler);
 				}
 			} else {
-				started = isStart(line);
+				started = splitter.isStart(line);
 			}
 		}
 		reader.close();
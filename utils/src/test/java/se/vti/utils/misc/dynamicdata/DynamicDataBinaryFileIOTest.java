@@ -0,0 +1,141 @@
+/**
+ * se.vti.utils
+ * 
+ * Copyright (C) 2026 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.utils.misc.dynamicdata;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author GunnarF
+ */
+class DynamicDataBinaryFileIOTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final DynamicDataBinaryFileIO<String> BINARY_IO = new DynamicDataBinaryFileIO<>() {
+        @Override
+        protected String key2string(String key) {
+            return key;
+        }
+
+        @Override
+        protected String string2key(String string) {
+            return string;
+        }
+    };
+
+    private static final DynamicDataXMLFileIO<String> XML_IO = new DynamicDataXMLFileIO<>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected String key2attrValue(String key) {
+            return key;
+        }
+
+        @Override
+        protected String attrValue2key(String string) {
+            return string;
+        }
+    };
+
+    private static DynamicData<String> createData() {
+        DynamicData<String> dd = new DynamicData<>(3600, 900, 24);
+        Random rnd = new Random(4711);
+        for (int k = 0; k < 100; k++) {
+            for (int bin = 0; bin < dd.getBinCnt(); bin++) {
+                dd.put("link_" + k, bin, rnd.nextGaussian() * Math.pow(10, rnd.nextInt(20) - 10));
+            }
+        }
+        return dd;
+    }
+
+    private static void assertSameData(DynamicData<String> expected, DynamicData<String> actual) {
+        assertEquals(expected.getStartTime_s(), actual.getStartTime_s());
+        assertEquals(expected.getBinSize_s(), actual.getBinSize_s());
+        assertEquals(expected.getBinCnt(), actual.getBinCnt());
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String key : expected.keySet()) {
+            for (int bin = 0; bin < expected.getBinCnt(); bin++) {
+                assertEquals(expected.getBinValue(key, bin), actual.getBinValue(key, bin));
+            }
+        }
+    }
+
+    @Test
+    void testDoubleRoundTripIsExact() throws IOException {
+        DynamicData<String> dd = createData();
+        String file = this.tempDir.resolve("data.bin").toString();
+        BINARY_IO.write(file, dd);
+        assertSameData(dd, BINARY_IO.read(file));
+    }
+
+    @Test
+    void testSinglePrecisionRoundTrip() throws IOException {
+        DynamicData<String> dd = createData();
+        String file = this.tempDir.resolve("data.bin").toString();
+        BINARY_IO.write(file, dd, true);
+        MappedDynamicData<String> mapped = BINARY_IO.open(file);
+        assertTrue(mapped.isSinglePrecision());
+        for (String key : dd.keySet()) {
+            for (int bin = 0; bin < dd.getBinCnt(); bin++) {
+                assertEquals((double) (float) dd.getBinValue(key, bin), mapped.getBinValue(key, bin));
+            }
+        }
+    }
+
+    @Test
+    void testStreamingWriteAndRandomAccess() throws IOException {
+        String file = this.tempDir.resolve("stream.bin").toString();
+        try (var writer = BINARY_IO.newWriter(file, 0, 60, 3, false)) {
+            writer.write("b_åäö", new double[] { 1.0, 2.0, 3.0 });
+            writer.write("a", new double[] { -1.0, 0.5, Double.NaN });
+            assertThrows(IllegalArgumentException.class, () -> writer.write("a", new double[] { 0, 0, 0 }));
+            assertThrows(IllegalArgumentException.class, () -> writer.write("c", new double[] { 0, 0 }));
+        }
+        MappedDynamicData<String> mapped = BINARY_IO.open(file);
+        assertEquals(2, mapped.keySet().size());
+        assertEquals("b_åäö", mapped.keySet().iterator().next());
+        assertEquals(0.5, mapped.getBinValue("a", 1));
+        assertTrue(Double.isNaN(mapped.getBinValue("a", 2)));
+        assertEquals(0.0, mapped.getBinValue("unknown", 0));
+        assertFalse(mapped.containsKey("unknown"));
+        assertEquals(3.0, new UpdatedDynamicData<>(mapped).getBinValue("b_åäö", 2));
+    }
+
+    @Test
+    void testXMLConversionIsLossless() throws IOException {
+        DynamicData<String> dd = createData();
+        String xmlFile = this.tempDir.resolve("data.xml").toString();
+        String binaryFile = this.tempDir.resolve("data.bin").toString();
+        String xmlFile2 = this.tempDir.resolve("data2.xml").toString();
+        XML_IO.write(xmlFile, dd);
+        DynamicDataBinaryFileIO.convertXMLToBinary(XML_IO, xmlFile, BINARY_IO, binaryFile);
+        assertSameData(dd, BINARY_IO.read(binaryFile));
+        DynamicDataBinaryFileIO.convertBinaryToXML(BINARY_IO, binaryFile, XML_IO, xmlFile2);
+        assertSameData(dd, XML_IO.read(xmlFile2));
+    }
+}
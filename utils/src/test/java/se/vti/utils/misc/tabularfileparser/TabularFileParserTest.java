@@ -0,0 +1,166 @@
+/**
+ * se.vti.utils
+ * 
+ * Copyright (C) 2026 by Gunnar Flötteröd (VTI, LiU).
+ * 
+ * VTI = Swedish National Road and Transport Institute
+ * LiU = Linköping University, Sweden
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>. See also COPYING and WARRANTY file.
+ */
+package se.vti.utils.misc.tabularfileparser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author GunnarF
+ */
+class TabularFileParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String CONTENT = String.join("\n", "# comment", "a,b,,c,,", ",x", "  y  z\t w ", "",
+            ",,", "p;q|r", "s");
+
+    private String writeFile() throws IOException {
+        Path file = this.tempDir.resolve("table.txt");
+        Files.writeString(file, CONTENT + "\n");
+        return file.toString();
+    }
+
+    private static List<List<String>> parse(TabularFileParser parser, String file) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        parser.parse(file, new TabularFileHandler() {
+            @Override
+            public String preprocess(String line) {
+                return line;
+            }
+
+            @Override
+            public void startDocument() {
+            }
+
+            @Override
+            public void startRow(String[] row) {
+                rows.add(Arrays.asList(row));
+            }
+
+            @Override
+            public void endDocument() {
+            }
+        });
+        return rows;
+    }
+
+    private static List<List<String>> parseFields(TabularFileParser parser, String file) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        parser.parse(file, new TabularFileFieldHandler() {
+            @Override
+            public String preprocess(String line) {
+                return line;
+            }
+
+            @Override
+            public void startDocument() {
+            }
+
+            @Override
+            public void startRow(CharSequence[] fields, int fieldCnt) {
+                List<String> row = new ArrayList<>(fieldCnt);
+                for (int i = 0; i < fieldCnt; i++) {
+                    row.add(fields[i].toString());
+                }
+                rows.add(row);
+            }
+
+            @Override
+            public void endDocument() {
+            }
+        });
+        return rows;
+    }
+
+    private static List<List<String>> expected(String delimiterRegex, boolean omitEmptyColumns) {
+        List<List<String>> rows = new ArrayList<>();
+        for (String line : CONTENT.split("\n")) {
+            line = line.trim();
+            if (!line.startsWith("#")) {
+                List<String> row = new ArrayList<>();
+                for (String column : line.split(delimiterRegex)) {
+                    if (!omitEmptyColumns || column.length() > 0) {
+                        row.add(column);
+                    }
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static TabularFileParser createParser(String delimiterRegex, boolean omitEmptyColumns) {
+        TabularFileParser parser = new TabularFileParser();
+        parser.setDelimiterRegex(delimiterRegex);
+        parser.setOmitEmptyColumns(omitEmptyColumns);
+        parser.setCommentTags(new String[] { "#" });
+        return parser;
+    }
+
+    @Test
+    void testColumnsAsStringSplit() throws IOException {
+        String file = this.writeFile();
+        for (String delimiterRegex : new String[] { ",", "\\s", "\\s+", "\\|", "\\Q;\\E", "[;|]" }) {
+            for (boolean omitEmptyColumns : new boolean[] { true, false }) {
+                TabularFileParser parser = createParser(delimiterRegex, omitEmptyColumns);
+                assertEquals(expected(delimiterRegex, omitEmptyColumns), parse(parser, file), delimiterRegex);
+                assertEquals(expected(delimiterRegex, omitEmptyColumns), parseFields(parser, file), delimiterRegex);
+            }
+        }
+    }
+
+    @Test
+    void testChunkedParsingKeepsRowOrder() throws IOException {
+        Path file = this.tempDir.resolve("large.txt");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append(i).append(" ").append(2 * i).append("\n");
+        }
+        Files.writeString(file, content.toString());
+
+        TabularFileParser parser = createParser("\\s", true);
+        List<List<String>> sequentialRows = parse(parser, file.toString());
+        parser.setNumberOfThreads(4);
+        assertEquals(sequentialRows, parse(parser, file.toString()));
+        assertEquals(20000, sequentialRows.size());
+    }
+
+    @Test
+    void testSectionMarkers() throws IOException {
+        Path file = this.tempDir.resolve("sections.txt");
+        Files.writeString(file, "skip\nSTART\n1 2\n3 4\nEND\n5 6\n");
+        TabularFileParser parser = createParser("\\s", true);
+        parser.setStartTag("START");
+        parser.setEndTag("END");
+        parser.setNumberOfThreads(4);
+        assertEquals(List.of(List.of("1", "2"), List.of("3", "4")), parse(parser, file.toString()));
+    }
+}